@@ -0,0 +1,111 @@
+import java.util.*;
+
+/**
+ * 近似最近邻索引的基准测试工具
+ * 用随机生成的带簇结构的向量建立HNSW索引，对若干查询比较不同搜索宽度（ef）下
+ * 相对逐个比较的recall@10和查询延迟；再删除一部分节点后重复一次，检查删除后的召回率
+ *
+ * 用法：java AnnBenchmark [向量数] [维数] [查询数]
+ * 例如：java -Xmx2g AnnBenchmark 1000000 17 1000
+ */
+class AnnBenchmark {
+    private static final int DEFAULT_COUNT = 100_000;
+    // 默认与隐因子模型的检索向量一致（16维因子加1维）
+    private static final int DEFAULT_DIMENSION = 17;
+    private static final int DEFAULT_QUERIES = 500;
+    private static final int K = 10;
+    private static final int CLUSTERS = 64;
+    private static final int[] EF_VALUES = {10, 20, 40, 64, 100, 200, 400};
+    // 第二轮删除的节点比例
+    private static final double DELETE_FRACTION = 0.1;
+    
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DIMENSION;
+        int queryCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUERIES;
+        Random random = new Random(7);
+        
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, dimension, 1.0f, null);
+        }
+        HnswIndex index = new HnswIndex(dimension);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            index.add(gaussian(random, dimension, 0.3f, centers[random.nextInt(CLUSTERS)]));
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("向量数: %d, 维数: %d, 查询数: %d, M: %d, efConstruction: %d",
+                count, dimension, queryCount, HnswIndex.DEFAULT_M, HnswIndex.DEFAULT_EF_CONSTRUCTION));
+        System.out.println(String.format("建立索引耗时: %.2f 秒（%.0f 次插入/秒）", buildSeconds, count / buildSeconds));
+        
+        float[][] queries = new float[queryCount][];
+        for (int q = 0; q < queryCount; q++) {
+            queries[q] = gaussian(random, dimension, 0.3f, centers[random.nextInt(CLUSTERS)]);
+        }
+        run(index, queries);
+        
+        int deletions = (int) (count * DELETE_FRACTION);
+        for (int i = 0; i < deletions; i++) {
+            index.remove(random.nextInt(count));
+        }
+        System.out.println(String.format("\n随机删除后（存活 %d / %d）：", index.liveCount(), index.size()));
+        run(index, queries);
+    }
+    
+    /**
+     * 逐个比较得到准确结果，再在各个搜索宽度下测量召回率和延迟
+     */
+    private static void run(HnswIndex index, float[][] queries) {
+        int[][] exact = new int[queries.length][];
+        long[] exactLatencies = new long[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            long start = System.nanoTime();
+            exact[q] = index.bruteForceSearch(queries[q], K);
+            exactLatencies[q] = System.nanoTime() - start;
+        }
+        System.out.println(String.format("逐个比较: p50 %.3f 毫秒, p99 %.3f 毫秒",
+                percentile(exactLatencies, 0.50) / 1e6, percentile(exactLatencies, 0.99) / 1e6));
+        
+        for (int ef : EF_VALUES) {
+            // 预热一遍再计时
+            for (float[] query : queries) {
+                index.search(query, K, ef);
+            }
+            long[] latencies = new long[queries.length];
+            int hits = 0;
+            for (int q = 0; q < queries.length; q++) {
+                long start = System.nanoTime();
+                int[] found = index.search(queries[q], K, ef);
+                latencies[q] = System.nanoTime() - start;
+                Set<Integer> expected = new HashSet<>();
+                for (int node : exact[q]) {
+                    expected.add(node);
+                }
+                for (int node : found) {
+                    if (expected.contains(node)) {
+                        hits++;
+                    }
+                }
+            }
+            System.out.println(String.format("ef=%-4d recall@%d: %.4f, p50 %.3f 毫秒, p99 %.3f 毫秒",
+                    ef, K, hits / (double) (queries.length * K),
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6));
+        }
+    }
+    
+    private static float[] gaussian(Random random, int dimension, float scale, float[] center) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian() * scale + (center == null ? 0f : center[i]);
+        }
+        return vector;
+    }
+    
+    private static long percentile(long[] values, double p) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 二进制数据快照
+ * 与文本数据文件并存的紧凑格式，启动时优先加载以避免逐行切分字符串和解析数字：
+ * 字符串以长度前缀的UTF-8存储，用户名、电视剧ID、类型和演员放入去重字典，
+ * 数值字段为定长，文件末尾为CRC32校验和。文本文件仍是数据交换格式。
+ * 读取时分块读入缓冲区、边读边计算校验和，文件大小不受单次内存映射的限制
+ *
+ * 文件布局（大端序）：
+ *   int 魔数 | short 版本号 | long 电视剧检查点 | long 评分检查点（版本3起，变更日志中已包含的最后一条记录的序号）
+ *   int 字典大小 | 字典字符串...
+ *   int 电视剧数量 | 电视剧记录...
+ *   int 评分数量 | 评分记录...（版本4起时间戳为long毫秒数，无法解析的时间戳另存原始字符串）
+ *   long CRC32（覆盖之前的所有字节）
+ */
+class BinarySnapshot {
+    private static final int MAGIC = 0x54565353; // "TVSS"
+    private static final short VERSION = 4;
+    // 读取缓冲区大小
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    
+    /**
+     * 快照内容（评分不在其中，读取时逐条交给RatingSink）
+     */
+    static class Data {
+        final List<TVShowRecommendationSystem.TVShow> tvShows;
+        // 电视剧、评分已包含的变更日志记录的最后序号（旧版本快照为0）
+        final long tvShowsCheckpoint;
+        final long ratingsCheckpoint;
+        
+        Data(List<TVShowRecommendationSystem.TVShow> tvShows, long tvShowsCheckpoint, long ratingsCheckpoint) {
+            this.tvShows = tvShows;
+            this.tvShowsCheckpoint = tvShowsCheckpoint;
+            this.ratingsCheckpoint = ratingsCheckpoint;
+        }
+    }
+    
+    /**
+     * 评分接收器：读取快照时逐条接收评分字段
+     */
+    interface RatingSink {
+        /**
+         * @param rawTimestamp 时间戳无法解析时的原始字符串
+         */
+        void accept(String id, String tvShowId, String username, double score, String comment,
+                    long timestampMillis, String rawTimestamp);
+    }
+    
+    /**
+     * 快照是否存在且不旧于所有文本数据文件
+     */
+    public static boolean isFresh(String snapshotFile, String... textFiles) {
+        File snapshot = new File(snapshotFile);
+        if (!snapshot.isFile()) {
+            return false;
+        }
+        for (String textFile : textFiles) {
+            File file = new File(textFile);
+            if (file.exists() && file.lastModified() > snapshot.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 写入快照（先写临时文件，刷盘后原子替换）
+     * @param tvShowsCheckpoint 电视剧数据已包含的变更日志记录的最后序号
+     * @param ratingsCheckpoint 评分数据已包含的变更日志记录的最后序号
+     */
+    public static void write(String fileName,
+                             Collection<TVShowRecommendationSystem.TVShow> tvShows,
+                             Collection<TVShowRecommendationSystem.Rating> ratings,
+                             long tvShowsCheckpoint, long ratingsCheckpoint) throws IOException {
+        // 构建去重字典
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+            intern(dictionary, tvShow.getId());
+            intern(dictionary, tvShow.getGenre());
+            for (String actor : tvShow.getActors()) {
+                intern(dictionary, actor);
+            }
+        }
+        for (TVShowRecommendationSystem.Rating rating : ratings) {
+            intern(dictionary, rating.getTvShowId());
+            intern(dictionary, rating.getUsername());
+        }
+        
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(tvShowsCheckpoint);
+            out.writeLong(ratingsCheckpoint);
+            
+            out.writeInt(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                writeString(out, value);
+            }
+            
+            out.writeInt(tvShows.size());
+            for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+                out.writeInt(dictionary.get(tvShow.getId()));
+                writeString(out, tvShow.getTitle());
+                out.writeInt(dictionary.get(tvShow.getGenre()));
+                out.writeInt(tvShow.getYear());
+                writeString(out, tvShow.getDirector());
+                out.writeInt(tvShow.getActors().size());
+                for (String actor : tvShow.getActors()) {
+                    out.writeInt(dictionary.get(actor));
+                }
+                writeString(out, tvShow.getDescription());
+                RatingAggregate statistics = tvShow.getRatingStatistics();
+                out.writeDouble(statistics.getMean());
+                out.writeInt((int) statistics.getCount());
+                out.writeInt(tvShow.getViewCount());
+                out.writeDouble(statistics.getSumOfSquares());
+            }
+            
+            out.writeInt(ratings.size());
+            for (TVShowRecommendationSystem.Rating rating : ratings) {
+                writeString(out, rating.getId());
+                out.writeInt(dictionary.get(rating.getTvShowId()));
+                out.writeInt(dictionary.get(rating.getUsername()));
+                out.writeDouble(rating.getScore());
+                writeString(out, rating.getComment());
+                long timestampMillis = rating.getTimestampMillis();
+                out.writeLong(timestampMillis);
+                if (!RatingColumns.isRegularTimestamp(timestampMillis)) {
+                    writeString(out, rating.getTimestamp());
+                }
+            }
+            
+            // 先取出之前所有字节的校验和，再把它写在文件末尾
+            out.writeLong(crc.getValue());
+        }
+        MutationLog.replaceFile(temp, target);
+    }
+    
+    /**
+     * 读取快照
+     * 校验和在读到文件末尾时才核对
+     * @param ratings 逐条接收评分（读取失败时可能已接收了一部分，由调用方丢弃）
+     * @throws IOException 文件损坏、校验和不匹配或版本不支持时抛出
+     */
+    public static Data read(String fileName, RatingSink ratings) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 14) {
+                throw new IOException("快照文件大小异常: " + size);
+            }
+            Input in = new Input(channel, size);
+            
+            if (in.getInt() != MAGIC) {
+                throw new IOException("不是有效的快照文件");
+            }
+            short version = in.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("不支持的快照版本: " + version);
+            }
+            long tvShowsCheckpoint = version >= 3 ? in.getLong() : 0;
+            long ratingsCheckpoint = version >= 3 ? in.getLong() : 0;
+            
+            String[] dictionary = new String[in.getCount()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = in.getString();
+            }
+            
+            int showCount = in.getCount();
+            List<TVShowRecommendationSystem.TVShow> tvShows = new ArrayList<>(showCount);
+            for (int i = 0; i < showCount; i++) {
+                String id = dictionary[in.getInt()];
+                String title = in.getString();
+                String genre = dictionary[in.getInt()];
+                int year = in.getInt();
+                String director = in.getString();
+                String[] actors = new String[in.getCount()];
+                for (int j = 0; j < actors.length; j++) {
+                    actors[j] = dictionary[in.getInt()];
+                }
+                String description = in.getString();
+                
+                TVShowRecommendationSystem.TVShow tvShow = new TVShowRecommendationSystem.TVShow(
+                        id, title, genre, year, director, Arrays.asList(actors), description);
+                double rating = in.getDouble();
+                int ratingCount = in.getInt();
+                int viewCount = in.getInt();
+                // 版本1没有评分平方和
+                double sumOfSquares = version >= 2 ? in.getDouble() : Double.NaN;
+                tvShow.restoreStatistics(rating, ratingCount, sumOfSquares, viewCount);
+                tvShows.add(tvShow);
+            }
+            
+            int ratingCount = in.getCount();
+            for (int i = 0; i < ratingCount; i++) {
+                String id = in.getString();
+                String tvShowId = dictionary[in.getInt()];
+                String username = dictionary[in.getInt()];
+                double score = in.getDouble();
+                String comment = in.getString();
+                long timestampMillis;
+                String rawTimestamp = null;
+                if (version >= 4) {
+                    timestampMillis = in.getLong();
+                    if (!RatingColumns.isRegularTimestamp(timestampMillis)) {
+                        rawTimestamp = in.getString();
+                    }
+                } else {
+                    rawTimestamp = in.getString();
+                    timestampMillis = RatingColumns.parseTimestamp(rawTimestamp);
+                }
+                ratings.accept(id, tvShowId, username, score, comment, timestampMillis, rawTimestamp);
+            }
+            
+            in.verifyChecksum();
+            return new Data(tvShows, tvShowsCheckpoint, ratingsCheckpoint);
+        } catch (RuntimeException e) {
+            // 越界等异常说明文件结构损坏
+            throw new IOException("快照文件格式错误: " + e, e);
+        }
+    }
+    
+    /**
+     * 快照文件的顺序读取：分块读入缓冲区，读入时对末尾8字节之前的内容计算CRC32
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        // 已从文件读入缓冲区的字节数
+        private long loaded = 0;
+        
+        Input(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            buffer.limit(0);
+        }
+        
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+        
+        short getShort() throws IOException {
+            require(Short.BYTES);
+            return buffer.getShort();
+        }
+        
+        long getLong() throws IOException {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+        
+        double getDouble() throws IOException {
+            require(Double.BYTES);
+            return buffer.getDouble();
+        }
+        
+        /**
+         * 读取元素个数（每个元素至少占一个字节，超过剩余字节数说明文件损坏）
+         */
+        int getCount() throws IOException {
+            int count = getInt();
+            if (count < 0 || count > remaining()) {
+                throw new IOException("快照文件格式错误: 数量 " + count + " 超出文件范围");
+            }
+            return count;
+        }
+        
+        String getString() throws IOException {
+            int length = getCount();
+            if (length <= buffer.capacity()) {
+                require(length);
+                String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return value;
+            }
+            byte[] bytes = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                require(1);
+                int chunk = Math.min(buffer.remaining(), length - copied);
+                buffer.get(bytes, copied, chunk);
+                copied += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        /**
+         * 内容已读完时核对末尾的校验和
+         */
+        void verifyChecksum() throws IOException {
+            if (remaining() != Long.BYTES) {
+                throw new IOException("快照文件格式错误: 内容长度与文件大小不符");
+            }
+            long expected = crc.getValue();
+            if (getLong() != expected) {
+                throw new IOException("快照校验和不匹配");
+            }
+        }
+        
+        /**
+         * 文件中尚未读取的字节数
+         */
+        private long remaining() {
+            return size - loaded + buffer.remaining();
+        }
+        
+        /**
+         * 保证缓冲区中至少有n个未读字节
+         */
+        private void require(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < n) {
+                int start = buffer.position();
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("快照文件不完整");
+                }
+                // 新读入的字节中位于末尾校验和之前的部分计入CRC
+                int checked = (int) Math.max(0, Math.min(read, size - Long.BYTES - loaded));
+                crc.update(buffer.array(), start, checked);
+                loaded += read;
+            }
+            buffer.flip();
+        }
+    }
+    
+    private static void intern(Map<String, Integer> dictionary, String value) {
+        dictionary.putIfAbsent(value, dictionary.size());
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.*;
+
+/**
+ * 电视剧目录按ID查找的基准测试工具
+ * 在不同目录规模下，比较原来的ArrayList逐个比较ID（线性扫描）与CatalogStore（按ID索引的LinkedHashMap）
+ * 按随机ID查找的平均耗时；查找的ID一半存在、一半不存在，并核对两者的查找结果一致
+ *
+ * 用法：java CatalogBenchmark [每种规模每种做法的计时秒数] [目录规模...]
+ * 例如：java CatalogBenchmark 2 10000 100000 1000000
+ */
+class CatalogBenchmark {
+    private static final double DEFAULT_SECONDS = 2;
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000};
+    // 预先生成的查找ID个数
+    private static final int LOOKUP_IDS = 1 << 12;
+    
+    private static volatile Object sink;
+    
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_SECONDS;
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println(String.format("每种规模每种做法计时 %.1f 秒", seconds));
+        
+        for (int size : sizes) {
+            List<TVShowRecommendationSystem.TVShow> list = new ArrayList<>(size);
+            CatalogStore store = new CatalogStore();
+            for (int i = 1; i <= size; i++) {
+                TVShowRecommendationSystem.TVShow tvShow = new TVShowRecommendationSystem.TVShow(
+                        String.format("TV%03d", i), "电视剧" + i, "剧情", 2000 + i % 25, "导演" + i % 100,
+                        Arrays.asList("演员" + i % 1000), "");
+                list.add(tvShow);
+                store.add(tvShow);
+            }
+            // 一半是目录中的ID，一半是不存在的ID（线性扫描的最坏情况）
+            Random random = new Random(size);
+            String[] ids = new String[LOOKUP_IDS];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = String.format("TV%03d", i % 2 == 0 ? 1 + random.nextInt(size) : size + 1 + random.nextInt(size));
+            }
+            
+            int mismatches = 0;
+            for (String id : ids) {
+                if (findById(list, id) != store.get(id)) {
+                    mismatches++;
+                }
+            }
+            
+            System.out.println(String.format("\n目录 %d 部电视剧：", size));
+            double scanNanos = measure(seconds, ids, id -> sink = findById(list, id));
+            double storeNanos = measure(seconds, ids, id -> sink = store.get(id));
+            System.out.println(String.format("  线性扫描: %.1f 纳秒/次", scanNanos));
+            System.out.println(String.format("  CatalogStore: %.1f 纳秒/次（快 %.0f 倍）", storeNanos, scanNanos / storeNanos));
+            if (mismatches > 0) {
+                System.out.println("  不一致: " + mismatches + " 个ID的查找结果不同");
+            }
+        }
+    }
+    
+    private interface Lookup {
+        void run(String id);
+    }
+    
+    /**
+     * 先预热，再在给定时间内轮流查找预先生成的ID，返回每次查找的平均纳秒数
+     */
+    private static double measure(double seconds, String[] ids, Lookup lookup) {
+        long warmupEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+        int next = 0;
+        while (System.nanoTime() < warmupEnd) {
+            lookup.run(ids[next++ & (ids.length - 1)]);
+        }
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        long operations = 0;
+        long now;
+        do {
+            for (int i = 0; i < 16; i++) {
+                lookup.run(ids[next++ & (ids.length - 1)]);
+            }
+            operations += 16;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / operations;
+    }
+    
+    /**
+     * 改用CatalogStore之前的查找方式：逐个比较ID
+     */
+    private static TVShowRecommendationSystem.TVShow findById(List<TVShowRecommendationSystem.TVShow> tvShows,
+                                                              String id) {
+        for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+            if (tvShow.getId().equals(id)) {
+                return tvShow;
+            }
+        }
+        return null;
+    }
+}
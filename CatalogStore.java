@@ -0,0 +1,80 @@
+import java.util.*;
+
+/**
+ * 电视剧目录存储
+ * 以LinkedHashMap按ID索引，同时保留添加顺序（用于展示和写入数据文件），
+ * 按ID查找、替换和删除都是O(1)
+ */
+class CatalogStore {
+    // ID -> 电视剧，迭代顺序为添加顺序（替换已有ID不改变其位置）
+    private final Map<String, TVShowRecommendationSystem.TVShow> byId = new LinkedHashMap<>();
+    // 已出现过的最大数字ID（用于生成新ID）
+    private int maxNumericId = 0;
+    
+    /**
+     * 添加电视剧；若ID已存在则替换原记录并保持其位置
+     */
+    public void add(TVShowRecommendationSystem.TVShow tvShow) {
+        byId.put(tvShow.getId(), tvShow);
+        trackId(tvShow.getId());
+    }
+    
+    /**
+     * 根据ID查找电视剧
+     */
+    public TVShowRecommendationSystem.TVShow get(String id) {
+        return byId.get(id);
+    }
+    
+    /**
+     * 是否包含指定ID
+     */
+    public boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+    
+    /**
+     * 根据ID删除电视剧
+     * @return 被删除的电视剧，不存在时返回null
+     */
+    public TVShowRecommendationSystem.TVShow remove(String id) {
+        return byId.remove(id);
+    }
+    
+    /**
+     * 按添加顺序返回所有电视剧（只读视图）
+     */
+    public Collection<TVShowRecommendationSystem.TVShow> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+    
+    public int size() {
+        return byId.size();
+    }
+    
+    public void clear() {
+        byId.clear();
+        maxNumericId = 0;
+    }
+    
+    /**
+     * 生成下一个电视剧ID（格式为"TV001"）
+     */
+    public String nextId() {
+        return String.format("TV%03d", maxNumericId + 1);
+    }
+    
+    /**
+     * 记录数字ID的最大值
+     */
+    private void trackId(String id) {
+        try {
+            int value = Integer.parseInt(id.substring(2)); // 假设ID格式为"TV001"
+            if (value > maxNumericId) {
+                maxNumericId = value;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            // 如果ID格式不是预期的，忽略
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 对话补全接口的JSON编解码
+ * 基于Gson的流式JsonWriter/JsonReader：请求体直接写出，字符串转义由JsonWriter完成（包括控制字符）；
+ * 解析响应时只沿choices[0].message.content（流式事件为choices[0].delta.content）路径读取，
+ * 其余字段直接跳过，不构建整棵JSON树
+ */
+class ChatCompletionCodec {
+    static final String MODEL = "deepseek-chat";
+    static final int MAX_TOKENS = 1000;
+    static final double TEMPERATURE = 0.7;
+    
+    /**
+     * 编码请求体为UTF-8字节
+     * @param stream 是否请求流式响应
+     */
+    static byte[] encodeRequest(String prompt, boolean stream) {
+        StringWriter out = new StringWriter(256 + prompt.length() * 2);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("model").value(MODEL);
+            writer.name("messages").beginArray();
+            writer.beginObject();
+            writer.name("role").value("user");
+            writer.name("content").value(prompt);
+            writer.endObject();
+            writer.endArray();
+            writer.name("max_tokens").value(MAX_TOKENS);
+            writer.name("temperature").value(TEMPERATURE);
+            writer.name("stream").value(stream);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // 写入内存不会失败
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 读取完整响应中的choices[0].message.content
+     * @throws IOException 响应不是合法JSON或缺少该字段
+     */
+    static String readContent(Reader in) throws IOException {
+        String content = readChoiceField(new JsonReader(in), "message");
+        if (content == null) {
+            throw new IOException("无法在API响应中找到内容");
+        }
+        return content;
+    }
+    
+    static String readContent(String response) throws IOException {
+        return readContent(new StringReader(response));
+    }
+    
+    /**
+     * 读取流式事件中的choices[0].delta.content（没有内容时返回空字符串）
+     */
+    static String readDeltaContent(String event) throws IOException {
+        String content = readChoiceField(new JsonReader(new StringReader(event)), "delta");
+        return content == null ? "" : content;
+    }
+    
+    /**
+     * 沿choices[0].<container>.content路径读取，找不到或为null时返回null
+     */
+    private static String readChoiceField(JsonReader reader, String container) throws IOException {
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("choices") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                if (!reader.hasNext() || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    return null;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals(container) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("content") && reader.peek() == JsonToken.STRING) {
+                            return reader.nextString();
+                        }
+                        reader.skipValue();
+                    }
+                    reader.endObject();
+                }
+                return null;
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            // JsonReader以IllegalStateException报告结构与预期不符
+            throw new IOException("API响应格式不正确: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 对话补全JSON编解码的基准测试工具
+ * 比较原来的手工字符串拼接（链式String.replace转义 + indexOf截取）与ChatCompletionCodec（Gson流式读写）
+ * 在请求编码、完整响应解析、流式事件解析三种负载下每次操作的耗时和分配的内存；
+ * 并检查两者对引号、控制字符等内容的处理是否正确
+ *
+ * 用法：java -cp .:gson.jar CodecBenchmark [每项计时秒数]
+ * 例如：java -cp .:gson.jar CodecBenchmark 3
+ */
+class CodecBenchmark {
+    private static final double DEFAULT_SECONDS = 2;
+    // 提示词中的候选电视剧数（与推荐时的候选数量级相当）
+    private static final int CANDIDATES = 50;
+    // 完整响应内容的行数
+    private static final int RESPONSE_LINES = 40;
+    // 一次流式响应的事件数
+    private static final int STREAM_EVENTS = 300;
+    
+    private static volatile Object sink;
+    
+    public static void main(String[] args) throws IOException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_SECONDS;
+        String prompt = prompt();
+        String response = response();
+        List<String> events = events();
+        System.out.println(String.format("提示词 %d 字符，响应 %d 字符，流式事件 %d 个，每项计时 %.1f 秒",
+                prompt.length(), response.length(), events.size(), seconds));
+        
+        System.out.println("\n请求编码（到UTF-8字节）：");
+        measure("字符串拼接", seconds, () -> sink = buildRequestBody(prompt, true).getBytes(StandardCharsets.UTF_8));
+        measure("JsonWriter", seconds, () -> sink = ChatCompletionCodec.encodeRequest(prompt, true));
+        
+        System.out.println("\n完整响应解析：");
+        measure("indexOf截取", seconds, () -> sink = extractContentFromResponse(response));
+        measure("JsonReader", seconds, () -> sink = ChatCompletionCodec.readContent(response));
+        
+        System.out.println("\n流式事件解析（一次响应的全部事件）：");
+        measure("indexOf截取", seconds, () -> {
+            StringBuilder content = new StringBuilder();
+            for (String event : events) {
+                content.append(extractDeltaContent(event));
+            }
+            sink = content;
+        });
+        measure("JsonReader", seconds, () -> {
+            StringBuilder content = new StringBuilder();
+            for (String event : events) {
+                content.append(ChatCompletionCodec.readDeltaContent(event));
+            }
+            sink = content;
+        });
+        
+        System.out.println("\n特殊内容的处理：");
+        checkCorrectness();
+    }
+    
+    private interface Operation {
+        void run() throws IOException;
+    }
+    
+    /**
+     * 先预热，再在给定时间内反复执行，报告每次操作的平均耗时和分配的内存（当前线程）
+     */
+    private static void measure(String name, double seconds, Operation operation) throws IOException {
+        long warmupEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+        while (System.nanoTime() < warmupEnd) {
+            operation.run();
+        }
+        System.gc();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        long operations = 0;
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                operation.run();
+            }
+            operations += 100;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.println(String.format("  %s: %.2f 微秒/次，%.0f 字节/次", name,
+                (now - start) / 1e3 / operations, (double) allocated / operations));
+    }
+    
+    /**
+     * 引号、反斜杠、控制字符、U+2028和\\u转义：各自的结果是否与原文一致
+     */
+    private static void checkCorrectness() {
+        String[] samples = {
+                "普通文本\n第二行",
+                "《\"庆余年\"》推荐",
+                "路径 C:\\shows\\",
+                "制表\t退格\b换页\f",
+                "行分隔符\u2028结束"
+        };
+        for (String sample : samples) {
+            String escapedSample = sample.replace("\n", "\\n").replace("\t", "\\t").replace("\b", "\\b")
+                    .replace("\f", "\\f").replace("\u2028", "\\u2028");
+            System.out.println("  " + escapedSample + "：");
+            System.out.println("    请求编码  字符串拼接 " + verdict(isValidRequest(
+                    buildRequestBody(sample, false), sample)) + "，JsonWriter " + verdict(isValidRequest(
+                    new String(ChatCompletionCodec.encodeRequest(sample, false), StandardCharsets.UTF_8), sample)));
+            String encodedResponse = completion(jsonString(sample));
+            String oldResult;
+            try {
+                oldResult = extractContentFromResponse(encodedResponse);
+            } catch (RuntimeException e) {
+                oldResult = null;
+            }
+            String newResult;
+            try {
+                newResult = ChatCompletionCodec.readContent(encodedResponse);
+            } catch (IOException e) {
+                newResult = null;
+            }
+            System.out.println("    响应解析  indexOf截取 " + verdict(sample.equals(oldResult))
+                    + "，JsonReader " + verdict(sample.equals(newResult)));
+        }
+    }
+    
+    private static String verdict(boolean correct) {
+        return correct ? "正确" : "错误";
+    }
+    
+    /**
+     * 请求体是合法JSON，并且messages[0].content还原为原文（借助Gson解析）
+     */
+    private static boolean isValidRequest(String body, String prompt) {
+        try {
+            com.google.gson.JsonObject request = new com.google.gson.Gson().fromJson(body, com.google.gson.JsonObject.class);
+            if (body.indexOf('\b') >= 0 || body.indexOf('\f') >= 0 || body.indexOf('\u2028') >= 0) {
+                return false; // Gson宽松解析会接受未转义的控制字符，但严格的JSON不允许
+            }
+            return request.getAsJsonArray("messages").get(0).getAsJsonObject()
+                    .get("content").getAsString().equals(prompt);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+    
+    // ---------- 合成负载 ----------
+    
+    private static String prompt() {
+        StringBuilder prompt = new StringBuilder("用户喜好：喜欢节奏紧凑的古装剧和悬疑剧，不喜欢家庭伦理剧\n");
+        prompt.append("用户评价过的电视剧：庆余年（9.0分）；琅琊榜（9.5分）；隐秘的角落（8.5分）\n\n候选电视剧：\n");
+        for (int i = 0; i < CANDIDATES; i++) {
+            prompt.append("《候选剧").append(i).append("》 - 类型：古装/悬疑 - 评分：").append(7 + i % 3)
+                    .append(".5 - 简介：\"主角\"卷入一桩旧案，在朝堂与江湖之间周旋\t（共").append(30 + i)
+                    .append("集）\n");
+        }
+        prompt.append("\n请只从以上候选电视剧中挑选3-5部最符合用户喜好的推荐给用户，并说明理由");
+        return prompt.toString();
+    }
+    
+    private static String response() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < RESPONSE_LINES; i++) {
+            content.append(i + 1).append(". 候选剧").append(i).append("：节奏紧凑，悬疑感强，与您喜欢的庆余年风格相近\n");
+        }
+        return completion(jsonString(content.toString()));
+    }
+    
+    private static List<String> events() {
+        String[] pieces = {"推荐", "候选剧", "1", "：节奏", "紧凑，", "悬疑感", "强\n"};
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < STREAM_EVENTS; i++) {
+            events.add("{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1760000000,"
+                    + "\"model\":\"deepseek-chat\",\"choices\":[{\"index\":0,\"delta\":{\"content\":"
+                    + jsonString(pieces[i % pieces.length]) + "},\"finish_reason\":null}]}");
+        }
+        return events;
+    }
+    
+    /**
+     * 与接口返回格式一致的完整响应，content为已编码的JSON字符串
+     */
+    private static String completion(String encodedContent) {
+        return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1760000000,"
+                + "\"model\":\"deepseek-chat\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\","
+                + "\"content\":" + encodedContent + "},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":1200,\"completion_tokens\":400,\"total_tokens\":1600}}";
+    }
+    
+    private static String jsonString(String text) {
+        return new com.google.gson.JsonPrimitive(text).toString();
+    }
+    
+    // ---------- 改用ChatCompletionCodec之前的实现 ----------
+    
+    private static String buildRequestBody(String prompt, boolean stream) {
+        String escapedPrompt = prompt.replace("\\", "\\\\")
+                                   .replace("\"", "\\\"")
+                                   .replace("\n", "\\n")
+                                   .replace("\r", "\\r")
+                                   .replace("\t", "\\t");
+        
+        return "{" +
+               "\"model\": \"deepseek-chat\"," +
+               "\"messages\": [{" +
+               "\"role\": \"user\"," +
+               "\"content\": \"" + escapedPrompt + "\"" +
+               "}]," +
+               "\"max_tokens\": 1000," +
+               "\"temperature\": 0.7," +
+               "\"stream\": " + stream +
+               "}";
+    }
+    
+    private static String extractContentFromResponse(String response) {
+        int contentIndex = response.indexOf("\"content\":\"");
+        if (contentIndex == -1) {
+            throw new RuntimeException("无法在API响应中找到内容");
+        }
+        
+        contentIndex += 11; // 跳过 "\"content\":\""
+        int contentEnd = response.indexOf("\"", contentIndex);
+        
+        if (contentEnd == -1) {
+            throw new RuntimeException("API响应格式不正确");
+        }
+        
+        String content = response.substring(contentIndex, contentEnd);
+        
+        return content.replace("\\n", "\n")
+                     .replace("\\\"", "\"")
+                     .replace("\\\\", "\\");
+    }
+    
+    private static String extractDeltaContent(String event) {
+        return event.contains("\"content\":\"") ? extractContentFromResponse(event) : "";
+    }
+    
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
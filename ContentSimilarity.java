@@ -0,0 +1,325 @@
+import java.util.*;
+
+/**
+ * 基于内容的相似电视剧（"更多类似作品"）
+ * 把类型、导演、演员经字典编码为特征，每部电视剧表示为TF-IDF加权并归一化的稀疏向量，
+ * 两部电视剧的相似度为向量的余弦；为每部电视剧预先保存最相似的若干部。
+ * 候选只经倒排表中文档频率不高的特征查找：大量电视剧共有的特征（如常见类型）IDF很低，
+ * 只共有这类特征的电视剧不算相似，也不遍历其倒排表，每部电视剧的计算量与目录大小无关。
+ * 电视剧新增、修改、删除时只重新计算与之有共同特征的电视剧的相似列表；
+ * 增量更新时其他电视剧沿用原来的IDF权重，直到下次重建。
+ * 不是线程安全的，由调用方加锁（与检索索引相同）
+ */
+class ContentSimilarity {
+    // 每部电视剧保存的相似电视剧数量
+    private static final int DEFAULT_TOP_N = 10;
+    // 文档频率超过 max(该值, 电视剧数量×比例) 的特征不用于查找候选
+    private static final int MIN_STOP_FEATURE_FREQUENCY = 64;
+    private static final double STOP_FEATURE_RATIO = 0.05;
+    
+    /**
+     * 一部相似电视剧
+     */
+    static class Neighbor {
+        final String tvShowId;
+        final double score;
+        
+        Neighbor(String tvShowId, double score) {
+            this.tvShowId = tvShowId;
+            this.score = score;
+        }
+        
+        public String getTvShowId() { return tvShowId; }
+        public double getScore() { return score; }
+    }
+    
+    /**
+     * 电视剧的特征向量（特征编码升序，权重已归一化）
+     */
+    private static final class Vector {
+        final int[] features;
+        final float[] weights;
+        
+        Vector(int[] features, float[] weights) {
+            this.features = features;
+            this.weights = weights;
+        }
+        
+        /**
+         * 余弦相似度（两个向量都已归一化，按特征编码归并求点积）
+         */
+        double dot(Vector other) {
+            double sum = 0;
+            int i = 0;
+            int j = 0;
+            while (i < features.length && j < other.features.length) {
+                if (features[i] == other.features[j]) {
+                    sum += (double) weights[i++] * other.weights[j++];
+                } else if (features[i] < other.features[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return sum;
+        }
+    }
+    
+    private final int topN;
+    // 特征字典：带字段前缀的特征名 -> 编码
+    private final Map<String, Integer> featureCodes = new HashMap<>();
+    // 编码 -> 包含该特征的电视剧数量
+    private int[] documentFrequency = new int[64];
+    // 编码 -> 包含该特征的电视剧
+    private final Map<Integer, Set<String>> postings = new HashMap<>();
+    private final Map<String, Vector> vectors = new HashMap<>();
+    // 电视剧ID -> 按相似度从高到低排列的相似电视剧
+    private final Map<String, List<Neighbor>> neighbors = new HashMap<>();
+    
+    public ContentSimilarity() {
+        this(DEFAULT_TOP_N);
+    }
+    
+    public ContentSimilarity(int topN) {
+        this.topN = topN;
+    }
+    
+    /**
+     * 由全部电视剧重建：先统计文档频率，再按最终的IDF加权并计算相似列表
+     */
+    public void rebuild(Collection<TVShowRecommendationSystem.TVShow> tvShows) {
+        featureCodes.clear();
+        documentFrequency = new int[64];
+        postings.clear();
+        vectors.clear();
+        neighbors.clear();
+        for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+            index(tvShow.getId(), encode(tvShow));
+        }
+        for (Map.Entry<String, Vector> entry : vectors.entrySet()) {
+            entry.setValue(weigh(entry.getValue().features, vectors.size()));
+        }
+        for (Map.Entry<String, Vector> entry : vectors.entrySet()) {
+            neighbors.put(entry.getKey(), topOf(scoreAgainstAll(entry.getKey(), entry.getValue())));
+        }
+    }
+    
+    /**
+     * 新增电视剧
+     */
+    public void add(TVShowRecommendationSystem.TVShow tvShow) {
+        update(tvShow);
+    }
+    
+    /**
+     * 电视剧的类型、导演或演员修改后更新
+     */
+    public void update(TVShowRecommendationSystem.TVShow tvShow) {
+        String id = tvShow.getId();
+        Set<String> affected = new HashSet<>();
+        Vector old = vectors.get(id);
+        if (old != null) {
+            collectSharing(old, affected);
+            unindex(id, old);
+        }
+        Vector vector = index(id, encode(tvShow));
+        collectSharing(vector, affected);
+        affected.remove(id);
+        
+        Map<String, Double> scores = scoreAgainstAll(id, vector);
+        neighbors.put(id, topOf(scores));
+        for (String other : affected) {
+            refreshNeighbor(other, id, scores.getOrDefault(other, 0.0));
+        }
+    }
+    
+    /**
+     * 删除电视剧
+     */
+    public void remove(String tvShowId) {
+        Vector old = vectors.get(tvShowId);
+        if (old == null) {
+            return;
+        }
+        Set<String> affected = new HashSet<>();
+        collectSharing(old, affected);
+        affected.remove(tvShowId);
+        unindex(tvShowId, old);
+        neighbors.remove(tvShowId);
+        for (String other : affected) {
+            refreshNeighbor(other, tvShowId, 0.0);
+        }
+    }
+    
+    /**
+     * 与某部电视剧最相似的电视剧
+     * @return 按相似度从高到低排列，最多k部
+     */
+    public List<Neighbor> similarTo(String tvShowId, int k) {
+        List<Neighbor> list = neighbors.getOrDefault(tvShowId, Collections.emptyList());
+        return new ArrayList<>(list.subList(0, Math.min(k, list.size())));
+    }
+    
+    /**
+     * 提取特征：类型、导演按逗号切分，演员逐个，各自带字段前缀
+     * @return 未加权的向量（权重在index中计算）
+     */
+    private int[] encode(TVShowRecommendationSystem.TVShow tvShow) {
+        Set<String> names = new LinkedHashSet<>();
+        addFeatures(names, "g:", tvShow.getGenre());
+        addFeatures(names, "d:", tvShow.getDirector());
+        for (String actor : tvShow.getActors()) {
+            addFeatures(names, "a:", actor);
+        }
+        int[] features = new int[names.size()];
+        int i = 0;
+        for (String name : names) {
+            Integer code = featureCodes.get(name);
+            if (code == null) {
+                code = featureCodes.size();
+                featureCodes.put(name, code);
+            }
+            features[i++] = code;
+        }
+        Arrays.sort(features);
+        return features;
+    }
+    
+    private static void addFeatures(Set<String> names, String prefix, String value) {
+        if (value == null) {
+            return;
+        }
+        for (String part : value.split("[,，、/]")) {
+            String trimmed = part.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                names.add(prefix + trimmed);
+            }
+        }
+    }
+    
+    /**
+     * 加入倒排表并按当前的IDF计算权重
+     */
+    private Vector index(String tvShowId, int[] features) {
+        for (int feature : features) {
+            if (feature >= documentFrequency.length) {
+                documentFrequency = Arrays.copyOf(documentFrequency, Math.max(feature + 1, documentFrequency.length * 2));
+            }
+            documentFrequency[feature]++;
+            postings.computeIfAbsent(feature, key -> new HashSet<>()).add(tvShowId);
+        }
+        Vector vector = weigh(features, vectors.size() + 1);
+        vectors.put(tvShowId, vector);
+        return vector;
+    }
+    
+    private void unindex(String tvShowId, Vector vector) {
+        for (int feature : vector.features) {
+            documentFrequency[feature]--;
+            Set<String> shows = postings.get(feature);
+            shows.remove(tvShowId);
+            if (shows.isEmpty()) {
+                postings.remove(feature);
+            }
+        }
+        vectors.remove(tvShowId);
+    }
+    
+    /**
+     * TF-IDF权重（每个特征在一部电视剧中至多出现一次，TF为1）并做L2归一化
+     */
+    private Vector weigh(int[] features, int total) {
+        float[] weights = new float[features.length];
+        double norm = 0;
+        for (int i = 0; i < features.length; i++) {
+            // 平滑的IDF：只出现在一部电视剧中的特征不能提供相似性，但权重仍为正
+            double idf = Math.log((1.0 + total) / (1.0 + documentFrequency[features[i]])) + 1.0;
+            weights[i] = (float) idf;
+            norm += idf * idf;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] *= scale;
+            }
+        }
+        return new Vector(features, weights);
+    }
+    
+    /**
+     * 与候选电视剧（经倒排表找到的、有共同的非停用特征的电视剧）的余弦相似度
+     */
+    private Map<String, Double> scoreAgainstAll(String tvShowId, Vector vector) {
+        Set<String> candidates = new HashSet<>();
+        collectSharing(vector, candidates);
+        candidates.remove(tvShowId);
+        Map<String, Double> scores = new HashMap<>();
+        for (String other : candidates) {
+            scores.put(other, vector.dot(vectors.get(other)));
+        }
+        return scores;
+    }
+    
+    private List<Neighbor> topOf(Map<String, Double> scores) {
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::getScore));
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            if (entry.getValue() > 0) {
+                best.add(new Neighbor(entry.getKey(), entry.getValue()));
+                if (best.size() > topN) {
+                    best.poll();
+                }
+            }
+        }
+        List<Neighbor> list = new ArrayList<>(best);
+        list.sort(Comparator.comparingDouble(Neighbor::getScore).reversed());
+        return list;
+    }
+    
+    /**
+     * 某部电视剧与changed的相似度变为score后，更新其相似列表
+     * 只有当changed原本在已满的列表中且相似度下降时，列表外可能有更相似的电视剧，需重新计算
+     */
+    private void refreshNeighbor(String tvShowId, String changed, double score) {
+        List<Neighbor> list = neighbors.get(tvShowId);
+        if (list == null) {
+            return;
+        }
+        boolean full = list.size() >= topN;
+        double previous = -1;
+        for (Iterator<Neighbor> it = list.iterator(); it.hasNext(); ) {
+            Neighbor neighbor = it.next();
+            if (neighbor.tvShowId.equals(changed)) {
+                previous = neighbor.score;
+                it.remove();
+                break;
+            }
+        }
+        if (previous >= 0 && full && score < previous) {
+            neighbors.put(tvShowId, topOf(scoreAgainstAll(tvShowId, vectors.get(tvShowId))));
+            return;
+        }
+        if (score <= 0 || (list.size() >= topN && score <= list.get(list.size() - 1).score)) {
+            return;
+        }
+        int position = 0;
+        while (position < list.size() && list.get(position).score >= score) {
+            position++;
+        }
+        list.add(position, new Neighbor(changed, score));
+        if (list.size() > topN) {
+            list.remove(list.size() - 1);
+        }
+    }
+    
+    /**
+     * 收集与该向量有共同特征的电视剧，跳过停用特征（文档频率过高）的倒排表
+     */
+    private void collectSharing(Vector vector, Set<String> into) {
+        int stopFrequency = Math.max(MIN_STOP_FEATURE_FREQUENCY, (int) (vectors.size() * STOP_FEATURE_RATIO));
+        for (int feature : vector.features) {
+            if (documentFrequency[feature] <= stopFrequency) {
+                into.addAll(postings.getOrDefault(feature, Collections.emptySet()));
+            }
+        }
+    }
+}
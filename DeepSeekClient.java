@@ -0,0 +1,446 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * DeepSeek对话补全的异步客户端
+ * 基于java.net.http.HttpClient发送请求，返回CompletableFuture而不阻塞调用线程；
+ * 连接和整个请求（包括接收响应体）都有超时，超时或调用方取消返回的future时中止连接并归还许可；
+ * 同时进行中的请求数量有上限（超出的请求排队等待），遇到429或5xx响应、连接失败时按带随机抖动的指数退避重试。
+ * 流式模式请求服务端推送事件（SSE），逐行解析"data:"事件，收到的内容片段立即回调，
+ * 无需等待整个补全生成完毕
+ */
+class DeepSeekClient {
+    // 默认参数
+    static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    static final int DEFAULT_MAX_RETRIES = 3;
+    // 退避时间：第n次重试在 [0, min(BASE * 2^n, MAX)] 中随机选取
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 8000;
+    
+    /**
+     * 非200响应
+     */
+    static class ApiException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        final int statusCode;
+        
+        ApiException(int statusCode, String body) {
+            super("HTTP响应代码: " + statusCode + (body == null || body.isEmpty() ? "" : " - " + body));
+            this.statusCode = statusCode;
+        }
+        
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+    
+    private final URI endpoint;
+    private final String apiKey;
+    private final Duration requestTimeout;
+    private final int maxRetries;
+    private final HttpClient httpClient;
+    private final Executor executor;
+    
+    // 限制同时进行中的请求数量：拿不到许可的请求排队，有请求结束时依次启动
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    
+    public DeepSeekClient(String apiUrl, String apiKey) {
+        this(apiUrl, apiKey, DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_RETRIES,
+                IoExecutor.shared());
+    }
+    
+    /**
+     * 构造函数
+     * @param apiUrl 对话补全接口地址
+     * @param apiKey API密钥
+     * @param connectTimeout 连接超时
+     * @param requestTimeout 单次请求（从发送到收完响应体）的超时
+     * @param maxInFlight 同时进行中的请求数上限
+     * @param maxRetries 最多重试次数
+     * @param executor 响应处理、回调和重试所用的执行器
+     */
+    public DeepSeekClient(String apiUrl, String apiKey, Duration connectTimeout, Duration requestTimeout,
+                          int maxInFlight, int maxRetries, Executor executor) {
+        this.endpoint = URI.create(apiUrl);
+        this.apiKey = apiKey;
+        this.requestTimeout = requestTimeout;
+        this.maxRetries = maxRetries;
+        this.permits = new Semaphore(maxInFlight);
+        this.executor = executor;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+    }
+    
+    /**
+     * 请求对话补全
+     * @param prompt 用户提示
+     * @return 补全内容；失败时以IOException（或其子类ApiException、HttpTimeoutException）异常完成；
+     *         取消返回的future会中止进行中的请求
+     */
+    public CompletableFuture<String> complete(String prompt) {
+        byte[] requestBody = ChatCompletionCodec.encodeRequest(prompt, false);
+        Call call = new Call();
+        return withPermit(call, () -> sendWithRetry(call, requestBody, "application/json",
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8), () -> true, 0)
+                .thenApply(response -> {
+                    try {
+                        return ChatCompletionCodec.readContent(response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }));
+    }
+    
+    /**
+     * 以流式模式请求对话补全
+     * @param prompt 用户提示
+     * @param onToken 每收到一段内容时在HTTP客户端线程上回调
+     * @return 完整的补全内容；已收到内容后连接中断时不再重试，直接以异常完成；
+     *         取消返回的future会中止进行中的请求
+     */
+    public CompletableFuture<String> stream(String prompt, Consumer<String> onToken) {
+        byte[] requestBody = ChatCompletionCodec.encodeRequest(prompt, true);
+        AtomicBoolean emitted = new AtomicBoolean(false);
+        Consumer<String> tracking = token -> {
+            emitted.set(true);
+            onToken.accept(token);
+        };
+        HttpResponse.BodyHandler<String> handler = info -> info.statusCode() == 200
+                ? HttpResponse.BodySubscribers.fromLineSubscriber(new SseSubscriber(tracking),
+                        SseSubscriber::getContent, StandardCharsets.UTF_8, null)
+                : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        Call call = new Call();
+        return withPermit(call, () -> sendWithRetry(call, requestBody, "text/event-stream", handler,
+                () -> !emitted.get(), 0));
+    }
+    
+    /**
+     * 发送请求，可重试的失败按退避时间延迟后重发
+     * HttpRequest.timeout只限制等待响应头的时间，响应体另由requestTimeout限制：
+     * 到期时中止连接（服务端发出响应头后停止发送也不会一直占用许可）
+     * @param canRetry 失败时是否还允许重试（例如流式响应已输出部分内容时不允许）
+     */
+    private CompletableFuture<String> sendWithRetry(Call call, byte[] requestBody, String accept,
+                                                    HttpResponse.BodyHandler<String> handler,
+                                                    BooleanSupplier canRetry, int attempt) {
+        if (call.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("请求已取消"));
+        }
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Accept", accept)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody))
+                .build();
+        
+        CompletableFuture<HttpResponse<String>> sending = httpClient.sendAsync(request, call.track(handler));
+        call.begin(sending);
+        return sending.copy()
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((response, error) -> {
+                    Throwable failure = unwrap(error);
+                    if (failure instanceof TimeoutException) {
+                        call.abort();
+                        failure = new HttpTimeoutException("请求超时（" + requestTimeout.toMillis() + " 毫秒）");
+                    }
+                    if (failure == null && response.statusCode() == 200) {
+                        return CompletableFuture.completedFuture(response.body());
+                    }
+                    if (failure == null) {
+                        failure = new ApiException(response.statusCode(), response.body());
+                    }
+                    if (attempt >= maxRetries || !isRetryable(failure) || !canRetry.getAsBoolean()) {
+                        return CompletableFuture.<String>failedFuture(failure);
+                    }
+                    long delay = backoffMillis(attempt, response);
+                    Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+                    return CompletableFuture.supplyAsync(() -> requestBody, delayed)
+                            .thenCompose(body -> sendWithRetry(call, body, accept, handler, canRetry, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+    
+    /**
+     * 429、5xx和网络错误可以重试；超时不重试（整体等待时间已经用完一个请求周期）
+     */
+    private static boolean isRetryable(Throwable failure) {
+        if (failure instanceof ApiException) {
+            int status = ((ApiException) failure).getStatusCode();
+            return status == 429 || status >= 500;
+        }
+        return failure instanceof IOException && !(failure instanceof HttpTimeoutException);
+    }
+    
+    /**
+     * 退避时间：服务端给出Retry-After（秒）时遵从，否则为带全量随机抖动的指数退避
+     */
+    private static long backoffMillis(int attempt, HttpResponse<?> response) {
+        if (response != null) {
+            Optional<String> retryAfter = response.headers().firstValue("Retry-After");
+            if (retryAfter.isPresent()) {
+                try {
+                    return Math.min(Long.parseLong(retryAfter.get().trim()) * 1000, BACKOFF_MAX_MS);
+                } catch (NumberFormatException e) {
+                    // 日期格式的Retry-After按普通退避处理
+                }
+            }
+        }
+        long cap = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+    
+    /**
+     * 取得许可后执行任务，任务完成（无论成败）后归还许可并启动排队中的下一个任务
+     * 返回的future被取消时中止进行中的请求（许可在请求结束后归还），排队中的任务不再启动
+     */
+    private <T> CompletableFuture<T> withPermit(Call call, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        waiting.add(() -> {
+            if (result.isDone()) {
+                permits.release();
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((value, error) -> {
+                permits.release();
+                drain();
+                if (error != null) {
+                    result.completeExceptionally(unwrap(error));
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        drain();
+        return result;
+    }
+    
+    /**
+     * 有许可且有排队任务时启动任务
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                continue;
+            }
+            next.run();
+        }
+    }
+    
+    /**
+     * 一次调用（包括各次重试）的中止句柄：记录当前进行中的发送和响应体订阅
+     */
+    private static final class Call {
+        private CompletableFuture<?> sending;
+        private Flow.Subscription subscription;
+        private boolean cancelled = false;
+        
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+        
+        /**
+         * 开始一次发送（每次重试重新开始）
+         */
+        synchronized void begin(CompletableFuture<?> sending) {
+            this.sending = sending;
+            this.subscription = null;
+            if (cancelled) {
+                sending.cancel(true);
+            }
+        }
+        
+        /**
+         * 包装响应体处理器，记录响应体订阅以便中止
+         */
+        <T> HttpResponse.BodyHandler<T> track(HttpResponse.BodyHandler<T> handler) {
+            return info -> new TrackedSubscriber<>(handler.apply(info), this);
+        }
+        
+        synchronized void subscribed(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            }
+        }
+        
+        /**
+         * 调用方取消：中止当前发送，之后不再重试
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            abort();
+        }
+        
+        /**
+         * 中止当前发送：取消交换并取消响应体订阅（关闭连接）
+         */
+        synchronized void abort() {
+            if (sending != null) {
+                sending.cancel(true);
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+    
+    /**
+     * 记录订阅的响应体处理器包装
+     */
+    private static final class TrackedSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final Call call;
+        
+        TrackedSubscriber(HttpResponse.BodySubscriber<T> delegate, Call call) {
+            this.delegate = delegate;
+            this.call = call;
+        }
+        
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+            call.subscribed(subscription);
+        }
+        
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            delegate.onNext(item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+    
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+    
+    /**
+     * 服务端推送事件的逐行解析器
+     * 事件由若干"data:"行组成、以空行结束；每个事件是一个补全片段（choices[0].delta.content），
+     * "[DONE]"表示结束
+     */
+    static class SseSubscriber implements Flow.Subscriber<String> {
+        private final Consumer<String> onToken;
+        private final StringBuilder content = new StringBuilder();
+        private final StringBuilder data = new StringBuilder();
+        private boolean done = false;
+        private IOException error = null;
+        
+        SseSubscriber(Consumer<String> onToken) {
+            this.onToken = onToken;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                dispatch();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+            // 注释行（以冒号开头）和event、id等其他字段忽略
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            // 由HttpClient以异常完成响应
+        }
+        
+        @Override
+        public void onComplete() {
+            // 最后一个事件之后可能没有空行
+            dispatch();
+        }
+        
+        /**
+         * 完整内容；有事件无法解析时抛出异常，使整个响应以异常完成
+         */
+        String getContent() {
+            if (error != null) {
+                throw new UncheckedIOException(error);
+            }
+            return content.toString();
+        }
+        
+        private void dispatch() {
+            if (data.length() == 0) {
+                return;
+            }
+            String event = data.toString();
+            data.setLength(0);
+            if (done || error != null || event.equals("[DONE]")) {
+                done = true;
+                return;
+            }
+            try {
+                String token = ChatCompletionCodec.readDeltaContent(event);
+                if (!token.isEmpty()) {
+                    content.append(token);
+                    onToken.accept(token);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+}
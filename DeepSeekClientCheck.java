@@ -0,0 +1,359 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DeepSeekClient的本地桩服务检查工具（不需要网络）
+ * 用JDK自带的HttpServer模拟对话补全接口的各种响应，逐项检查客户端的行为：
+ * 429/5xx重试、遵从Retry-After、4xx不重试、同时进行中的请求数上限、请求超时不重试、
+ * 发出响应头后停止发送时按请求超时中止并归还许可、取消返回的future时断开连接并归还许可、
+ * 流式响应逐段回调（不等整个响应结束）、多行data事件和注释行的解析，
+ * 以及流式响应已输出内容后连接中断时不再重试
+ *
+ * 用法：java DeepSeekClientCheck
+ */
+class DeepSeekClientCheck {
+    private static final String COMPLETION = "{\"choices\":[{\"message\":{\"content\":\"你好\\n世界\"}}]}";
+    
+    private final HttpServer server;
+    private final String baseUrl;
+    private final List<String> failures = new ArrayList<>();
+    
+    private DeepSeekClientCheck() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        DeepSeekClientCheck check = new DeepSeekClientCheck();
+        try {
+            check.retriesServerErrors();
+            check.honoursRetryAfter();
+            check.doesNotRetryClientErrors();
+            check.capsInFlightRequests();
+            check.timesOutWithoutRetry();
+            check.abortsStalledBody();
+            check.cancelReleasesPermit();
+            check.streamsIncrementally();
+            check.retriesStreamBeforeFirstToken();
+            check.doesNotRetryPartialStream();
+        } finally {
+            check.server.stop(0);
+        }
+        System.out.println(check.failures.isEmpty() ? "全部通过" : "失败 " + check.failures.size() + " 项");
+        System.exit(check.failures.isEmpty() ? 0 : 1);
+    }
+    
+    /**
+     * 前两次503，第三次成功
+     */
+    private void retriesServerErrors() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = context("/server-error", exchange -> {
+            if (calls.incrementAndGet() < 3) {
+                respond(exchange, 503, "busy");
+            } else {
+                respond(exchange, 200, COMPLETION);
+            }
+        });
+        String content = client(url, Duration.ofSeconds(5), 4, 3).complete("p").get(30, TimeUnit.SECONDS);
+        report("5xx重试", content.equals("你好\n世界") && calls.get() == 3, "请求 " + calls.get() + " 次，内容: " + content);
+    }
+    
+    /**
+     * 429带Retry-After: 1，重试前至少等待1秒
+     */
+    private void honoursRetryAfter() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = context("/retry-after", exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                respond(exchange, 429, "slow down");
+            } else {
+                respond(exchange, 200, COMPLETION);
+            }
+        });
+        long start = System.nanoTime();
+        client(url, Duration.ofSeconds(5), 4, 3).complete("p").get(30, TimeUnit.SECONDS);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        report("429遵从Retry-After", calls.get() == 2 && elapsedMillis >= 950,
+                "请求 " + calls.get() + " 次，耗时 " + elapsedMillis + " 毫秒");
+    }
+    
+    /**
+     * 400直接失败
+     */
+    private void doesNotRetryClientErrors() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = context("/client-error", exchange -> {
+            calls.incrementAndGet();
+            respond(exchange, 400, "bad request");
+        });
+        Throwable failure = failureOf(client(url, Duration.ofSeconds(5), 4, 3).complete("p"));
+        boolean ok = failure instanceof DeepSeekClient.ApiException
+                && ((DeepSeekClient.ApiException) failure).getStatusCode() == 400 && calls.get() == 1;
+        report("4xx不重试", ok, "请求 " + calls.get() + " 次，异常: " + failure);
+    }
+    
+    /**
+     * 上限为2时同时发出8个请求，服务端同时处理的请求不超过2个，全部成功
+     */
+    private void capsInFlightRequests() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        String url = context("/slow", exchange -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(200);
+            inFlight.decrementAndGet();
+            respond(exchange, 200, COMPLETION);
+        });
+        DeepSeekClient client = client(url, Duration.ofSeconds(5), 2, 0);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(client.complete("p"));
+        }
+        int succeeded = 0;
+        for (CompletableFuture<String> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS).equals("你好\n世界")) {
+                succeeded++;
+            }
+        }
+        report("同时进行中的请求数上限", peak.get() <= 2 && succeeded == 8,
+                "服务端最多同时处理 " + peak.get() + " 个，成功 " + succeeded + " 个");
+    }
+    
+    /**
+     * 服务端2秒不响应，请求超时300毫秒，以HttpTimeoutException失败且不重试
+     */
+    private void timesOutWithoutRetry() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = context("/hang", exchange -> {
+            calls.incrementAndGet();
+            sleep(2000);
+            respond(exchange, 200, COMPLETION);
+        });
+        long start = System.nanoTime();
+        Throwable failure = failureOf(client(url, Duration.ofMillis(300), 4, 3).complete("p"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        report("请求超时", failure instanceof HttpTimeoutException && calls.get() == 1 && elapsedMillis < 1500,
+                "请求 " + calls.get() + " 次，耗时 " + elapsedMillis + " 毫秒，异常: " + failure);
+    }
+    
+    /**
+     * 第一次请求时服务端发出响应头和一个事件后停止发送：上限为1、请求超时500毫秒，
+     * 该请求须以HttpTimeoutException结束并归还许可，紧接着的请求能立即开始并成功
+     */
+    private void abortsStalledBody() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        String url = context("/stall", exchange -> {
+            if (calls.incrementAndGet() > 1) {
+                respond(exchange, 200, COMPLETION);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            write(exchange.getResponseBody(), "data: " + delta("你") + "\n\n");
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        DeepSeekClient client = client(url, Duration.ofMillis(500), 1, 3);
+        long start = System.nanoTime();
+        CompletableFuture<String> stalled = client.stream("p", token -> { });
+        CompletableFuture<String> next = client.complete("p");
+        Throwable failure = failureOf(stalled);
+        long stalledMillis = (System.nanoTime() - start) / 1_000_000;
+        String content = next.get(5, TimeUnit.SECONDS);
+        release.countDown();
+        report("响应体停滞时超时并归还许可", failure instanceof HttpTimeoutException && stalledMillis < 2000
+                        && content.equals("你好\n世界") && calls.get() == 2,
+                "停滞的请求耗时 " + stalledMillis + " 毫秒，异常: " + failure + "，后一个请求内容: " + content);
+    }
+    
+    /**
+     * 上限为1、请求超时10秒：第一次请求发出一个事件后只发送注释行，客户端收到片段后取消；
+     * 服务端须观察到连接断开，紧接着的请求能立即开始并成功
+     */
+    private void cancelReleasesPermit() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch disconnected = new CountDownLatch(1);
+        String url = context("/cancel", exchange -> {
+            if (calls.incrementAndGet() > 1) {
+                respond(exchange, 200, COMPLETION);
+                return;
+            }
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            write(body, "data: " + delta("你") + "\n\n");
+            try {
+                for (int i = 0; i < 100; i++) {
+                    sleep(100);
+                    write(body, ": waiting\n\n");
+                }
+            } catch (IOException e) {
+                disconnected.countDown();
+            }
+        });
+        DeepSeekClient client = client(url, Duration.ofSeconds(10), 1, 3);
+        CountDownLatch firstToken = new CountDownLatch(1);
+        CompletableFuture<String> cancelled = client.stream("p", token -> firstToken.countDown());
+        CompletableFuture<String> next = client.complete("p");
+        boolean streamed = firstToken.await(5, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        cancelled.cancel(true);
+        String content = next.get(5, TimeUnit.SECONDS);
+        long nextMillis = (System.nanoTime() - start) / 1_000_000;
+        boolean closed = disconnected.await(5, TimeUnit.SECONDS);
+        report("取消后断开连接并归还许可", streamed && closed && content.equals("你好\n世界") && nextMillis < 2000,
+                "服务端观察到断开: " + closed + "，取消后 " + nextMillis + " 毫秒完成下一个请求");
+    }
+    
+    /**
+     * 第一个片段发出后服务端等待客户端收到再继续：客户端须在响应结束前回调第一个片段；
+     * 同时检查多行data事件、注释行、[DONE]之后的事件被忽略
+     */
+    private void streamsIncrementally() throws Exception {
+        CountDownLatch firstToken = new CountDownLatch(1);
+        boolean[] seenBeforeEnd = new boolean[1];
+        String url = context("/stream", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            write(body, ": keep-alive\n\n");
+            write(body, "data: " + delta("你") + "\n\n");
+            try {
+                seenBeforeEnd[0] = firstToken.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            write(body, "data: {\"choices\":[{\"delta\":\ndata: {\"content\":\"好\"}}]}\n\n");
+            write(body, "data: [DONE]\n\n");
+            write(body, "data: " + delta("多余") + "\n\n");
+            body.close();
+        });
+        List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+        String content = client(url, Duration.ofSeconds(10), 4, 0).stream("p", token -> {
+            tokens.add(token);
+            firstToken.countDown();
+        }).get(30, TimeUnit.SECONDS);
+        report("流式响应逐段回调", seenBeforeEnd[0] && content.equals("你好") && tokens.equals(Arrays.asList("你", "好")),
+                "首个片段先于响应结束: " + seenBeforeEnd[0] + "，片段: " + tokens + "，内容: " + content);
+    }
+    
+    /**
+     * 流式请求在输出任何内容前收到503，可以重试
+     */
+    private void retriesStreamBeforeFirstToken() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = context("/stream-retry", exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                respond(exchange, 503, "busy");
+                return;
+            }
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            write(body, "data: " + delta("好") + "\n\ndata: [DONE]\n\n");
+            body.close();
+        });
+        String content = client(url, Duration.ofSeconds(5), 4, 3).stream("p", token -> { }).get(30, TimeUnit.SECONDS);
+        report("流式响应输出前可重试", content.equals("好") && calls.get() == 2,
+                "请求 " + calls.get() + " 次，内容: " + content);
+    }
+    
+    /**
+     * 输出一个片段后连接中断（声明的长度没有写完）：以异常完成，不重试（否则已输出的内容会重复）
+     */
+    private void doesNotRetryPartialStream() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String url = context("/stream-broken", exchange -> {
+            calls.incrementAndGet();
+            byte[] event = ("data: " + delta("你") + "\n\n").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, event.length + 1024);
+            OutputStream body = exchange.getResponseBody();
+            body.write(event);
+            body.flush();
+            sleep(200);
+            // 长度不足时关闭会断开连接
+            exchange.close();
+        });
+        List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+        Throwable failure = failureOf(client(url, Duration.ofSeconds(5), 4, 3).stream("p", tokens::add));
+        report("部分输出后中断不重试", failure instanceof IOException && calls.get() == 1 && tokens.equals(Arrays.asList("你")),
+                "请求 " + calls.get() + " 次，片段: " + tokens + "，异常: " + failure);
+    }
+    
+    private interface StubHandler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+    
+    private String context(String path, StubHandler handler) {
+        server.createContext(path, exchange -> {
+            try {
+                exchange.getRequestBody().readAllBytes();
+                handler.handle(exchange);
+            } catch (IOException e) {
+                // 故意中断连接的情形
+            } finally {
+                exchange.close();
+            }
+        });
+        return baseUrl + path;
+    }
+    
+    private static DeepSeekClient client(String url, Duration requestTimeout, int maxInFlight, int maxRetries) {
+        return new DeepSeekClient(url, "test-key", Duration.ofSeconds(2), requestTimeout, maxInFlight, maxRetries,
+                IoExecutor.shared());
+    }
+    
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+    
+    private static void write(OutputStream body, String text) throws IOException {
+        body.write(text.getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+    
+    private static String delta(String content) {
+        return "{\"choices\":[{\"delta\":{\"content\":\"" + content + "\"}}]}";
+    }
+    
+    private static Throwable failureOf(CompletableFuture<String> future) throws Exception {
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void report(String name, boolean passed, String detail) {
+        System.out.println((passed ? "通过: " : "失败: ") + name + "（" + detail + "）");
+        if (!passed) {
+            failures.add(name);
+        }
+    }
+}
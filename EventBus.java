@@ -0,0 +1,246 @@
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 有界环形缓冲区上的事件总线（仿Disruptor）
+ * 写入方按序号顺序发布事件，每个订阅者在自己的线程上按同样的顺序成批读取，
+ * 各自记录已处理到的序号；写入方只在最慢的订阅者落后一整圈时等待。
+ * 发布分两步：先在调用方的写锁内领取序号（序号顺序即修改顺序，领取不会阻塞），
+ * 释放写锁后再写入槽位并标记可读，缓冲区满时的等待不会占着写锁
+ * （订阅者处理事件时要取读锁）。订阅者只处理连续可读的一段，序号的顺序不会被打乱。
+ * 订阅者处理失败时其数据结构可能只更新了一部分，标记为待同步，由订阅者提供的同步操作从主数据整体重建，
+ * 同步结果已包含的事件不再处理；同步失败时丢弃期间的事件并稍后重试
+ *
+ * @param <E> 事件类型
+ */
+class EventBus<E> implements AutoCloseable {
+    /**
+     * 订阅者：在自己的线程上按发布顺序接收一批事件
+     */
+    interface Handler<E> {
+        void onEvents(List<E> events);
+    }
+    
+    /**
+     * 一个订阅者及其处理进度
+     */
+    private final class Subscriber implements Runnable {
+        final String name;
+        final Handler<E> handler;
+        final LongSupplier resync;
+        // 已处理完的最大序号
+        final AtomicLong processed = new AtomicLong(-1);
+        // 处理失败后待同步；同步成功前丢弃事件
+        volatile boolean dirty = false;
+        // 最近一次同步结果已包含的事件序号上界（不含）
+        long syncedUpTo = 0;
+        // 同步失败后下次重试的时刻
+        long nextResyncNanos = 0;
+        Thread thread;
+        
+        Subscriber(String name, Handler<E> handler, LongSupplier resync) {
+            this.name = name;
+            this.handler = handler;
+            this.resync = resync;
+        }
+        
+        @Override
+        public void run() {
+            List<E> batch = new ArrayList<>(maxBatch);
+            long next = processed.get() + 1;
+            while (true) {
+                if (dirty && System.nanoTime() - nextResyncNanos >= 0) {
+                    resync();
+                }
+                long end = next;
+                while (end - next < maxBatch && published.get(index(end)) == end) {
+                    if (!dirty && end >= syncedUpTo) {
+                        batch.add(eventAt(end));
+                    }
+                    end++;
+                }
+                if (end == next) {
+                    if (stopping && next >= claimed.get()) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, dirty ? RESYNC_RETRY_NANOS : IDLE_PARK_NANOS);
+                    continue;
+                }
+                if (!batch.isEmpty()) {
+                    try {
+                        handler.onEvents(batch);
+                    } catch (RuntimeException e) {
+                        System.out.println("事件处理失败（" + name + "），将由主数据重新同步: " + e);
+                        dirty = true;
+                    }
+                    batch.clear();
+                }
+                processed.set(end - 1);
+                next = end;
+            }
+        }
+        
+        private void resync() {
+            try {
+                syncedUpTo = resync.getAsLong();
+                dirty = false;
+            } catch (RuntimeException e) {
+                System.out.println("重新同步失败（" + name + "），稍后重试: " + e);
+                nextResyncNanos = System.nanoTime() + RESYNC_RETRY_NANOS;
+            }
+        }
+    }
+    
+    // 没有新事件时订阅者的最长等待时间（发布时会唤醒）
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 缓冲区满时写入方每次等待的时间
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    // 同步失败后的重试间隔
+    private static final long RESYNC_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final Object[] slots;
+    // 槽位 -> 最近一次写入该槽位并可读的序号
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int maxBatch;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    // 下一个待领取的序号
+    private final AtomicLong claimed = new AtomicLong(0);
+    private volatile boolean started = false;
+    private volatile boolean stopping = false;
+    
+    /**
+     * 构造函数
+     * @param capacity 缓冲区大小（向上取为2的幂）
+     * @param maxBatch 订阅者每批最多处理的事件数
+     */
+    public EventBus(int capacity, int maxBatch) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Object[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+    
+    /**
+     * 增加订阅者（须在start之前）
+     * @param resync 处理失败后由主数据重建订阅者的数据结构，返回重建结果已包含的事件序号上界（不含），
+     *               通常是在写入方的锁内读取的nextSequence
+     */
+    public synchronized void subscribe(String name, Handler<E> handler, LongSupplier resync) {
+        if (started) {
+            throw new IllegalStateException("事件总线已启动");
+        }
+        subscribers.add(new Subscriber(name, handler, resync));
+    }
+    
+    /**
+     * 启动各订阅者的线程（守护线程）
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.thread = new Thread(subscriber, "event-" + subscriber.name);
+            subscriber.thread.setDaemon(true);
+            subscriber.thread.start();
+        }
+        started = true;
+    }
+    
+    public boolean isStarted() {
+        return started;
+    }
+    
+    /**
+     * 下一个待领取的序号（在写入方的锁内读取时，之前的序号对应的修改都已完成）
+     */
+    public long nextSequence() {
+        return claimed.get();
+    }
+    
+    /**
+     * 领取下一个序号（由唯一的写入方调用，例如持有数据写锁时）
+     */
+    public long claim() {
+        return claimed.getAndIncrement();
+    }
+    
+    /**
+     * 写入已领取序号的事件并唤醒订阅者；最慢的订阅者落后一整圈时等待
+     * 领取的每个序号都必须发布，否则订阅者会停在该序号前
+     */
+    public void publish(long sequence, E event) {
+        while (sequence - slots.length > minProcessed()) {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        slots[index(sequence)] = event;
+        published.set(index(sequence), sequence);
+        for (Subscriber subscriber : subscribers) {
+            LockSupport.unpark(subscriber.thread);
+        }
+    }
+    
+    /**
+     * 等待所有订阅者处理完当前已领取的事件（且没有待同步的订阅者）
+     * @return 超时前全部处理完时返回true
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit) {
+        long target = claimed.get() - 1;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (minProcessed() < target || anyDirty()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        return true;
+    }
+    
+    /**
+     * 处理完已领取的事件后停止订阅者的线程
+     */
+    @Override
+    public void close() {
+        stopping = true;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.thread != null) {
+                LockSupport.unpark(subscriber.thread);
+            }
+        }
+    }
+    
+    private boolean anyDirty() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private long minProcessed() {
+        long min = Long.MAX_VALUE;
+        for (Subscriber subscriber : subscribers) {
+            min = Math.min(min, subscriber.processed.get());
+        }
+        return min == Long.MAX_VALUE ? claimed.get() - 1 : min;
+    }
+    
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private E eventAt(long sequence) {
+        return (E) slots[index(sequence)];
+    }
+}
@@ -0,0 +1,350 @@
+import java.util.*;
+
+/**
+ * 近似最近邻索引（HNSW：分层可导航小世界图），距离为欧氏距离的平方
+ * 每个节点随机分配层数（层数越高越稀疏），每层与最近的若干节点相连；
+ * 查询时从最高层的入口贪心下降，在最底层做宽度为ef的最佳优先搜索，复杂度约为O(log n)。
+ * ef越大召回率越高、查询越慢。删除只做标记：节点仍参与导航但不再出现在结果中
+ * （被删除的节点较多时应重建索引）。
+ * 向量以连续的float数组存储（节点i为 [i*维数, (i+1)*维数)）。
+ * 可配置的系统属性：
+ *   tvshow.ann.m               每个节点在每层的连接数（最底层为其两倍），默认16
+ *   tvshow.ann.efConstruction  插入时的搜索宽度，默认100
+ *   tvshow.ann.efSearch        查询时的搜索宽度，默认64
+ * 不是线程安全的：插入和删除由调用方加写锁，查询可在读锁下并发进行
+ */
+class HnswIndex {
+    static final int DEFAULT_M = Integer.getInteger("tvshow.ann.m", 16);
+    static final int DEFAULT_EF_CONSTRUCTION = Integer.getInteger("tvshow.ann.efConstruction", 100);
+    static final int DEFAULT_EF_SEARCH = Integer.getInteger("tvshow.ann.efSearch", 64);
+    
+    /**
+     * 每个查询线程的访问标记（以轮次区分，不必每次清零）
+     */
+    private static final class Visited {
+        int[] marks = new int[0];
+        int epoch = 0;
+        
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+        
+        /**
+         * 标记节点已访问
+         * @return 之前未访问过时返回true
+         */
+        boolean visit(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+    
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    // 层数分布的参数 1/ln(m)
+    private final double levelFactor;
+    private final Random random;
+    
+    private float[] vectors;
+    // links[节点][层] = 该层的邻居
+    private int[][][] links;
+    private boolean[] deleted;
+    private int size = 0;
+    private int liveCount = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+    
+    public HnswIndex(int dimension) {
+        this(dimension, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, 42L);
+    }
+    
+    public HnswIndex(int dimension, int m, int efConstruction, long seed) {
+        this.dimension = dimension;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelFactor = 1.0 / Math.log(this.m);
+        this.random = new Random(seed);
+        this.vectors = new float[16 * dimension];
+        this.links = new int[16][][];
+        this.deleted = new boolean[16];
+    }
+    
+    public int dimension() {
+        return dimension;
+    }
+    
+    /**
+     * 节点总数（包括已删除的）
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * 未删除的节点数
+     */
+    public int liveCount() {
+        return liveCount;
+    }
+    
+    public boolean isDeleted(int node) {
+        return deleted[node];
+    }
+    
+    /**
+     * 节点向量的第i个分量
+     */
+    public float component(int node, int i) {
+        return vectors[node * dimension + i];
+    }
+    
+    /**
+     * 插入向量
+     * @return 新节点编号（从0起连续分配）
+     */
+    public int add(float[] vector) {
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[0];
+        }
+        size++;
+        liveCount++;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vectors, node * dimension, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<double[]> candidates = searchLayer(vectors, node * dimension, current, efConstruction, l);
+            int[] selected = selectNeighbors(candidates, m);
+            links[node][l] = selected;
+            for (int neighbor : selected) {
+                connect(neighbor, node, l);
+            }
+            current = (int) candidates.get(0)[1];
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+    
+    /**
+     * 删除节点（只做标记）
+     */
+    public void remove(int node) {
+        if (node >= 0 && node < size && !deleted[node]) {
+            deleted[node] = true;
+            liveCount--;
+        }
+    }
+    
+    /**
+     * 查询距离最近的k个未删除节点
+     * @param ef 搜索宽度（小于k时按k）
+     * @return 节点编号，按距离从近到远排列
+     */
+    public int[] search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || k <= 0) {
+            return new int[0];
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, 0, current, l);
+        }
+        // 已删除的节点占据结果名额，按比例放宽搜索宽度
+        int width = Math.max(ef, k);
+        if (liveCount < size) {
+            width = (int) Math.min(size, (long) width * size / Math.max(1, liveCount));
+        }
+        List<double[]> found = searchLayer(query, 0, current, width, 0);
+        int[] results = new int[Math.min(k, found.size())];
+        int count = 0;
+        for (double[] entry : found) {
+            int node = (int) entry[1];
+            if (!deleted[node]) {
+                results[count++] = node;
+                if (count == results.length) {
+                    break;
+                }
+            }
+        }
+        return count == results.length ? results : Arrays.copyOf(results, count);
+    }
+    
+    /**
+     * 精确查询（逐个比较，用于对比召回率）
+     */
+    public int[] bruteForceSearch(float[] query, int k) {
+        PriorityQueue<double[]> best = new PriorityQueue<>((a, b) -> Double.compare(b[0], a[0]));
+        for (int node = 0; node < size; node++) {
+            if (deleted[node]) continue;
+            double distance = distance(query, 0, vectors, node * dimension);
+            if (best.size() < k) {
+                best.add(new double[]{distance, node});
+            } else if (distance < best.peek()[0]) {
+                best.poll();
+                best.add(new double[]{distance, node});
+            }
+        }
+        int[] results = new int[best.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = (int) best.poll()[1];
+        }
+        return results;
+    }
+    
+    /**
+     * 在某一层从start出发贪心移动到距离查询最近的节点
+     */
+    private int greedyClosest(float[] query, int offset, int start, int level) {
+        int current = start;
+        double best = distance(query, offset, vectors, current * dimension);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : links[current][level]) {
+                double distance = distance(query, offset, vectors, neighbor * dimension);
+                if (distance < best) {
+                    best = distance;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * 在某一层做宽度为ef的最佳优先搜索
+     * @return {距离, 节点} 按距离从近到远排列
+     */
+    private List<double[]> searchLayer(float[] query, int offset, int start, int ef, int level) {
+        Visited marks = visited.get();
+        marks.reset(size);
+        PriorityQueue<double[]> candidates = new PriorityQueue<>(Comparator.comparingDouble(e -> e[0]));
+        PriorityQueue<double[]> results = new PriorityQueue<>((a, b) -> Double.compare(b[0], a[0]));
+        double[] first = {distance(query, offset, vectors, start * dimension), start};
+        candidates.add(first);
+        results.add(first);
+        marks.visit(start);
+        while (!candidates.isEmpty()) {
+            double[] closest = candidates.poll();
+            if (results.size() >= ef && closest[0] > results.peek()[0]) {
+                break;
+            }
+            for (int neighbor : links[(int) closest[1]][level]) {
+                if (!marks.visit(neighbor)) continue;
+                double distance = distance(query, offset, vectors, neighbor * dimension);
+                if (results.size() < ef || distance < results.peek()[0]) {
+                    double[] entry = {distance, neighbor};
+                    candidates.add(entry);
+                    results.add(entry);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<double[]> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(e -> e[0]));
+        return sorted;
+    }
+    
+    /**
+     * 启发式选择邻居：候选比已选中的邻居更接近基准点时才选中，使连接覆盖不同方向；
+     * 不足max个时用被跳过的候选补足
+     * @param candidates {到基准点的距离, 节点}，按距离从近到远排列
+     */
+    private int[] selectNeighbors(List<double[]> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        List<Integer> skipped = new ArrayList<>();
+        for (double[] candidate : candidates) {
+            if (count == selected.length) break;
+            int node = (int) candidate[1];
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(vectors, node * dimension, vectors, selected[i] * dimension) < candidate[0]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = node;
+            } else {
+                skipped.add(node);
+            }
+        }
+        for (int i = 0; i < skipped.size() && count < selected.length; i++) {
+            selected[count++] = skipped.get(i);
+        }
+        return selected;
+    }
+    
+    /**
+     * 在某一层增加 neighbor -> node 的连接，超过连接数上限时重新选择neighbor的邻居
+     */
+    private void connect(int neighbor, int node, int level) {
+        int[] existing = links[neighbor][level];
+        int max = level == 0 ? maxM0 : m;
+        if (existing.length < max) {
+            int[] grown = Arrays.copyOf(existing, existing.length + 1);
+            grown[existing.length] = node;
+            links[neighbor][level] = grown;
+            return;
+        }
+        List<double[]> candidates = new ArrayList<>(existing.length + 1);
+        int base = neighbor * dimension;
+        for (int other : existing) {
+            candidates.add(new double[]{distance(vectors, base, vectors, other * dimension), other});
+        }
+        candidates.add(new double[]{distance(vectors, base, vectors, node * dimension), node});
+        candidates.sort(Comparator.comparingDouble(e -> e[0]));
+        links[neighbor][level] = selectNeighbors(candidates, max);
+    }
+    
+    private void ensureCapacity(int nodes) {
+        if (nodes <= links.length) {
+            return;
+        }
+        int capacity = Math.max(nodes, links.length * 2);
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        links = Arrays.copyOf(links, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+    
+    private double distance(float[] a, int aOffset, float[] b, int bOffset) {
+        double sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            double difference = a[aOffset + i] - b[bOffset + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+}
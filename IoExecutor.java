@@ -0,0 +1,112 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 阻塞I/O任务（文件读写、远程调用的回调）的执行器
+ * 运行在支持虚拟线程的JDK（21及以上）上时每个任务一个虚拟线程，大量并发的I/O任务不占用同样多的平台线程；
+ * 否则使用固定大小的平台线程池。可通过系统属性配置：
+ *   tvshow.executor    virtual（必须使用虚拟线程，不支持时退回平台线程池并给出提示）、platform、auto（默认）
+ *   tvshow.io.threads  平台线程池大小
+ * 所有线程都是守护线程，退出前由awaitQuiescence等待已提交的任务完成
+ */
+final class IoExecutor {
+    static final String MODE_PROPERTY = "tvshow.executor";
+    static final String THREADS_PROPERTY = "tvshow.io.threads";
+    static final int DEFAULT_PLATFORM_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+    
+    private static ExecutorService shared;
+    
+    private IoExecutor() {
+    }
+    
+    /**
+     * 全局共享的I/O执行器（首次使用时按配置创建）
+     */
+    static synchronized ExecutorService shared() {
+        if (shared == null) {
+            shared = newExecutor("io");
+        }
+        return shared;
+    }
+    
+    /**
+     * 按配置创建新的执行器
+     * @param name 平台线程的名称前缀
+     */
+    static ExecutorService newExecutor(String name) {
+        String mode = System.getProperty(MODE_PROPERTY, "auto");
+        if (!mode.equals("platform")) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            if (mode.equals("virtual")) {
+                System.out.println("当前JDK不支持虚拟线程，改用平台线程池");
+            }
+        }
+        return newPlatformExecutor(name, Integer.getInteger(THREADS_PROPERTY, DEFAULT_PLATFORM_THREADS));
+    }
+    
+    /**
+     * 当前配置下是否使用虚拟线程
+     */
+    static boolean usesVirtualThreads() {
+        return !System.getProperty(MODE_PROPERTY, "auto").equals("platform")
+                && virtualThreadFactoryMethod() != null;
+    }
+    
+    /**
+     * 等待共享执行器上已提交的任务完成（退出前调用），之后不再接受新任务
+     * @return 超时前全部完成时返回true
+     */
+    static boolean awaitQuiescence(long timeout, TimeUnit unit) {
+        ExecutorService current;
+        synchronized (IoExecutor.class) {
+            current = shared;
+        }
+        if (current == null) {
+            return true;
+        }
+        current.shutdown();
+        try {
+            return current.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * 通过反射调用Executors.newVirtualThreadPerTaskExecutor（编译和运行于较早的JDK时不可用）
+     * @return 不支持时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        Method factory = virtualThreadFactoryMethod();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+    
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    private static ExecutorService newPlatformExecutor(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
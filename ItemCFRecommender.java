@@ -0,0 +1,322 @@
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * 基于物品的协同过滤推荐
+ * 由评分矩阵（以用户编码、电视剧编码稀疏存储）计算电视剧之间的修正余弦相似度，
+ * 为每部电视剧预先保存最相似的若干部；推荐时只需遍历用户已评分电视剧的近邻列表，
+ * 在本地毫秒级完成，并排除用户已评分的电视剧
+ */
+class ItemCFRecommender {
+    // 每部电视剧保留的近邻数量
+    private static final int DEFAULT_NEIGHBORS = 50;
+    // 相似度收缩系数：共同评分人数少时降低相似度
+    private static final double SHRINKAGE = 10.0;
+    // 计算相似度时每个用户最多使用的评分数量（限制重度用户的平方级开销）
+    private static final int MAX_ITEMS_PER_USER = 500;
+
+    /**
+     * 一条推荐结果
+     */
+    static class Recommendation {
+        final String tvShowId;
+        final double score;
+
+        Recommendation(String tvShowId, double score) {
+            this.tvShowId = tvShowId;
+            this.score = score;
+        }
+
+        public String getTvShowId() { return tvShowId; }
+        public double getScore() { return score; }
+    }
+
+    /**
+     * 构建好的模型（不可变，整体替换，可被并发读取）
+     */
+    private static final class Model {
+        final String[] itemIds;
+        final Map<String, Integer> itemIndex;
+        final int[][] neighborItems;
+        final float[][] neighborSimilarities;
+        final long version;
+
+        Model(String[] itemIds, Map<String, Integer> itemIndex, int[][] neighborItems,
+              float[][] neighborSimilarities, long version) {
+            this.itemIds = itemIds;
+            this.itemIndex = itemIndex;
+            this.neighborItems = neighborItems;
+            this.neighborSimilarities = neighborSimilarities;
+            this.version = version;
+        }
+    }
+
+    private final int neighborCount;
+    private volatile Model model = new Model(new String[0], new HashMap<>(), new int[0][], new float[0][], -1);
+
+    public ItemCFRecommender() {
+        this(DEFAULT_NEIGHBORS);
+    }
+
+    public ItemCFRecommender(int neighborCount) {
+        this.neighborCount = neighborCount;
+    }
+
+    /**
+     * 模型对应的数据版本（数据版本变化后需重新构建）
+     */
+    public long getBuiltVersion() {
+        return model.version;
+    }
+
+    /**
+     * 构建模型所需的评分数据：按用户和按电视剧的压缩稀疏行（CSR）数组，评分已减去用户平均分
+     * 由评分索引复制得到，之后与评分索引无关，可在锁外构建模型
+     */
+    static final class RatingMatrix {
+        final String[] ids;
+        final boolean[] valid;
+        final int[] userOffsets;
+        final int[] userItems;
+        final float[] userScores;
+        final int[] itemOffsets;
+        final int[] itemUsers;
+        final float[] itemScores;
+
+        private RatingMatrix(String[] ids, boolean[] valid, int[] userOffsets, int[] userItems, float[] userScores,
+                             int[] itemOffsets, int[] itemUsers, float[] itemScores) {
+            this.ids = ids;
+            this.valid = valid;
+            this.userOffsets = userOffsets;
+            this.userItems = userItems;
+            this.userScores = userScores;
+            this.itemOffsets = itemOffsets;
+            this.itemUsers = itemUsers;
+            this.itemScores = itemScores;
+        }
+
+        /**
+         * 复制评分索引中的评分（调用方持有读锁，耗时与评分数量成正比）
+         * @param inCatalog 电视剧是否仍在目录中
+         */
+        static RatingMatrix from(RatingIndex ratings, Predicate<String> inCatalog) {
+            int itemCount = ratings.tvShowCodeCount();
+            int userCount = ratings.userCodeCount();
+
+            // 第一遍：统计每个用户、每部电视剧的评分数量
+            int[] userCounts = new int[userCount];
+            int[] itemCounts = new int[itemCount];
+            double[] userSums = new double[userCount];
+            boolean[] valid = new boolean[itemCount];
+            String[] ids = new String[itemCount];
+            for (int item = 0; item < itemCount; item++) {
+                ids[item] = ratings.tvShowIdOf(item);
+                valid[item] = inCatalog.test(ids[item]);
+            }
+            ratings.forEachRating((user, item, score, time) -> {
+                if (valid[item]) {
+                    userCounts[user]++;
+                    itemCounts[item]++;
+                    userSums[user] += score;
+                }
+            });
+
+            // 第二遍：填充CSR数组
+            int[] userOffsets = offsets(userCounts);
+            int[] itemOffsets = offsets(itemCounts);
+            int[] userItems = new int[userOffsets[userCount]];
+            float[] userScores = new float[userOffsets[userCount]];
+            int[] itemUsers = new int[itemOffsets[itemCount]];
+            float[] itemScores = new float[itemOffsets[itemCount]];
+            int[] userFill = Arrays.copyOf(userOffsets, userCount);
+            int[] itemFill = Arrays.copyOf(itemOffsets, itemCount);
+            ratings.forEachRating((user, item, score, time) -> {
+                if (valid[item]) {
+                    float centered = (float) (score - userSums[user] / userCounts[user]);
+                    userItems[userFill[user]] = item;
+                    userScores[userFill[user]++] = centered;
+                    itemUsers[itemFill[item]] = user;
+                    itemScores[itemFill[item]++] = centered;
+                }
+            });
+            return new RatingMatrix(ids, valid, userOffsets, userItems, userScores, itemOffsets, itemUsers, itemScores);
+        }
+    }
+
+    /**
+     * 由评分数据构建模型（在调用方的读锁内完成复制和构建）
+     * @param ratings 评分索引
+     * @param inCatalog 电视剧是否仍在目录中
+     * @param version 数据版本
+     */
+    public void build(RatingIndex ratings, Predicate<String> inCatalog, long version) {
+        build(RatingMatrix.from(ratings, inCatalog), version);
+    }
+
+    /**
+     * 由复制的评分数据构建模型，完成后整体替换当前模型（不需要持有锁，构建期间仍使用旧模型）
+     * @param version 数据版本
+     */
+    public void build(RatingMatrix matrix, long version) {
+        String[] ids = matrix.ids;
+        boolean[] valid = matrix.valid;
+        int itemCount = ids.length;
+        int[] userOffsets = matrix.userOffsets;
+        int[] userItems = matrix.userItems;
+        float[] userScores = matrix.userScores;
+        int[] itemOffsets = matrix.itemOffsets;
+        int[] itemUsers = matrix.itemUsers;
+        float[] itemScores = matrix.itemScores;
+
+        // 每部电视剧的向量长度
+        double[] norms = new double[itemCount];
+        for (int item = 0; item < itemCount; item++) {
+            double sum = 0;
+            for (int p = itemOffsets[item]; p < itemOffsets[item + 1]; p++) {
+                sum += itemScores[p] * itemScores[p];
+            }
+            norms[item] = Math.sqrt(sum);
+        }
+
+        // 并行计算每部电视剧的近邻
+        int[][] neighbors = new int[itemCount][];
+        float[][] similarities = new float[itemCount][];
+        ThreadLocal<double[]> dotScratch = ThreadLocal.withInitial(() -> new double[itemCount]);
+        ThreadLocal<int[]> countScratch = ThreadLocal.withInitial(() -> new int[itemCount]);
+        IntStream.range(0, itemCount).parallel().forEach(item -> {
+            if (!valid[item] || norms[item] == 0) {
+                neighbors[item] = new int[0];
+                similarities[item] = new float[0];
+                return;
+            }
+            double[] dot = dotScratch.get();
+            int[] coCount = countScratch.get();
+            List<Integer> touched = new ArrayList<>();
+            for (int p = itemOffsets[item]; p < itemOffsets[item + 1]; p++) {
+                int user = itemUsers[p];
+                float score = itemScores[p];
+                int end = Math.min(userOffsets[user + 1], userOffsets[user] + MAX_ITEMS_PER_USER);
+                for (int q = userOffsets[user]; q < end; q++) {
+                    int other = userItems[q];
+                    if (other == item) continue;
+                    if (coCount[other] == 0) {
+                        touched.add(other);
+                    }
+                    coCount[other]++;
+                    dot[other] += score * userScores[q];
+                }
+            }
+
+            PriorityQueue<double[]> best = new PriorityQueue<>(Comparator.comparingDouble(e -> e[1]));
+            for (int other : touched) {
+                if (norms[other] > 0 && dot[other] > 0) {
+                    double similarity = dot[other] / (norms[item] * norms[other])
+                            * coCount[other] / (coCount[other] + SHRINKAGE);
+                    best.add(new double[]{other, similarity});
+                    if (best.size() > neighborCount) {
+                        best.poll();
+                    }
+                }
+                dot[other] = 0;
+                coCount[other] = 0;
+            }
+
+            int size = best.size();
+            neighbors[item] = new int[size];
+            similarities[item] = new float[size];
+            for (int i = size - 1; i >= 0; i--) {
+                double[] entry = best.poll();
+                neighbors[item][i] = (int) entry[0];
+                similarities[item][i] = (float) entry[1];
+            }
+        });
+
+        Map<String, Integer> index = new HashMap<>();
+        for (int item = 0; item < itemCount; item++) {
+            if (valid[item]) {
+                index.put(ids[item], item);
+            }
+        }
+
+        this.model = new Model(ids, index, neighbors, similarities, version);
+    }
+
+    /**
+     * 为用户推荐电视剧
+     * @param userRatings 用户当前的评分
+     * @param k 推荐数量
+     * @param inCatalog 电视剧是否仍在目录中
+     * @return 按推荐分数从高到低排列的结果，已评分的电视剧被排除
+     */
+    public List<Recommendation> recommend(List<TVShowRecommendationSystem.Rating> userRatings, int k,
+                                          Predicate<String> inCatalog) {
+        Model current = model;
+        if (userRatings.isEmpty()) {
+            return new ArrayList<>();
+        }
+        double mean = 0;
+        for (TVShowRecommendationSystem.Rating rating : userRatings) {
+            mean += rating.getScore();
+        }
+        mean /= userRatings.size();
+
+        Set<String> rated = new HashSet<>();
+        Map<Integer, double[]> candidates = new HashMap<>(); // 电视剧编码 -> {加权偏差和, 相似度和}
+        for (TVShowRecommendationSystem.Rating rating : userRatings) {
+            rated.add(rating.getTvShowId());
+        }
+        for (TVShowRecommendationSystem.Rating rating : userRatings) {
+            Integer item = current.itemIndex.get(rating.getTvShowId());
+            if (item == null) continue;
+            double deviation = rating.getScore() - mean;
+            int[] neighbors = current.neighborItems[item];
+            float[] similarities = current.neighborSimilarities[item];
+            for (int i = 0; i < neighbors.length; i++) {
+                double[] accumulator = candidates.computeIfAbsent(neighbors[i], key -> new double[2]);
+                // 偏差加一个小的正值，使只打过同一分数的用户也能得到推荐
+                accumulator[0] += similarities[i] * (deviation + 1);
+                accumulator[1] += similarities[i];
+            }
+        }
+
+        List<Recommendation> results = new ArrayList<>();
+        for (Map.Entry<Integer, double[]> entry : candidates.entrySet()) {
+            String tvShowId = current.itemIds[entry.getKey()];
+            if (rated.contains(tvShowId) || !inCatalog.test(tvShowId)) continue;
+            double[] accumulator = entry.getValue();
+            // 加权平均偏差，分母加一使相似度和较小（证据少）的候选适当降权
+            double score = accumulator[0] / (accumulator[1] + 1);
+            if (score > 0) {
+                results.add(new Recommendation(tvShowId, score));
+            }
+        }
+        results.sort((a, b) -> Double.compare(b.score, a.score));
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+
+    /**
+     * 某部电视剧的近邻（相似电视剧ID）
+     */
+    public List<String> neighborsOf(String tvShowId, int k) {
+        Model current = model;
+        List<String> results = new ArrayList<>();
+        Integer item = current.itemIndex.get(tvShowId);
+        if (item == null) {
+            return results;
+        }
+        int[] neighbors = current.neighborItems[item];
+        for (int i = 0; i < neighbors.length && results.size() < k; i++) {
+            results.add(current.itemIds[neighbors[i]]);
+        }
+        return results;
+    }
+
+    private static int[] offsets(int[] counts) {
+        int[] offsets = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            offsets[i + 1] = offsets[i] + counts[i];
+        }
+        return offsets;
+    }
+}
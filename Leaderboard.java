@@ -0,0 +1,121 @@
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 增量维护的电视剧排行榜
+ * 以有序集合保存每部电视剧在榜单上的分数，电视剧的观看次数或评分变化时只重新定位这一项（O(log n)），
+ * 读取前K名只需遍历集合开头的K项（O(K)），不再每次复制并完整排序整个列表。
+ * 分数相同的电视剧按加入榜单的先后排列
+ */
+class Leaderboard {
+    /**
+     * 榜单中的一项（分数为加入时的快照，电视剧变化后需调用update重新定位）
+     */
+    private static final class Entry {
+        final TVShowRecommendationSystem.TVShow tvShow;
+        final double score;
+        final long sequence;
+        
+        Entry(TVShowRecommendationSystem.TVShow tvShow, double score, long sequence) {
+            this.tvShow = tvShow;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+    
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byScore = Double.compare(b.score, a.score);
+        return byScore != 0 ? byScore : Long.compare(a.sequence, b.sequence);
+    };
+    
+    private final String name;
+    private final ToDoubleFunction<TVShowRecommendationSystem.TVShow> scorer;
+    private final Predicate<TVShowRecommendationSystem.TVShow> eligible;
+    
+    private final TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+    private final Map<String, Entry> entries = new HashMap<>();
+    // 已从榜单移出（不满足上榜条件）的电视剧保留其顺序号，重新上榜时保持原有先后
+    private final Map<String, Long> sequences = new HashMap<>();
+    private long nextSequence = 0;
+    
+    /**
+     * 构造函数
+     * @param name 榜单名称
+     * @param scorer 排名分数（越大越靠前）
+     * @param eligible 上榜条件
+     */
+    public Leaderboard(String name, ToDoubleFunction<TVShowRecommendationSystem.TVShow> scorer,
+                       Predicate<TVShowRecommendationSystem.TVShow> eligible) {
+        this.name = name;
+        this.scorer = scorer;
+        this.eligible = eligible;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * 电视剧新增或其分数变化后重新定位
+     */
+    public void update(TVShowRecommendationSystem.TVShow tvShow) {
+        String id = tvShow.getId();
+        Entry old = entries.remove(id);
+        if (old != null) {
+            ranking.remove(old);
+        }
+        Long sequence = sequences.get(id);
+        if (sequence == null) {
+            sequence = nextSequence++;
+            sequences.put(id, sequence);
+        }
+        if (eligible.test(tvShow)) {
+            Entry entry = new Entry(tvShow, scorer.applyAsDouble(tvShow), sequence);
+            ranking.add(entry);
+            entries.put(id, entry);
+        }
+    }
+    
+    /**
+     * 电视剧删除后移出榜单
+     */
+    public void remove(String tvShowId) {
+        Entry old = entries.remove(tvShowId);
+        if (old != null) {
+            ranking.remove(old);
+        }
+        sequences.remove(tvShowId);
+    }
+    
+    /**
+     * 按给定顺序重建榜单
+     */
+    public void rebuild(Collection<TVShowRecommendationSystem.TVShow> tvShows) {
+        ranking.clear();
+        entries.clear();
+        sequences.clear();
+        nextSequence = 0;
+        for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+            update(tvShow);
+        }
+    }
+    
+    /**
+     * 前K名
+     */
+    public List<TVShowRecommendationSystem.TVShow> top(int k) {
+        List<TVShowRecommendationSystem.TVShow> results = new ArrayList<>(Math.min(k, ranking.size()));
+        for (Entry entry : ranking) {
+            if (results.size() >= k) {
+                break;
+            }
+            results.add(entry.tvShow);
+        }
+        return results;
+    }
+    
+    public int size() {
+        return ranking.size();
+    }
+}
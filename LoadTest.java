@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP服务模式的本地压测工具
+ * 多个并发客户端轮流请求搜索、详情、榜单（提供账号时还有推荐）接口，
+ * 结束后报告吞吐量和延迟的p50/p99
+ *
+ * 用法：java LoadTest [服务地址] [并发数] [每个客户端的请求数] [用户名:密码]
+ * 例如：java LoadTest http://localhost:8080 64 500 lcr:密码
+ */
+class LoadTest {
+    private static final String DEFAULT_BASE_URL = "http://localhost:8080";
+    private static final int DEFAULT_CONCURRENCY = 64;
+    private static final int DEFAULT_REQUESTS_PER_CLIENT = 200;
+    // 正式计时前每个客户端的预热请求数
+    private static final int WARMUP_REQUESTS = 20;
+    
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : DEFAULT_BASE_URL;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENCY;
+        int requestsPerClient = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS_PER_CLIENT;
+        String credentials = args.length > 3 ? args[3] : null;
+        
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(Math.max(4, concurrency / 4)))
+                .build();
+        List<HttpRequest> mix = requestMix(baseUrl, client, credentials);
+        System.out.println("请求组合: " + mix.size() + " 种, 并发: " + concurrency + ", 每个客户端请求数: " + requestsPerClient);
+        
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            run(client, clients, mix, concurrency, WARMUP_REQUESTS);
+            long start = System.nanoTime();
+            Result result = run(client, clients, mix, concurrency, requestsPerClient);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report(result, seconds);
+        } finally {
+            clients.shutdownNow();
+        }
+        System.exit(0);
+    }
+    
+    /**
+     * 一轮压测的结果
+     */
+    private static class Result {
+        final long[] latencies;
+        final int errors;
+        
+        Result(long[] latencies, int errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+    }
+    
+    /**
+     * 构造请求组合：搜索、详情、三个榜单，以及（提供账号时）推荐
+     */
+    private static List<HttpRequest> requestMix(String baseUrl, HttpClient client, String credentials)
+            throws Exception {
+        List<HttpRequest> mix = new ArrayList<>();
+        for (String keyword : new String[]{"古装", "悬疑", "胡歌", "爱情"}) {
+            mix.add(get(baseUrl + "/api/shows?limit=10&q=" + URLEncoder.encode(keyword, StandardCharsets.UTF_8), null));
+        }
+        for (String board : new String[]{"views", "rating", "count"}) {
+            mix.add(get(baseUrl + "/api/top/" + board, null));
+        }
+        // 从热播榜取若干电视剧ID用于详情请求
+        HttpResponse<String> top = client.send(get(baseUrl + "/api/top/views", null),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        Matcher ids = Pattern.compile("\"id\":\"([^\"]+)\"").matcher(top.body());
+        while (ids.find()) {
+            mix.add(get(baseUrl + "/api/shows/" + URLEncoder.encode(ids.group(1), StandardCharsets.UTF_8), null));
+        }
+        if (credentials != null) {
+            String authorization = "Basic " + Base64.getEncoder()
+                    .encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+            mix.add(get(baseUrl + "/api/recommendations", authorization));
+        }
+        return mix;
+    }
+    
+    private static HttpRequest get(String url, String authorization) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET();
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * 启动concurrency个客户端，每个依次发送requestsPerClient个请求
+     */
+    private static Result run(HttpClient client, ExecutorService clients, List<HttpRequest> mix,
+                              int concurrency, int requestsPerClient) throws Exception {
+        long[] latencies = new long[concurrency * requestsPerClient];
+        List<Future<Integer>> futures = new ArrayList<>();
+        CountDownLatch ready = new CountDownLatch(1);
+        for (int c = 0; c < concurrency; c++) {
+            int clientIndex = c;
+            futures.add(clients.submit(() -> {
+                ready.await();
+                int errors = 0;
+                for (int i = 0; i < requestsPerClient; i++) {
+                    HttpRequest request = mix.get((clientIndex + i) % mix.size());
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) {
+                            errors++;
+                        }
+                    } catch (IOException e) {
+                        errors++;
+                    }
+                    latencies[clientIndex * requestsPerClient + i] = System.nanoTime() - start;
+                }
+                return errors;
+            }));
+        }
+        ready.countDown();
+        int errors = 0;
+        for (Future<Integer> future : futures) {
+            errors += future.get();
+        }
+        return new Result(latencies, errors);
+    }
+    
+    private static void report(Result result, double seconds) {
+        long[] sorted = result.latencies.clone();
+        Arrays.sort(sorted);
+        System.out.println(String.format("请求数: %d, 失败: %d, 耗时: %.2f 秒, 吞吐量: %.0f 请求/秒",
+                sorted.length, result.errors, seconds, sorted.length / seconds));
+        System.out.println(String.format("延迟 p50: %.2f 毫秒, p99: %.2f 毫秒, 最大: %.2f 毫秒",
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6));
+    }
+    
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
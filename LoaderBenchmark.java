@@ -0,0 +1,120 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 数据文件加载的基准测试工具
+ * 生成一个合成的评分文件，比较原来的逐行读取（BufferedReader + String.split）与
+ * ParallelTextLoader（内存映射 + 按行边界分块并行解析）的耗时和分配的内存，两者使用相同的行解析器
+ *
+ * 用法：java LoaderBenchmark [评分条数] [计时轮数]
+ * 例如：java -Xmx4g LoaderBenchmark 10000000 3
+ */
+class LoaderBenchmark {
+    private static final int DEFAULT_RATINGS = 1_000_000;
+    private static final int DEFAULT_ROUNDS = 3;
+    private static final int TV_SHOWS = 5_000;
+    private static final int USERS = 200_000;
+    
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RATINGS;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        Path file = Files.createTempFile("ratings-benchmark", ".txt");
+        file.toFile().deleteOnExit();
+        generate(file, count);
+        System.out.println(String.format("评分条数: %d, 文件大小: %.1f MB, 并行度: %d, 计时轮数: %d",
+                count, Files.size(file) / 1e6, Runtime.getRuntime().availableProcessors(), rounds));
+        
+        String fileName = file.toString();
+        // 各预热一轮再计时
+        measure("逐行读取（BufferedReader + String.split）", rounds, () -> loadSequentially(fileName));
+        measure("并行加载（内存映射 + 分块解析）", rounds,
+                () -> ParallelTextLoader.load(fileName, Charset.defaultCharset(), LoaderBenchmark::parse));
+        Files.deleteIfExists(file);
+    }
+    
+    private interface Loader {
+        List<TVShowRecommendationSystem.Rating> load() throws IOException;
+    }
+    
+    /**
+     * 运行若干轮，报告耗时的中位数、最小值和每轮分配的内存（所有线程合计）
+     */
+    private static void measure(String name, int rounds, Loader loader) throws IOException {
+        int loaded = loader.load().size();
+        long[] millis = new long[rounds];
+        long allocated = 0;
+        for (int r = 0; r < rounds; r++) {
+            System.gc();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            loaded = loader.load().size();
+            millis[r] = (System.nanoTime() - start) / 1_000_000;
+            allocated += allocatedBytes() - allocatedBefore;
+        }
+        Arrays.sort(millis);
+        System.out.println(String.format("%s: 加载 %d 条，中位数 %d 毫秒，最快 %d 毫秒，每轮分配 %.0f MB",
+                name, loaded, millis[rounds / 2], millis[0], allocated / 1e6 / rounds));
+    }
+    
+    /**
+     * 改用并行加载器之前的做法
+     */
+    private static List<TVShowRecommendationSystem.Rating> loadSequentially(String fileName) throws IOException {
+        List<TVShowRecommendationSystem.Rating> results = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                TVShowRecommendationSystem.Rating rating = parse(line.split("\\|"));
+                if (rating != null) {
+                    results.add(rating);
+                }
+            }
+        }
+        return results;
+    }
+    
+    private static TVShowRecommendationSystem.Rating parse(String[] fields) {
+        if (fields.length < 6) {
+            return null;
+        }
+        return new TVShowRecommendationSystem.Rating(fields[0], fields[1], fields[2], Double.parseDouble(fields[3]),
+                fields[4], RatingColumns.parseTimestamp(fields[5]), fields[5]);
+    }
+    
+    /**
+     * 与ratings.txt格式相同的合成数据：ID|电视剧ID|用户名|评分|评论|时间戳
+     */
+    private static void generate(Path file, int count) throws IOException {
+        Random random = new Random(7);
+        try (BufferedWriter bw = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+            for (int i = 1; i <= count; i++) {
+                bw.write("RT" + i + "|TV" + random.nextInt(TV_SHOWS) + "|user" + random.nextInt(USERS) + "|"
+                        + (1 + random.nextInt(5)) + ".0|comment " + (i % 100) + "|2025-"
+                        + String.format("%02d-%02d %02d:%02d:%02d", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                        random.nextInt(24), random.nextInt(60), random.nextInt(60)));
+                bw.newLine();
+            }
+        }
+    }
+    
+    /**
+     * 所有存活线程已分配的字节数（HotSpot提供的线程分配计数）
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids)) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+}
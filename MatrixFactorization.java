@@ -0,0 +1,767 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 隐因子（矩阵分解）推荐
+ * 把评分矩阵分解为用户因子和电视剧因子：预测评分 = 全局平均分 + 用户因子·电视剧因子，
+ * 用交替最小二乘法（ALS）训练：固定电视剧因子时每个用户的因子是一个独立的正则化最小二乘问题，
+ * 反之亦然，因此每半轮可按用户（电视剧）并行求解。正则化系数按评分数量加权（加权λ正则化）。
+ * 因子以连续的float数组存储（第i行为 [i*rank, (i+1)*rank)）。
+ * 推荐时由用户当前的评分和电视剧因子现场求出用户因子（折叠），训练后新增的评分不必重新训练即可生效，
+ * 然后取预测评分最高的k部：电视剧较少时逐个打分，较多时在HNSW近似最近邻索引中检索
+ * （内积最大化经增加一维转换为欧氏最近邻：电视剧向量 [v, √(N²-|v|²)]，查询 [u, 0]，N为最大向量长度）。
+ * 训练后才有评分的新电视剧由其评分者的用户因子折叠出因子并插入索引，删除的电视剧从索引中删除。
+ * 模型可保存为二进制检查点，启动时直接加载
+ *
+ * 检查点布局（大端序）：
+ *   int 魔数 | short 版本号 | int 因子维数 | float 全局平均分
+ *   int 用户数量 | (字符串 用户名, float×维数 因子)...
+ *   int 电视剧数量 | (字符串 电视剧ID, float×维数 因子)...
+ *   long CRC32（覆盖之前的所有字节）
+ */
+class MatrixFactorization {
+    private static final int MAGIC = 0x54564d46; // "TVMF"
+    private static final short VERSION = 1;
+    // 评分范围（预测值截断到该范围）
+    private static final float MIN_SCORE = 1.0f;
+    private static final float MAX_SCORE = 5.0f;
+    // 离线评估中视为"喜欢"的最低评分
+    private static final double RELEVANT_SCORE = 4.0;
+    // 电视剧不超过该数量时逐个打分（精确且足够快），否则使用近似最近邻索引
+    private static final int EXACT_SEARCH_MAX_ITEMS = 1000;
+    
+    /**
+     * 训练参数，可通过系统属性配置：
+     *   tvshow.mf.rank        因子维数（默认16）
+     *   tvshow.mf.lambda      正则化系数（默认0.05，乘以评分数量）
+     *   tvshow.mf.iterations  交替迭代轮数（默认10）
+     */
+    static final class Config {
+        final int rank;
+        final double lambda;
+        final int iterations;
+        final long seed;
+        final boolean parallel;
+        
+        Config(int rank, double lambda, int iterations, long seed, boolean parallel) {
+            this.rank = rank;
+            this.lambda = lambda;
+            this.iterations = iterations;
+            this.seed = seed;
+            this.parallel = parallel;
+        }
+        
+        static Config fromSystemProperties() {
+            return new Config(Integer.getInteger("tvshow.mf.rank", 16),
+                    Double.parseDouble(System.getProperty("tvshow.mf.lambda", "0.05")),
+                    Integer.getInteger("tvshow.mf.iterations", 10), 42L, true);
+        }
+        
+        Config withParallel(boolean parallel) {
+            return new Config(rank, lambda, iterations, seed, parallel);
+        }
+    }
+    
+    /**
+     * 训练数据：以用户编码、电视剧编码表示的评分三元组
+     */
+    static final class TrainingSet {
+        final String[] userIds;
+        final String[] itemIds;
+        final int[] users;
+        final int[] items;
+        final float[] scores;
+        
+        TrainingSet(String[] userIds, String[] itemIds, int[] users, int[] items, float[] scores) {
+            this.userIds = userIds;
+            this.itemIds = itemIds;
+            this.users = users;
+            this.items = items;
+            this.scores = scores;
+        }
+        
+        int size() {
+            return scores.length;
+        }
+        
+        /**
+         * 由评分索引构建（沿用索引中的编码，跳过已不在目录中的电视剧）
+         */
+        static TrainingSet from(RatingIndex ratings, Predicate<String> inCatalog) {
+            String[] userIds = new String[ratings.userCodeCount()];
+            for (int user = 0; user < userIds.length; user++) {
+                userIds[user] = ratings.usernameOf(user);
+            }
+            String[] itemIds = new String[ratings.tvShowCodeCount()];
+            boolean[] valid = new boolean[itemIds.length];
+            for (int item = 0; item < itemIds.length; item++) {
+                itemIds[item] = ratings.tvShowIdOf(item);
+                valid[item] = inCatalog.test(itemIds[item]);
+            }
+            int[] count = new int[1];
+            ratings.forEachRating((user, item, score, time) -> {
+                if (valid[item]) count[0]++;
+            });
+            int[] users = new int[count[0]];
+            int[] items = new int[count[0]];
+            float[] scores = new float[count[0]];
+            int[] next = new int[1];
+            ratings.forEachRating((user, item, score, time) -> {
+                if (valid[item]) {
+                    users[next[0]] = user;
+                    items[next[0]] = item;
+                    scores[next[0]++] = (float) score;
+                }
+            });
+            return new TrainingSet(userIds, itemIds, users, items, scores);
+        }
+        
+        /**
+         * 随机划分为训练集和测试集（编码空间相同）
+         * @return {训练集, 测试集}
+         */
+        TrainingSet[] split(double testFraction, long seed) {
+            Random random = new Random(seed);
+            boolean[] test = new boolean[size()];
+            int testSize = 0;
+            for (int i = 0; i < test.length; i++) {
+                if (random.nextDouble() < testFraction) {
+                    test[i] = true;
+                    testSize++;
+                }
+            }
+            return new TrainingSet[]{subset(test, false, size() - testSize), subset(test, true, testSize)};
+        }
+        
+        private TrainingSet subset(boolean[] mask, boolean keep, int size) {
+            int[] subUsers = new int[size];
+            int[] subItems = new int[size];
+            float[] subScores = new float[size];
+            int next = 0;
+            for (int i = 0; i < mask.length; i++) {
+                if (mask[i] == keep) {
+                    subUsers[next] = users[i];
+                    subItems[next] = items[i];
+                    subScores[next++] = scores[i];
+                }
+            }
+            return new TrainingSet(userIds, itemIds, subUsers, subItems, subScores);
+        }
+    }
+    
+    /**
+     * 训练好的模型（训练得到的因子不可变，整体替换，可被并发读取；
+     * 检索用的电视剧向量在发布前建好，之后随目录变更更新，由调用方加锁）
+     */
+    static final class Model {
+        final int rank;
+        final float globalMean;
+        final String[] userIds;
+        final Map<String, Integer> userIndex;
+        final float[] userFactors;
+        final String[] itemIds;
+        final float[] itemFactors;
+        final long version;
+        ItemVectors items;
+        
+        Model(int rank, float globalMean, String[] userIds, float[] userFactors,
+              String[] itemIds, float[] itemFactors, long version) {
+            this.rank = rank;
+            this.globalMean = globalMean;
+            this.userIds = userIds;
+            this.userIndex = indexOf(userIds);
+            this.userFactors = userFactors;
+            this.itemIds = itemIds;
+            this.itemFactors = itemFactors;
+            this.version = version;
+        }
+        
+        /**
+         * 建立检索用的电视剧向量（发布模型前调用）
+         */
+        Model withItemVectors() {
+            float maxNorm = 0;
+            for (int item = 0; item < itemIds.length; item++) {
+                if (itemIds[item] != null) {
+                    maxNorm = (float) Math.max(maxNorm, Math.sqrt(dot(itemFactors, item * rank, itemFactors, item * rank, rank)));
+                }
+            }
+            items = new ItemVectors(rank, maxNorm);
+            for (int item = 0; item < itemIds.length; item++) {
+                if (itemIds[item] != null) {
+                    items.put(itemIds[item], itemFactors, item * rank);
+                }
+            }
+            return this;
+        }
+        
+        private static Map<String, Integer> indexOf(String[] ids) {
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != null) {
+                    index.put(ids[i], i);
+                }
+            }
+            return index;
+        }
+    }
+    
+    /**
+     * 检索用的电视剧向量：HNSW索引及节点与电视剧ID的对应
+     * 节点向量为 [因子, √(N²-|因子|²)]；折叠进来的新电视剧长度超过N时最后一维取0（近似）
+     */
+    private static final class ItemVectors {
+        final int rank;
+        final float maxNorm;
+        final HnswIndex index;
+        final List<String> nodeIds = new ArrayList<>();
+        final Map<String, Integer> nodeOf = new HashMap<>();
+        // 由评分折叠出因子的电视剧（新评分到来时重新折叠）
+        final Set<String> folded = new HashSet<>();
+        
+        ItemVectors(int rank, float maxNorm) {
+            this.rank = rank;
+            this.maxNorm = maxNorm;
+            this.index = new HnswIndex(rank + 1);
+        }
+        
+        void put(String tvShowId, float[] factors, int offset) {
+            Integer old = nodeOf.get(tvShowId);
+            if (old != null) {
+                index.remove(old);
+            }
+            float[] vector = Arrays.copyOf(Arrays.copyOfRange(factors, offset, offset + rank), rank + 1);
+            double squaredNorm = dot(factors, offset, factors, offset, rank);
+            vector[rank] = (float) Math.sqrt(Math.max(0, (double) maxNorm * maxNorm - squaredNorm));
+            int node = index.add(vector);
+            nodeIds.add(tvShowId);
+            nodeOf.put(tvShowId, node);
+        }
+        
+        void remove(String tvShowId) {
+            Integer node = nodeOf.remove(tvShowId);
+            if (node != null) {
+                index.remove(node);
+            }
+            folded.remove(tvShowId);
+        }
+        
+        float[] factorOf(int node) {
+            float[] factor = new float[rank];
+            for (int i = 0; i < rank; i++) {
+                factor[i] = index.component(node, i);
+            }
+            return factor;
+        }
+    }
+    
+    private final Config config;
+    private volatile Model model = new Model(0, 0f, new String[0], new float[0], new String[0], new float[0], -1)
+            .withItemVectors();
+    
+    public MatrixFactorization(Config config) {
+        this.config = config;
+    }
+    
+    /**
+     * 模型对应的数据版本（尚未训练或加载时为-1）
+     */
+    public long getBuiltVersion() {
+        return model.version;
+    }
+    
+    /**
+     * 训练模型并替换当前模型
+     * @param version 数据版本
+     */
+    public void train(TrainingSet data, long version) {
+        this.model = prepare(data, version);
+    }
+    
+    /**
+     * 训练模型但不替换当前模型（不需要持有锁，训练期间推荐继续使用当前模型），之后由publish替换
+     * @param version 数据版本
+     */
+    public Model prepare(TrainingSet data, long version) {
+        return fit(data, config, version).withItemVectors();
+    }
+    
+    /**
+     * 替换为训练好的模型，并与当前目录对齐（调用方持有写锁）：复制训练数据之后删除的电视剧从检索索引中删除，
+     * 之后才有评分的电视剧折叠出因子插入检索索引
+     * @param catalogIds 目录中所有电视剧的ID
+     * @param inCatalog 电视剧是否仍在目录中
+     * @param ratingsOf 某部电视剧当前的所有评分
+     */
+    public void publish(Model trained, Collection<String> catalogIds, Predicate<String> inCatalog,
+                        Function<String, List<TVShowRecommendationSystem.Rating>> ratingsOf) {
+        this.model = trained;
+        ItemVectors items = trained.items;
+        for (String tvShowId : new ArrayList<>(items.nodeOf.keySet())) {
+            if (!inCatalog.test(tvShowId)) {
+                items.remove(tvShowId);
+            }
+        }
+        for (String tvShowId : catalogIds) {
+            if (!items.nodeOf.containsKey(tvShowId) || items.folded.contains(tvShowId)) {
+                updateItem(tvShowId, ratingsOf.apply(tvShowId));
+            }
+        }
+    }
+    
+    /**
+     * 按当前目录和评分重新对齐检索索引（增量更新失败后调用，调用方持有写锁）：
+     * 删除目录中已没有的电视剧，重新折叠训练后才有评分的电视剧
+     */
+    public void reconcile(Collection<String> catalogIds, Predicate<String> inCatalog,
+                          Function<String, List<TVShowRecommendationSystem.Rating>> ratingsOf) {
+        publish(model, catalogIds, inCatalog, ratingsOf);
+    }
+    
+    /**
+     * 训练后才有评分的电视剧：由评分者的用户因子折叠出电视剧因子并插入检索索引（调用方持有写锁）
+     * 训练得到因子的电视剧保持不变，直到下次训练
+     * @param ratings 该电视剧当前的所有评分
+     */
+    public void updateItem(String tvShowId, List<TVShowRecommendationSystem.Rating> ratings) {
+        Model current = model;
+        ItemVectors items = current.items;
+        int rank = current.rank;
+        if (rank == 0 || (items.nodeOf.containsKey(tvShowId) && !items.folded.contains(tvShowId))) {
+            return;
+        }
+        double[] gram = new double[rank * rank];
+        double[] rhs = new double[rank];
+        int count = 0;
+        for (TVShowRecommendationSystem.Rating rating : ratings) {
+            Integer user = current.userIndex.get(rating.getUsername());
+            if (user != null) {
+                accumulate(current.userFactors, user * rank, rank, (float) (rating.getScore() - current.globalMean), gram, rhs);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        float[] factor = new float[rank];
+        solve(gram, rhs, rank, config.lambda * count, factor, 0);
+        items.put(tvShowId, factor, 0);
+        items.folded.add(tvShowId);
+    }
+    
+    /**
+     * 电视剧被删除后从检索索引中删除（调用方持有写锁）
+     */
+    public void removeItem(String tvShowId) {
+        model.items.remove(tvShowId);
+    }
+    
+    /**
+     * 为用户推荐电视剧：由用户当前的评分折叠出用户因子，检索预测评分最高的电视剧（调用方持有读锁）
+     * @param userRatings 用户当前的评分
+     * @param k 推荐数量
+     * @param inCatalog 电视剧是否仍在目录中
+     * @return 按预测评分从高到低排列的结果，已评分的电视剧被排除；没有可用评分时为空
+     */
+    public List<ItemCFRecommender.Recommendation> recommend(List<TVShowRecommendationSystem.Rating> userRatings,
+                                                            int k, Predicate<String> inCatalog) {
+        Model current = model;
+        ItemVectors items = current.items;
+        int rank = current.rank;
+        double[] gram = new double[rank * rank];
+        double[] rhs = new double[rank];
+        int count = 0;
+        Set<String> rated = new HashSet<>();
+        for (TVShowRecommendationSystem.Rating rating : userRatings) {
+            rated.add(rating.getTvShowId());
+            Integer node = items.nodeOf.get(rating.getTvShowId());
+            if (node != null) {
+                accumulate(items.factorOf(node), 0, rank, (float) (rating.getScore() - current.globalMean), gram, rhs);
+                count++;
+            }
+        }
+        if (count == 0 || rank == 0) {
+            return new ArrayList<>();
+        }
+        float[] userFactor = new float[rank + 1];
+        solve(gram, rhs, rank, config.lambda * count, userFactor, 0);
+        
+        int[] nodes;
+        if (items.index.liveCount() <= EXACT_SEARCH_MAX_ITEMS) {
+            nodes = new int[items.index.size()];
+            for (int node = 0; node < nodes.length; node++) {
+                nodes[node] = node;
+            }
+        } else {
+            // 已评分和已下架的电视剧会被排除，多取相应数量
+            nodes = items.index.search(userFactor, k + rated.size(), HnswIndex.DEFAULT_EF_SEARCH);
+        }
+        PriorityQueue<ItemCFRecommender.Recommendation> best =
+                new PriorityQueue<>(Comparator.comparingDouble(ItemCFRecommender.Recommendation::getScore));
+        for (int node : nodes) {
+            String tvShowId = items.nodeIds.get(node);
+            if (items.index.isDeleted(node) || rated.contains(tvShowId) || !inCatalog.test(tvShowId)) continue;
+            double score = current.globalMean;
+            for (int i = 0; i < rank; i++) {
+                score += userFactor[i] * items.index.component(node, i);
+            }
+            if (best.size() < k) {
+                best.add(new ItemCFRecommender.Recommendation(tvShowId, score));
+            } else if (score > best.peek().getScore()) {
+                best.poll();
+                best.add(new ItemCFRecommender.Recommendation(tvShowId, score));
+            }
+        }
+        List<ItemCFRecommender.Recommendation> results = new ArrayList<>(best);
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results;
+    }
+    
+    /**
+     * 保存检查点（先写临时文件再原子替换）
+     */
+    public void save(String fileName) throws IOException {
+        Model current = model;
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(current.rank);
+            out.writeFloat(current.globalMean);
+            writeFactors(out, current.userIds, current.userFactors, current.rank);
+            // 电视剧因子取检索索引中的当前值（包括折叠进来的新电视剧，不包括已删除的）
+            ItemVectors items = current.items;
+            String[] itemIds = items.nodeOf.keySet().toArray(new String[0]);
+            float[] itemFactors = new float[itemIds.length * current.rank];
+            for (int item = 0; item < itemIds.length; item++) {
+                System.arraycopy(items.factorOf(items.nodeOf.get(itemIds[item])), 0, itemFactors, item * current.rank, current.rank);
+            }
+            writeFactors(out, itemIds, itemFactors, current.rank);
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * 加载检查点并替换当前模型
+     * @param version 视为模型对应的数据版本
+     * @throws IOException 文件损坏、校验和不匹配或版本不支持时抛出
+     */
+    public void load(String fileName, long version) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是矩阵分解模型文件: " + fileName);
+            }
+            short fileVersion = in.readShort();
+            if (fileVersion != VERSION) {
+                throw new IOException("不支持的模型文件版本: " + fileVersion);
+            }
+            int rank = in.readInt();
+            float globalMean = in.readFloat();
+            String[][] userIds = new String[1][];
+            float[] userFactors = readFactors(in, rank, userIds);
+            String[][] itemIds = new String[1][];
+            float[] itemFactors = readFactors(in, rank, itemIds);
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("模型文件校验和不匹配: " + fileName);
+            }
+            this.model = new Model(rank, globalMean, userIds[0], userFactors, itemIds[0], itemFactors, version)
+                    .withItemVectors();
+        }
+    }
+    
+    /**
+     * 离线评估：按比例划出测试集，用其余评分训练后报告
+     * 训练耗时（串行与并行）、测试集RMSE（与全局平均分基线对比）、
+     * precision@K（测试集中评分不低于4分的电视剧算命中，与热门度基线对比）
+     */
+    static void evaluate(TrainingSet data, Config config, double testFraction, int k) {
+        TrainingSet[] parts = data.split(testFraction, config.seed);
+        TrainingSet train = parts[0];
+        TrainingSet test = parts[1];
+        System.out.println(String.format("评分 %d 条（训练 %d / 测试 %d），用户 %d，电视剧 %d，维数 %d，λ %.3f，迭代 %d 轮",
+                data.size(), train.size(), test.size(), data.userIds.length, data.itemIds.length,
+                config.rank, config.lambda, config.iterations));
+        if (train.size() == 0 || test.size() == 0) {
+            System.out.println("评分太少，无法评估");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        fit(train, config.withParallel(false), 0);
+        double serialMillis = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        Model trained = fit(train, config.withParallel(true), 0);
+        double parallelMillis = (System.nanoTime() - start) / 1e6;
+        System.out.println(String.format("训练耗时：串行 %.1f 毫秒，并行 %.1f 毫秒（%d 个处理器，加速比 %.2f）",
+                serialMillis, parallelMillis, Runtime.getRuntime().availableProcessors(),
+                serialMillis / Math.max(parallelMillis, 1e-9)));
+        
+        // RMSE：未在训练集中出现的用户或电视剧按全局平均分预测
+        int rank = trained.rank;
+        double squaredError = 0;
+        double baselineSquaredError = 0;
+        for (int i = 0; i < test.size(); i++) {
+            int user = test.users[i];
+            int item = test.items[i];
+            double predicted = trained.globalMean + dot(trained.userFactors, user * rank, trained.itemFactors, item * rank, rank);
+            predicted = Math.max(MIN_SCORE, Math.min(MAX_SCORE, predicted));
+            squaredError += (predicted - test.scores[i]) * (predicted - test.scores[i]);
+            baselineSquaredError += (trained.globalMean - test.scores[i]) * (trained.globalMean - test.scores[i]);
+        }
+        System.out.println(String.format("测试集 RMSE: %.4f（全局平均分基线 %.4f）",
+                Math.sqrt(squaredError / test.size()), Math.sqrt(baselineSquaredError / test.size())));
+        
+        // precision@K：只统计测试集中有喜欢的电视剧的用户
+        Map<Integer, Set<Integer>> trainItems = groupByUser(train, 0);
+        Map<Integer, Set<Integer>> relevantItems = groupByUser(test, RELEVANT_SCORE);
+        int[] popularity = new int[data.itemIds.length];
+        for (int i = 0; i < train.size(); i++) {
+            popularity[train.items[i]]++;
+        }
+        Integer[] byPopularity = new Integer[popularity.length];
+        for (int item = 0; item < byPopularity.length; item++) {
+            byPopularity[item] = item;
+        }
+        Arrays.sort(byPopularity, (a, b) -> Integer.compare(popularity[b], popularity[a]));
+        
+        double precision = 0;
+        double baselinePrecision = 0;
+        for (Map.Entry<Integer, Set<Integer>> entry : relevantItems.entrySet()) {
+            int user = entry.getKey();
+            Set<Integer> seen = trainItems.getOrDefault(user, Collections.emptySet());
+            Set<Integer> relevant = entry.getValue();
+            Integer[] candidates = new Integer[data.itemIds.length];
+            double[] scores = new double[data.itemIds.length];
+            for (int item = 0; item < candidates.length; item++) {
+                candidates[item] = item;
+                scores[item] = dot(trained.userFactors, user * rank, trained.itemFactors, item * rank, rank);
+            }
+            Arrays.sort(candidates, (a, b) -> Double.compare(scores[b], scores[a]));
+            precision += hitsAtK(candidates, seen, relevant, k) / (double) k;
+            baselinePrecision += hitsAtK(byPopularity, seen, relevant, k) / (double) k;
+        }
+        int evaluatedUsers = Math.max(1, relevantItems.size());
+        System.out.println(String.format("precision@%d: %.4f（热门度基线 %.4f，%d 位用户）", k,
+                precision / evaluatedUsers, baselinePrecision / evaluatedUsers, relevantItems.size()));
+    }
+    
+    /**
+     * 交替最小二乘训练
+     */
+    private static Model fit(TrainingSet data, Config config, long version) {
+        int rank = config.rank;
+        int userCount = data.userIds.length;
+        int itemCount = data.itemIds.length;
+        
+        double sum = 0;
+        for (float score : data.scores) {
+            sum += score;
+        }
+        float globalMean = data.size() == 0 ? 0f : (float) (sum / data.size());
+        
+        // 按用户和按电视剧的压缩稀疏行（CSR）数组，存储减去全局平均分后的残差
+        int[] userOffsets = new int[userCount + 1];
+        int[] itemOffsets = new int[itemCount + 1];
+        for (int i = 0; i < data.size(); i++) {
+            userOffsets[data.users[i] + 1]++;
+            itemOffsets[data.items[i] + 1]++;
+        }
+        for (int user = 0; user < userCount; user++) {
+            userOffsets[user + 1] += userOffsets[user];
+        }
+        for (int item = 0; item < itemCount; item++) {
+            itemOffsets[item + 1] += itemOffsets[item];
+        }
+        int[] userItems = new int[data.size()];
+        float[] userResiduals = new float[data.size()];
+        int[] itemUsers = new int[data.size()];
+        float[] itemResiduals = new float[data.size()];
+        int[] userFill = Arrays.copyOf(userOffsets, userCount);
+        int[] itemFill = Arrays.copyOf(itemOffsets, itemCount);
+        for (int i = 0; i < data.size(); i++) {
+            float residual = data.scores[i] - globalMean;
+            userItems[userFill[data.users[i]]] = data.items[i];
+            userResiduals[userFill[data.users[i]]++] = residual;
+            itemUsers[itemFill[data.items[i]]] = data.users[i];
+            itemResiduals[itemFill[data.items[i]]++] = residual;
+        }
+        
+        // 电视剧因子随机初始化，用户因子由第一个半轮求出
+        float[] userFactors = new float[userCount * rank];
+        float[] itemFactors = new float[itemCount * rank];
+        Random random = new Random(config.seed);
+        float scale = (float) (0.1 / Math.sqrt(rank));
+        for (int i = 0; i < itemFactors.length; i++) {
+            itemFactors[i] = (float) random.nextGaussian() * scale;
+        }
+        
+        ThreadLocal<double[]> gramScratch = ThreadLocal.withInitial(() -> new double[rank * rank]);
+        ThreadLocal<double[]> rhsScratch = ThreadLocal.withInitial(() -> new double[rank]);
+        for (int iteration = 0; iteration < config.iterations; iteration++) {
+            solveAll(userCount, userOffsets, userItems, userResiduals, itemFactors, userFactors,
+                    rank, config, gramScratch, rhsScratch);
+            solveAll(itemCount, itemOffsets, itemUsers, itemResiduals, userFactors, itemFactors,
+                    rank, config, gramScratch, rhsScratch);
+        }
+        return new Model(rank, globalMean, data.userIds, userFactors, data.itemIds, itemFactors, version);
+    }
+    
+    /**
+     * 半轮：固定另一侧的因子，逐行求解 (YᵀY + λnI) x = Yᵀr
+     * 各行互不依赖，按行并行；没有评分的行因子为零
+     */
+    private static void solveAll(int rows, int[] offsets, int[] columns, float[] residuals,
+                                 float[] fixed, float[] target, int rank, Config config,
+                                 ThreadLocal<double[]> gramScratch, ThreadLocal<double[]> rhsScratch) {
+        IntStream range = IntStream.range(0, rows);
+        if (config.parallel) {
+            range = range.parallel();
+        }
+        range.forEach(row -> {
+            int count = offsets[row + 1] - offsets[row];
+            if (count == 0) {
+                Arrays.fill(target, row * rank, (row + 1) * rank, 0f);
+                return;
+            }
+            double[] gram = gramScratch.get();
+            double[] rhs = rhsScratch.get();
+            Arrays.fill(gram, 0);
+            Arrays.fill(rhs, 0);
+            for (int p = offsets[row]; p < offsets[row + 1]; p++) {
+                accumulate(fixed, columns[p] * rank, rank, residuals[p], gram, rhs);
+            }
+            solve(gram, rhs, rank, config.lambda * count, target, row * rank);
+        });
+    }
+    
+    /**
+     * 累加一条评分对正规方程的贡献：gram += y·yᵀ（只填下三角），rhs += r·y
+     */
+    private static void accumulate(float[] factors, int offset, int rank, float residual, double[] gram, double[] rhs) {
+        for (int i = 0; i < rank; i++) {
+            double yi = factors[offset + i];
+            rhs[i] += residual * yi;
+            for (int j = 0; j <= i; j++) {
+                gram[i * rank + j] += yi * factors[offset + j];
+            }
+        }
+    }
+    
+    /**
+     * 用Cholesky分解求解 (gram + regularization·I) x = rhs，结果写入target[offset, offset+rank)
+     * 只使用并覆盖gram的下三角
+     */
+    private static void solve(double[] gram, double[] rhs, int rank, double regularization, float[] target, int offset) {
+        for (int i = 0; i < rank; i++) {
+            gram[i * rank + i] += regularization;
+        }
+        for (int j = 0; j < rank; j++) {
+            double diagonal = gram[j * rank + j];
+            for (int k = 0; k < j; k++) {
+                diagonal -= gram[j * rank + k] * gram[j * rank + k];
+            }
+            diagonal = Math.sqrt(Math.max(diagonal, 1e-12));
+            gram[j * rank + j] = diagonal;
+            for (int i = j + 1; i < rank; i++) {
+                double value = gram[i * rank + j];
+                for (int k = 0; k < j; k++) {
+                    value -= gram[i * rank + k] * gram[j * rank + k];
+                }
+                gram[i * rank + j] = value / diagonal;
+            }
+        }
+        // 前代 L·z = rhs，回代 Lᵀ·x = z
+        for (int i = 0; i < rank; i++) {
+            double value = rhs[i];
+            for (int k = 0; k < i; k++) {
+                value -= gram[i * rank + k] * rhs[k];
+            }
+            rhs[i] = value / gram[i * rank + i];
+        }
+        for (int i = rank - 1; i >= 0; i--) {
+            double value = rhs[i];
+            for (int k = i + 1; k < rank; k++) {
+                value -= gram[k * rank + i] * rhs[k];
+            }
+            rhs[i] = value / gram[i * rank + i];
+            target[offset + i] = (float) rhs[i];
+        }
+    }
+    
+    private static double dot(float[] a, int aOffset, float[] b, int bOffset, int rank) {
+        double sum = 0;
+        for (int i = 0; i < rank; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+    
+    private static Map<Integer, Set<Integer>> groupByUser(TrainingSet data, double minScore) {
+        Map<Integer, Set<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < data.size(); i++) {
+            if (data.scores[i] >= minScore) {
+                grouped.computeIfAbsent(data.users[i], key -> new HashSet<>()).add(data.items[i]);
+            }
+        }
+        return grouped;
+    }
+    
+    private static int hitsAtK(Integer[] ranked, Set<Integer> seen, Set<Integer> relevant, int k) {
+        int hits = 0;
+        int taken = 0;
+        for (int i = 0; i < ranked.length && taken < k; i++) {
+            if (seen.contains(ranked[i])) continue;
+            taken++;
+            if (relevant.contains(ranked[i])) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+    
+    private static void writeFactors(DataOutputStream out, String[] ids, float[] factors, int rank) throws IOException {
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeUTF(ids[i] == null ? "" : ids[i]);
+            for (int j = 0; j < rank; j++) {
+                out.writeFloat(factors[i * rank + j]);
+            }
+        }
+    }
+    
+    private static float[] readFactors(DataInputStream in, int rank, String[][] ids) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || rank < 0 || (long) count * rank > Integer.MAX_VALUE) {
+            throw new IOException("模型文件大小异常");
+        }
+        ids[0] = new String[count];
+        float[] factors = new float[count * rank];
+        for (int i = 0; i < count; i++) {
+            String id = in.readUTF();
+            ids[0][i] = id.isEmpty() ? null : id;
+            for (int j = 0; j < rank; j++) {
+                factors[i * rank + j] = in.readFloat();
+            }
+        }
+        return factors;
+    }
+}
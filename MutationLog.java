@@ -0,0 +1,348 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 追加写的变更日志（预写日志）
+ * 每次评分、观看、修改电视剧等变更只追加一行记录，不再整体重写数据文件；
+ * 多个并发提交的记录合并为一次写入和一次刷盘（组提交），
+ * 记录数达到阈值时把当前数据压缩为快照文件并清空日志，启动时在快照之上重放日志恢复数据。
+ * 每条记录以递增的序号开头（跨压缩和重启连续），快照中保存写入时的最后一个序号（检查点），
+ * 重放时跳过快照已包含的记录：快照写完但日志尚未清空时崩溃，也不会重复计入观看次数和评分统计。
+ * 快照文件刷盘并同步目录之后才清空日志
+ */
+class MutationLog implements Closeable {
+    // 记录类型
+    public static final String RATE = "RATE";           // 新增或替换评分
+    public static final String VIEW = "VIEW";           // 观看次数加一
+    public static final String VIEWS = "VIEWS";         // 观看次数增加若干（分段计数器汇总）
+    public static final String SHOW = "SHOW";           // 新增或修改电视剧
+    public static final String DELETE_SHOW = "DELSHOW"; // 删除电视剧（级联删除评分）
+    
+    // 组提交时等待更多记录的最长时间（毫秒）
+    private static final long GROUP_COMMIT_WINDOW_MS = 2;
+    // 单次组提交的最大记录数
+    private static final int MAX_BATCH = 1024;
+    
+    /**
+     * 快照写入器：把内存中的当前数据完整写入快照文件
+     */
+    interface SnapshotWriter {
+        /**
+         * @param checkpoint 快照包含的最后一条记录的序号
+         */
+        void write(long checkpoint) throws IOException;
+    }
+    
+    /**
+     * 重放时的记录处理器
+     */
+    interface RecordHandler {
+        /**
+         * @param sequence 记录序号，没有序号的旧格式记录为0
+         * @param record 记录字段，第一个字段为记录类型
+         */
+        void apply(long sequence, String[] record);
+    }
+    
+    private final Path path;
+    private final int compactThreshold;
+    private final SnapshotWriter snapshotWriter;
+    
+    private final Object lock = new Object();
+    private List<String> pending = new ArrayList<>();
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private int recordsSinceSnapshot = 0;
+    private boolean closed = false;
+    
+    private FileChannel channel;
+    private Thread flusher;
+    
+    /**
+     * 构造函数
+     * @param path 日志文件路径
+     * @param compactThreshold 触发压缩的记录数
+     * @param snapshotWriter 压缩时使用的快照写入器
+     */
+    public MutationLog(String path, int compactThreshold, SnapshotWriter snapshotWriter) {
+        this.path = Paths.get(path);
+        this.compactThreshold = compactThreshold;
+        this.snapshotWriter = snapshotWriter;
+    }
+    
+    /**
+     * 在快照之上重放日志中的记录（由处理器按序号跳过快照已包含的记录），之后的记录序号从最大序号之后继续
+     * 文件末尾不完整的记录（写入过程中崩溃）会被忽略
+     * @param checkpoint 快照的检查点（新记录的序号至少从其之后开始）
+     * @return 重放的记录数
+     */
+    public int replay(long checkpoint, RecordHandler handler) throws IOException {
+        long last = checkpoint;
+        int count = 0;
+        if (Files.exists(path)) {
+            String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            int start = 0;
+            int end;
+            while ((end = content.indexOf('\n', start)) != -1) {
+                String line = content.substring(start, end);
+                start = end + 1;
+                if (line.trim().isEmpty()) continue;
+                String[] fields = line.split("\\|", -1);
+                long sequence = parseSequence(fields[0]);
+                if (sequence > 0) {
+                    fields = Arrays.copyOfRange(fields, 1, fields.length);
+                    last = Math.max(last, sequence);
+                }
+                handler.apply(sequence, fields);
+                count++;
+            }
+        }
+        synchronized (lock) {
+            appendedSeq = Math.max(appendedSeq, last);
+            durableSeq = appendedSeq;
+            recordsSinceSnapshot = count;
+        }
+        return count;
+    }
+    
+    /**
+     * 最后一条记录的序号
+     */
+    public long lastSequence() {
+        synchronized (lock) {
+            return appendedSeq;
+        }
+    }
+    
+    /**
+     * 打开日志用于追加，并启动组提交线程
+     */
+    public void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // 截掉末尾不完整的记录，保证新记录从完整的行开始
+        channel.truncate(validLength());
+        channel.position(channel.size());
+        
+        flusher = new Thread(this::flushLoop, "mutation-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    /**
+     * 追加一条记录但不等待落盘（调用方可在释放自己的锁后再调用awaitDurable）
+     * @return 记录序号
+     */
+    public long enqueue(String... fields) {
+        String line = String.join("|", fields) + "\n";
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("变更日志已关闭");
+            }
+            long seq = ++appendedSeq;
+            pending.add(seq + "|" + line);
+            recordsSinceSnapshot++;
+            lock.notifyAll();
+            return seq;
+        }
+    }
+    
+    /**
+     * 等待指定序号之前的记录全部落盘
+     */
+    public void awaitDurable(long seq) {
+        synchronized (lock) {
+            awaitDurableLocked(seq);
+        }
+    }
+    
+    /**
+     * 记录数达到阈值时执行压缩
+     */
+    public void compactIfNeeded() {
+        boolean needed;
+        synchronized (lock) {
+            needed = recordsSinceSnapshot >= compactThreshold;
+        }
+        if (needed) {
+            compact();
+        }
+    }
+    
+    /**
+     * 压缩：写入完整快照（检查点为当前最后一条记录的序号）后清空日志
+     * 快照写入失败时保留日志，下次启动仍可重放
+     */
+    public void compact() {
+        synchronized (lock) {
+            awaitDurableLocked(appendedSeq);
+            try {
+                snapshotWriter.write(appendedSeq);
+                if (channel != null) {
+                    channel.truncate(0);
+                    channel.position(0);
+                    channel.force(true);
+                } else {
+                    Files.deleteIfExists(path);
+                }
+                recordsSinceSnapshot = 0;
+            } catch (IOException e) {
+                System.out.println("压缩变更日志失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 压缩日志并停止组提交线程
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            compact();
+            closed = true;
+            lock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("关闭变更日志失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 等待指定序号之前的记录全部落盘（需持有lock）
+     */
+    private void awaitDurableLocked(long seq) {
+        while (durableSeq < seq && flusher != null && flusher.isAlive()) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 组提交线程：收集一批记录，一次写入并刷盘
+     */
+    private void flushLoop() {
+        while (true) {
+            List<String> batch;
+            long target;
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    waitQuietly(0);
+                }
+                if (pending.isEmpty() && closed) {
+                    return;
+                }
+                // 短暂等待，让并发提交的记录合并到同一批
+                if (pending.size() < MAX_BATCH && !closed) {
+                    waitQuietly(GROUP_COMMIT_WINDOW_MS);
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                target = appendedSeq;
+            }
+            
+            try {
+                StringBuilder sb = new StringBuilder();
+                for (String line : batch) {
+                    sb.append(line);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // 内存中的数据仍然完整，退出时的压缩会把它写入快照
+                System.out.println("写入变更日志失败: " + e.getMessage());
+            }
+            
+            synchronized (lock) {
+                durableSeq = target;
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * 用已写好的临时文件替换目标文件：临时文件先刷盘，原子改名后再同步所在目录，
+     * 返回时替换已持久化（断电后不会既丢失新文件又已清空日志）
+     */
+    static void replaceFile(Path temp, Path target) throws IOException {
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            file.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path directory = target.toAbsolutePath().getParent();
+        if (directory != null) {
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                // 部分平台（如Windows）不能打开目录，改名本身已由文件系统保证原子性
+            }
+        }
+    }
+    
+    /**
+     * 记录开头的序号字段，不是序号（旧格式记录以记录类型开头）时返回0
+     */
+    private static long parseSequence(String field) {
+        if (field.isEmpty() || field.length() > 18) {
+            return 0;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (field.charAt(i) < '0' || field.charAt(i) > '9') {
+                return 0;
+            }
+        }
+        return Long.parseLong(field);
+    }
+    
+    private void waitQuietly(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 日志中最后一个完整记录（以换行结尾）之后的长度
+     */
+    private long validLength() throws IOException {
+        long size = channel.size();
+        ByteBuffer one = ByteBuffer.allocate(1);
+        for (long pos = size - 1; pos >= 0; pos--) {
+            one.clear();
+            channel.read(one, pos);
+            if (one.get(0) == '\n') {
+                return pos + 1;
+            }
+        }
+        return 0;
+    }
+}
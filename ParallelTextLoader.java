@@ -0,0 +1,217 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 并行文本数据加载器
+ * 通过FileChannel.map内存映射数据文件，按行边界切分为多个分块，
+ * 在fork-join线程池中并行解码和解析，按分块顺序合并结果（或逐块交给调用方），保持文件中的原有顺序
+ */
+class ParallelTextLoader {
+    // 每个分块的最小字节数（太小的分块调度开销大于收益）
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    // 每个分块的最大字节数（单次内存映射不能超过2GB）
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+    // 逐块交付时每个分块的最大字节数（限制同时存在的解析结果）
+    private static final long STREAMING_CHUNK_SIZE = 1L << 24;
+    
+    /**
+     * 行解析器：把一行的字段解析为对象，返回null表示跳过该行
+     */
+    interface LineParser<T> {
+        T parse(String[] fields);
+    }
+    
+    /**
+     * 并行加载整个文件
+     * @param fileName 文件名
+     * @param charset 文件编码（分块只在换行符处切分，对UTF-8、GBK等编码都是安全的）
+     * @param parser 行解析器
+     * @return 按文件顺序排列的解析结果
+     */
+    public static <T> List<T> load(String fileName, Charset charset, LineParser<T> parser) throws IOException {
+        List<T> results = new ArrayList<>();
+        forEachChunk(fileName, charset, parser, MAX_CHUNK_SIZE, results::addAll);
+        return results;
+    }
+    
+    /**
+     * 并行解析，按文件顺序逐块交给consumer（在调用线程上），不保留整个文件的解析结果：
+     * 同时解析中或等待交付的分块不超过并行度加一个，分块不超过STREAMING_CHUNK_SIZE，
+     * 因此同时存在的解析结果只有几个分块
+     */
+    public static <T> void forEachChunk(String fileName, Charset charset, LineParser<T> parser,
+                                        Consumer<List<T>> consumer) throws IOException {
+        forEachChunk(fileName, charset, parser, STREAMING_CHUNK_SIZE, consumer);
+    }
+    
+    private static <T> void forEachChunk(String fileName, Charset charset, LineParser<T> parser,
+                                         long maxChunkSize, Consumer<List<T>> consumer) throws IOException {
+        Path path = Paths.get(fileName);
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException(fileName);
+        }
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            
+            List<long[]> chunks = splitChunks(channel, size, maxChunkSize);
+            int window = ForkJoinPool.getCommonPoolParallelism() + 1;
+            Deque<Future<List<T>>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            try {
+                while (next < chunks.size() || !inFlight.isEmpty()) {
+                    while (next < chunks.size() && inFlight.size() < window) {
+                        long[] chunk = chunks.get(next++);
+                        inFlight.add(ForkJoinPool.commonPool().submit(
+                                () -> parseChunk(channel, chunk[0], chunk[1], charset, parser)));
+                    }
+                    consumer.accept(inFlight.poll().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("加载被中断: " + fileName);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                for (Future<List<T>> future : inFlight) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 按换行符把文件切分为若干 [起始位置, 结束位置) 分块
+     */
+    private static List<long[]> splitChunks(FileChannel channel, long size, long maxChunkSize) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, size / (parallelism * 4L));
+        chunkSize = Math.min(chunkSize, maxChunkSize);
+        
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            if (end < size) {
+                end = nextLineStart(channel, end, size);
+            }
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+    
+    /**
+     * 从position开始找到下一个换行符，返回其后一个字节的位置
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long pos = position;
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+    
+    /**
+     * 解码并解析一个分块
+     */
+    private static <T> List<T> parseChunk(FileChannel channel, long start, long end,
+                                          Charset charset, LineParser<T> parser) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        // 转为String后按字符串扫描：逐字符调用CharBuffer.charAt的嵌套循环在JDK 17.0.9的C2编译器上会触发崩溃，也更慢
+        String text = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(mapped)
+                .toString();
+        
+        List<T> results = new ArrayList<>();
+        int length = text.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int next = lineEnd + 1;
+            // 与BufferedReader.readLine一致，去掉行尾的\r
+            if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (!isBlank(text, lineStart, lineEnd)) {
+                T parsed = parser.parse(split(text, lineStart, lineEnd));
+                if (parsed != null) {
+                    results.add(parsed);
+                }
+            }
+            lineStart = next;
+        }
+        return results;
+    }
+    
+    /**
+     * 按'|'切分字段，与String.split("\\|")一致地去掉末尾的空字段
+     */
+    static String[] split(String line, int start, int end) {
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == '|') {
+                count++;
+            }
+        }
+        String[] fields = new String[count];
+        int field = 0;
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == '|') {
+                fields[field++] = line.substring(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        fields[field] = line.substring(fieldStart, end);
+        
+        int kept = fields.length;
+        while (kept > 0 && fields[kept - 1].isEmpty()) {
+            kept--;
+        }
+        return kept == fields.length ? fields : Arrays.copyOf(fields, kept);
+    }
+    
+    private static boolean isBlank(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
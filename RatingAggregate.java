@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * 一部电视剧的评分统计
+ * 保存评分数量、评分之和、评分平方和以及1~5星的分布，新增、替换、删除一条评分都是O(1)，
+ * 不同分片或并行加载的各部分统计可以直接合并。
+ * 和与平方和都以评分量表的中点为原点累计（平移数据法），
+ * 求方差时避免两个相近的大数相减造成的精度损失；数量归零时清零，删除不会留下舍入残差。
+ * 评分分布只统计逐条记录的评分，导入的汇总统计（只有平均分和人数）不计入分布
+ */
+class RatingAggregate {
+    // 平移原点（1~5星的中点）
+    private static final double SHIFT = 3.0;
+    // 分布的星级范围
+    static final int MIN_STARS = 1;
+    static final int MAX_STARS = 5;
+    
+    private long count;
+    private double shiftedSum;
+    private double shiftedSumOfSquares;
+    private final long[] histogram = new long[MAX_STARS - MIN_STARS + 1];
+    
+    /**
+     * 由导入的汇总统计恢复（平方和未知时按所有评分都等于平均分处理）
+     * @param sumOfSquares 评分平方和，为NaN时表示未知
+     */
+    static RatingAggregate restore(double mean, long count, double sumOfSquares) {
+        RatingAggregate aggregate = new RatingAggregate();
+        if (count <= 0) {
+            return aggregate;
+        }
+        aggregate.count = count;
+        aggregate.shiftedSum = (mean - SHIFT) * count;
+        aggregate.shiftedSumOfSquares = Double.isNaN(sumOfSquares)
+                ? (mean - SHIFT) * (mean - SHIFT) * count
+                // Σ(x-c)² = Σx² - 2cΣx + nc²
+                : sumOfSquares - 2 * SHIFT * mean * count + SHIFT * SHIFT * count;
+        return aggregate;
+    }
+    
+    /**
+     * 新增一条评分
+     */
+    public void add(double score) {
+        double shifted = score - SHIFT;
+        count++;
+        shiftedSum += shifted;
+        shiftedSumOfSquares += shifted * shifted;
+        histogram[bucket(score)]++;
+    }
+    
+    /**
+     * 删除一条评分
+     */
+    public void remove(double score) {
+        if (count <= 1) {
+            clearSums();
+        } else {
+            double shifted = score - SHIFT;
+            count--;
+            shiftedSum -= shifted;
+            shiftedSumOfSquares = Math.max(0, shiftedSumOfSquares - shifted * shifted);
+        }
+        int bucket = bucket(score);
+        if (histogram[bucket] > 0) {
+            histogram[bucket]--;
+        }
+    }
+    
+    /**
+     * 用新评分替换旧评分（数量不变）
+     */
+    public void replace(double oldScore, double newScore) {
+        remove(oldScore);
+        add(newScore);
+    }
+    
+    /**
+     * 合并另一份统计（两者应覆盖不相交的评分集合）
+     */
+    public void merge(RatingAggregate other) {
+        count += other.count;
+        shiftedSum += other.shiftedSum;
+        shiftedSumOfSquares += other.shiftedSumOfSquares;
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * 平均分（没有评分时为0）
+     */
+    public double getMean() {
+        return count == 0 ? 0.0 : SHIFT + shiftedSum / count;
+    }
+    
+    /**
+     * 总体方差（没有评分时为0）
+     */
+    public double getVariance() {
+        if (count == 0) {
+            return 0.0;
+        }
+        double meanShift = shiftedSum / count;
+        return Math.max(0, shiftedSumOfSquares / count - meanShift * meanShift);
+    }
+    
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+    
+    /**
+     * 评分平方和（持久化用）
+     */
+    public double getSumOfSquares() {
+        // Σx² = Σ(x-c)² + 2cΣ(x-c) + nc²
+        return shiftedSumOfSquares + 2 * SHIFT * shiftedSum + SHIFT * SHIFT * count;
+    }
+    
+    /**
+     * 某个星级（四舍五入）的评分条数
+     */
+    public long getHistogramCount(int stars) {
+        return histogram[stars - MIN_STARS];
+    }
+    
+    /**
+     * 用另一份统计的分布替换当前分布（数量、和、平方和不变）
+     */
+    public void restoreHistogram(RatingAggregate source) {
+        System.arraycopy(source.histogram, 0, histogram, 0, histogram.length);
+    }
+    
+    /**
+     * 分布是否与另一份统计一致
+     */
+    public boolean histogramEquals(RatingAggregate other) {
+        return Arrays.equals(histogram, other.histogram);
+    }
+    
+    public RatingAggregate copy() {
+        RatingAggregate copy = new RatingAggregate();
+        copy.merge(this);
+        return copy;
+    }
+    
+    private void clearSums() {
+        count = 0;
+        shiftedSum = 0;
+        shiftedSumOfSquares = 0;
+    }
+    
+    private static int bucket(double score) {
+        long stars = Math.round(score);
+        return (int) (Math.max(MIN_STARS, Math.min(MAX_STARS, stars)) - MIN_STARS);
+    }
+}
@@ -0,0 +1,337 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 评分的列式存储
+ * 每条评分占一行，各字段按列存放在基本类型数组中：电视剧ID和用户名经字典编码为int，
+ * 评分以十分之一星为单位存为byte，时间戳存为毫秒数，评论以UTF-8存放在堆外内存页中、读取时才解码。
+ * 与每条评分一个对象（含多个String）相比，内存占用大幅降低。
+ * 行号只增不减，删除只做标记，由评分索引在删除过多时整体重建。
+ * 写入由调用方串行化；已有的行在写入的同时也可以被读取（评分视图对象在锁外展示时）
+ */
+class RatingColumns {
+    // 时间戳格式（与ratings.txt中一致）
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // 时间戳列中表示"原始字符串无法解析，见irregularTimestamps"的值
+    private static final long IRREGULAR_TIMESTAMP = Long.MIN_VALUE;
+    // 评分列中表示"不是整十分之一星，见irregularScores"的值
+    private static final byte IRREGULAR_SCORE = Byte.MIN_VALUE;
+    // 评分ID列中表示"不是RT加数字的格式，见irregularIds"的值
+    private static final int IRREGULAR_ID = -1;
+    // 评论存储页大小
+    private static final int COMMENT_PAGE_SIZE = 1 << 20;
+    
+    /**
+     * 字符串字典：字符串与连续int编码互相转换
+     */
+    static class Dictionary {
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        // 扩容时整体替换，读取方总能看到包含已分配编码的数组
+        private volatile String[] values = new String[16];
+        private volatile int size = 0;
+        
+        /**
+         * 返回字符串的编码，不存在时分配新编码
+         */
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = size;
+                String[] current = values;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[code] = value;
+                values = current;
+                size++;
+                codes.put(value, code);
+            }
+            return code;
+        }
+        
+        /**
+         * 返回字符串的编码，不存在时返回-1
+         */
+        int lookup(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+        
+        String decode(int code) {
+            return values[code];
+        }
+        
+        int size() {
+            return size;
+        }
+    }
+    
+    private final Dictionary tvShowIds;
+    private final Dictionary usernames;
+    
+    private volatile int size = 0;
+    // 扩容时整体替换数组引用
+    private volatile int[] idColumn = new int[16];
+    private volatile int[] tvShowColumn = new int[16];
+    private volatile int[] userColumn = new int[16];
+    private volatile byte[] scoreColumn = new byte[16];
+    private volatile long[] timestampColumn = new long[16];
+    private volatile long[] commentRefColumn = new long[16];
+    private volatile int[] commentLengthColumn = new int[16];
+    private final BitSet deleted = new BitSet();
+    private int deletedCount = 0;
+    
+    // 少数不符合常规格式的值单独存放
+    private final Map<Integer, String> irregularIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Double> irregularScores = new ConcurrentHashMap<>();
+    private final Map<Integer, String> irregularTimestamps = new ConcurrentHashMap<>();
+    
+    // 评论存储页（堆外内存）
+    private final List<ByteBuffer> commentPages = new CopyOnWriteArrayList<>();
+    private ByteBuffer currentPage = null;
+    
+    RatingColumns() {
+        this(new Dictionary(), new Dictionary());
+    }
+    
+    /**
+     * 共享字典构造（重建时沿用原有编码）
+     */
+    RatingColumns(Dictionary tvShowIds, Dictionary usernames) {
+        this.tvShowIds = tvShowIds;
+        this.usernames = usernames;
+    }
+    
+    /**
+     * 追加一行
+     * @param timestampMillis 时间戳毫秒数，为IRREGULAR时使用rawTimestamp
+     * @return 行号
+     */
+    int append(String id, String tvShowId, String username, double score, String comment,
+               long timestampMillis, String rawTimestamp) {
+        ensureCapacity(size + 1);
+        int row = size;
+        
+        int numericId = parseNumericId(id);
+        idColumn[row] = numericId;
+        if (numericId == IRREGULAR_ID) {
+            irregularIds.put(row, id);
+        }
+        
+        tvShowColumn[row] = tvShowIds.encode(tvShowId);
+        userColumn[row] = usernames.encode(username);
+        
+        double tenths = score * 10;
+        if (tenths == Math.rint(tenths) && tenths > IRREGULAR_SCORE && tenths <= Byte.MAX_VALUE) {
+            scoreColumn[row] = (byte) tenths;
+        } else {
+            scoreColumn[row] = IRREGULAR_SCORE;
+            irregularScores.put(row, score);
+        }
+        
+        timestampColumn[row] = timestampMillis;
+        if (timestampMillis == IRREGULAR_TIMESTAMP) {
+            irregularTimestamps.put(row, rawTimestamp);
+        }
+        
+        storeComment(row, comment);
+        // 各列写完后再发布新行
+        size = row + 1;
+        return row;
+    }
+    
+    /**
+     * 标记删除一行
+     * @return 该行原先是否有效
+     */
+    boolean delete(int row) {
+        if (row < 0 || row >= size || deleted.get(row)) {
+            return false;
+        }
+        deleted.set(row);
+        deletedCount++;
+        return true;
+    }
+    
+    boolean isLive(int row) {
+        return row >= 0 && row < size && !deleted.get(row);
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    int deletedCount() {
+        return deletedCount;
+    }
+    
+    Dictionary tvShowIds() {
+        return tvShowIds;
+    }
+    
+    Dictionary usernames() {
+        return usernames;
+    }
+    
+    // ===== 按行读取 =====
+    
+    String id(int row) {
+        int numericId = idColumn[row];
+        return numericId == IRREGULAR_ID ? irregularIds.get(row) : String.format("RT%03d", numericId);
+    }
+    
+    int numericId(int row) {
+        return idColumn[row];
+    }
+    
+    int tvShowCode(int row) {
+        return tvShowColumn[row];
+    }
+    
+    int userCode(int row) {
+        return userColumn[row];
+    }
+    
+    String tvShowId(int row) {
+        return tvShowIds.decode(tvShowColumn[row]);
+    }
+    
+    String username(int row) {
+        return usernames.decode(userColumn[row]);
+    }
+    
+    double score(int row) {
+        byte tenths = scoreColumn[row];
+        return tenths == IRREGULAR_SCORE ? irregularScores.get(row) : tenths / 10.0;
+    }
+    
+    long timestampMillis(int row) {
+        return timestampColumn[row];
+    }
+    
+    String timestamp(int row) {
+        long millis = timestampColumn[row];
+        return millis == IRREGULAR_TIMESTAMP ? irregularTimestamps.get(row) : formatTimestamp(millis);
+    }
+    
+    String comment(int row) {
+        long ref = commentRefColumn[row];
+        ByteBuffer page = commentPages.get((int) (ref >>> 32)).duplicate();
+        byte[] bytes = new byte[commentLengthColumn[row]];
+        page.position((int) ref);
+        page.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    // ===== 时间戳转换 =====
+    
+    /**
+     * 当前时间的毫秒数（与时间戳字符串一样按本地时间记录）
+     */
+    static long now() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) * 1000;
+    }
+    
+    /**
+     * 解析"yyyy-MM-dd HH:mm:ss"格式的时间戳
+     * @return 毫秒数，格式不符时返回IRREGULAR_TIMESTAMP
+     */
+    static long parseTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.length() != 19
+                || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-' || timestamp.charAt(10) != ' '
+                || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':') {
+            return IRREGULAR_TIMESTAMP;
+        }
+        try {
+            LocalDateTime time = LocalDateTime.of(
+                    digits(timestamp, 0, 4), digits(timestamp, 5, 7), digits(timestamp, 8, 10),
+                    digits(timestamp, 11, 13), digits(timestamp, 14, 16), digits(timestamp, 17, 19));
+            return time.toEpochSecond(ZoneOffset.UTC) * 1000;
+        } catch (RuntimeException e) {
+            return IRREGULAR_TIMESTAMP;
+        }
+    }
+    
+    /**
+     * 按本地时间记录的毫秒数换算为纪元毫秒数（按系统默认时区，可与System.currentTimeMillis()比较）
+     */
+    static long toEpochMillis(long millis) {
+        if (millis == IRREGULAR_TIMESTAMP) {
+            return millis;
+        }
+        LocalDateTime local = LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+        return local.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    static String formatTimestamp(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), 0, ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+    }
+    
+    static boolean isRegularTimestamp(long millis) {
+        return millis != IRREGULAR_TIMESTAMP;
+    }
+    
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException(s);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    /**
+     * "RT001"格式的ID返回其数字部分，其他格式返回IRREGULAR_ID
+     */
+    private static int parseNumericId(String id) {
+        if (id.length() < 5 || !id.startsWith("RT")) {
+            return IRREGULAR_ID;
+        }
+        int value = 0;
+        for (int i = 2; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                return IRREGULAR_ID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        // 只有能原样还原的ID才按数字存储（例如"RT0001"无法由"RT%03d"还原）
+        return String.format("RT%03d", value).equals(id) ? value : IRREGULAR_ID;
+    }
+    
+    private void storeComment(int row, String comment) {
+        byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+        if (currentPage == null || currentPage.remaining() < bytes.length) {
+            currentPage = ByteBuffer.allocateDirect(Math.max(COMMENT_PAGE_SIZE, bytes.length));
+            commentPages.add(currentPage);
+        }
+        commentRefColumn[row] = ((long) (commentPages.size() - 1) << 32) | currentPage.position();
+        commentLengthColumn[row] = bytes.length;
+        currentPage.put(bytes);
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity <= idColumn.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, idColumn.length + (idColumn.length >> 1));
+        idColumn = Arrays.copyOf(idColumn, newCapacity);
+        tvShowColumn = Arrays.copyOf(tvShowColumn, newCapacity);
+        userColumn = Arrays.copyOf(userColumn, newCapacity);
+        scoreColumn = Arrays.copyOf(scoreColumn, newCapacity);
+        timestampColumn = Arrays.copyOf(timestampColumn, newCapacity);
+        commentRefColumn = Arrays.copyOf(commentRefColumn, newCapacity);
+        commentLengthColumn = Arrays.copyOf(commentLengthColumn, newCapacity);
+    }
+}
@@ -0,0 +1,378 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * 评分索引
+ * 评分数据保存在列式存储中，索引只记录行号：按电视剧、按用户名的行号列表，
+ * 以及按(用户名, 电视剧ID)的行号映射用于重复评分检查。
+ * 插入、替换、删除时增量更新，使查询代价与结果数量成正比而不是与评分总数成正比；
+ * 查询结果以轻量的Rating视图返回
+ */
+class RatingIndex {
+    // 已删除行超过该数量且超过总行数一半时重建列式存储
+    private static final int REBUILD_MIN_DELETED = 1024;
+    // 并行统计时每块至少包含的行数
+    private static final int AGGREGATE_CHUNK_ROWS = 1 << 16;
+    
+    /**
+     * 可增长的int列表
+     */
+    static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+        // 作为行号列表时，其中已删除的行数
+        private int deleted = 0;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        int get(int index) {
+            return values[index];
+        }
+        
+        int size() {
+            return size;
+        }
+    }
+    
+    /**
+     * 按编码遍历评分的回调（用于批量计算，避免为每条评分创建对象）
+     */
+    interface RatingConsumer {
+        void accept(int userCode, int tvShowCode, double score, long timestampMillis);
+    }
+    
+    private RatingColumns columns = new RatingColumns();
+    // 电视剧编码 -> 行号列表（可能包含已删除的行，读取时跳过）
+    private IntList[] byTVShow = new IntList[16];
+    // 用户编码 -> 行号列表（可能包含已删除的行，读取时跳过）
+    private IntList[] byUsername = new IntList[16];
+    // (用户编码, 电视剧编码) -> 行号，用于重复评分检查
+    private final Map<Long, Integer> byUserAndTVShow = new HashMap<>();
+    // 已出现过的最大数字ID（用于生成新ID）
+    private int maxNumericId = 0;
+    
+    /**
+     * 添加评分；若该用户已对同一部电视剧评分，则替换旧评分
+     * @return 被替换的旧评分，没有时返回null
+     */
+    public TVShowRecommendationSystem.Rating add(TVShowRecommendationSystem.Rating rating) {
+        long timestampMillis = rating.getTimestampMillis();
+        return add(rating.getId(), rating.getTvShowId(), rating.getUsername(), rating.getScore(), rating.getComment(),
+                timestampMillis, RatingColumns.isRegularTimestamp(timestampMillis) ? null : rating.getTimestamp());
+    }
+    
+    /**
+     * 按字段添加评分（加载数据时直接追加到列式存储，不创建评分对象）；替换规则同add(Rating)
+     * @param rawTimestamp 时间戳无法解析时的原始字符串
+     * @return 被替换的旧评分，没有时返回null
+     */
+    public TVShowRecommendationSystem.Rating add(String id, String tvShowId, String username, double score,
+                                                 String comment, long timestampMillis, String rawTimestamp) {
+        TVShowRecommendationSystem.Rating previous = findByUserAndTVShow(username, tvShowId);
+        if (previous != null) {
+            remove(previous);
+        }
+        
+        int row = columns.append(id, tvShowId, username, score, comment, timestampMillis, rawTimestamp);
+        index(row);
+        trackId(id);
+        return previous;
+    }
+    
+    /**
+     * 删除评分（按用户名和电视剧ID定位，评分ID一致时才删除）
+     * @return 被删除的评分，不存在时返回null
+     */
+    public TVShowRecommendationSystem.Rating remove(TVShowRecommendationSystem.Rating rating) {
+        Integer row = byUserAndTVShow.get(key(rating.getUsername(), rating.getTvShowId()));
+        if (row == null || !columns.id(row).equals(rating.getId())) {
+            return null;
+        }
+        TVShowRecommendationSystem.Rating removed = new TVShowRecommendationSystem.Rating(columns, row);
+        columns.delete(row);
+        byUserAndTVShow.remove(key(columns.userCode(row), columns.tvShowCode(row)));
+        markDeleted(byTVShow, columns.tvShowCode(row));
+        markDeleted(byUsername, columns.userCode(row));
+        rebuildIfNeeded();
+        return removed;
+    }
+    
+    /**
+     * 删除某部电视剧的所有评分（删除电视剧时级联调用）
+     * @return 被删除的评分列表
+     */
+    public List<TVShowRecommendationSystem.Rating> removeByTVShowId(String tvShowId) {
+        int code = columns.tvShowIds().lookup(tvShowId);
+        if (code < 0 || code >= byTVShow.length || byTVShow[code] == null) {
+            return Collections.emptyList();
+        }
+        IntList rows = byTVShow[code];
+        byTVShow[code] = null;
+        
+        RatingColumns current = columns;
+        List<TVShowRecommendationSystem.Rating> removed = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            if (current.delete(row)) {
+                removed.add(new TVShowRecommendationSystem.Rating(current, row));
+                byUserAndTVShow.remove(key(current.userCode(row), code));
+                markDeleted(byUsername, current.userCode(row));
+            }
+        }
+        rebuildIfNeeded();
+        return removed;
+    }
+    
+    /**
+     * 根据电视剧ID查找评分
+     */
+    public List<TVShowRecommendationSystem.Rating> findByTVShowId(String tvShowId) {
+        return views(byTVShow, columns.tvShowIds().lookup(tvShowId));
+    }
+    
+    /**
+     * 根据用户名查找评分
+     */
+    public List<TVShowRecommendationSystem.Rating> findByUsername(String username) {
+        return views(byUsername, columns.usernames().lookup(username));
+    }
+    
+    /**
+     * 根据用户和电视剧ID查找评分
+     */
+    public TVShowRecommendationSystem.Rating findByUserAndTVShow(String username, String tvShowId) {
+        Integer row = byUserAndTVShow.get(key(username, tvShowId));
+        return row == null ? null : new TVShowRecommendationSystem.Rating(columns, row);
+    }
+    
+    /**
+     * 按插入顺序返回所有评分
+     */
+    public List<TVShowRecommendationSystem.Rating> all() {
+        List<TVShowRecommendationSystem.Rating> results = new ArrayList<>(size());
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.isLive(row)) {
+                results.add(new TVShowRecommendationSystem.Rating(columns, row));
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 按插入顺序以编码形式遍历所有评分
+     */
+    public void forEachRating(RatingConsumer consumer) {
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.isLive(row)) {
+                consumer.accept(columns.userCode(row), columns.tvShowCode(row),
+                        columns.score(row), columns.timestampMillis(row));
+            }
+        }
+    }
+    
+    /**
+     * 由评分记录重新计算每部电视剧的评分统计
+     * 按行号分块并行统计，各块的结果逐部电视剧合并
+     * @return 电视剧ID -> 评分统计（没有评分的电视剧不包含在内）
+     */
+    public Map<String, RatingAggregate> aggregateByTVShow() {
+        RatingColumns current = columns;
+        int rows = current.size();
+        int showCount = current.tvShowIds().size();
+        int chunks = Math.max(1, Math.min(rows / AGGREGATE_CHUNK_ROWS, Runtime.getRuntime().availableProcessors() * 4));
+        RatingAggregate[] merged = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    RatingAggregate[] partial = new RatingAggregate[showCount];
+                    int end = (int) ((long) rows * (chunk + 1) / chunks);
+                    for (int row = (int) ((long) rows * chunk / chunks); row < end; row++) {
+                        if (current.isLive(row)) {
+                            int code = current.tvShowCode(row);
+                            if (partial[code] == null) {
+                                partial[code] = new RatingAggregate();
+                            }
+                            partial[code].add(current.score(row));
+                        }
+                    }
+                    return partial;
+                })
+                .reduce((left, right) -> {
+                    for (int code = 0; code < showCount; code++) {
+                        if (left[code] == null) {
+                            left[code] = right[code];
+                        } else if (right[code] != null) {
+                            left[code].merge(right[code]);
+                        }
+                    }
+                    return left;
+                })
+                .orElseGet(() -> new RatingAggregate[0]);
+        
+        Map<String, RatingAggregate> results = new HashMap<>();
+        for (int code = 0; code < merged.length; code++) {
+            if (merged[code] != null) {
+                results.put(current.tvShowIds().decode(code), merged[code]);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 电视剧编码的上界（编码范围为 [0, tvShowCodeCount)）
+     */
+    public int tvShowCodeCount() {
+        return columns.tvShowIds().size();
+    }
+    
+    /**
+     * 用户编码的上界（编码范围为 [0, userCodeCount)）
+     */
+    public int userCodeCount() {
+        return columns.usernames().size();
+    }
+    
+    public String tvShowIdOf(int code) {
+        return columns.tvShowIds().decode(code);
+    }
+    
+    public String usernameOf(int code) {
+        return columns.usernames().decode(code);
+    }
+    
+    public int size() {
+        return columns.size() - columns.deletedCount();
+    }
+    
+    public void clear() {
+        columns = new RatingColumns();
+        byTVShow = new IntList[16];
+        byUsername = new IntList[16];
+        byUserAndTVShow.clear();
+        maxNumericId = 0;
+    }
+    
+    /**
+     * 生成下一个评分ID（格式为"RT001"）
+     */
+    public String nextId() {
+        return String.format("RT%03d", maxNumericId + 1);
+    }
+    
+    /**
+     * 把一行加入各索引
+     */
+    private void index(int row) {
+        int tvShowCode = columns.tvShowCode(row);
+        int userCode = columns.userCode(row);
+        byTVShow = bucket(byTVShow, tvShowCode);
+        byTVShow[tvShowCode].add(row);
+        byUsername = bucket(byUsername, userCode);
+        byUsername[userCode].add(row);
+        byUserAndTVShow.put(key(userCode, tvShowCode), row);
+    }
+    
+    /**
+     * 确保编码对应的行号列表存在
+     */
+    private static IntList[] bucket(IntList[] buckets, int code) {
+        if (code >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, Math.max(code + 1, buckets.length * 2));
+        }
+        if (buckets[code] == null) {
+            buckets[code] = new IntList();
+        }
+        return buckets;
+    }
+    
+    /**
+     * 记录行号列表中又有一行被删除，已删除的行超过一半时压缩该列表
+     * （在修改时进行，查询只读取列表，可以在读锁内并发执行）
+     */
+    private void markDeleted(IntList[] buckets, int code) {
+        IntList rows = buckets[code];
+        if (rows == null) {
+            return;
+        }
+        rows.deleted++;
+        if (rows.deleted * 2 > rows.size()) {
+            IntList live = new IntList();
+            for (int i = 0; i < rows.size(); i++) {
+                if (columns.isLive(rows.get(i))) {
+                    live.add(rows.get(i));
+                }
+            }
+            buckets[code] = live.size() == 0 ? null : live;
+        }
+    }
+    
+    /**
+     * 把行号列表中的有效行转换为视图（只读）
+     */
+    private List<TVShowRecommendationSystem.Rating> views(IntList[] buckets, int code) {
+        List<TVShowRecommendationSystem.Rating> results = new ArrayList<>();
+        if (code < 0 || code >= buckets.length || buckets[code] == null) {
+            return results;
+        }
+        IntList rows = buckets[code];
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            if (columns.isLive(row)) {
+                results.add(new TVShowRecommendationSystem.Rating(columns, row));
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 已删除行过多时，把有效行复制到新的列式存储并重建索引
+     */
+    private void rebuildIfNeeded() {
+        int deleted = columns.deletedCount();
+        if (deleted < REBUILD_MIN_DELETED || deleted * 2 < columns.size()) {
+            return;
+        }
+        RatingColumns old = columns;
+        columns = new RatingColumns(old.tvShowIds(), old.usernames());
+        byTVShow = new IntList[byTVShow.length];
+        byUsername = new IntList[byUsername.length];
+        byUserAndTVShow.clear();
+        for (int row = 0; row < old.size(); row++) {
+            if (old.isLive(row)) {
+                int newRow = columns.append(old.id(row), old.tvShowId(row), old.username(row), old.score(row),
+                        old.comment(row), old.timestampMillis(row), old.timestamp(row));
+                index(newRow);
+            }
+        }
+    }
+    
+    private long key(String username, String tvShowId) {
+        int userCode = columns.usernames().lookup(username);
+        int tvShowCode = columns.tvShowIds().lookup(tvShowId);
+        return userCode < 0 || tvShowCode < 0 ? -1L : key(userCode, tvShowCode);
+    }
+    
+    /**
+     * 组合键：高32位为用户编码，低32位为电视剧编码
+     */
+    private static long key(int userCode, int tvShowCode) {
+        return ((long) userCode << 32) | (tvShowCode & 0xffffffffL);
+    }
+    
+    /**
+     * 记录数字ID的最大值
+     */
+    private void trackId(String id) {
+        try {
+            int value = Integer.parseInt(id.substring(2)); // 假设ID格式为"RT001"
+            if (value > maxNumericId) {
+                maxNumericId = value;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            // 如果ID格式不是预期的，忽略
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 远程推荐结果缓存
+ * 以规范化后的喜好文本（全角半角统一、大小写统一、标点和空白合并）加候选电视剧ID集合为键，
+ * 喜好相同或几乎相同、候选相同时直接返回上次的结果而不再请求远程API。
+ * 条目数量超过上限时淘汰最久未使用的条目，超过有效期的条目在读取时丢弃；
+ * 可选地持久化到文件，重启后仍可命中；写入文件由调用方安排（save()）
+ *
+ * 持久化文件布局（大端序）：
+ *   int 魔数 | short 版本号 | int 条目数量
+ *   每个条目：long 写入时间毫秒数 | int 键长度 | 键UTF-8 | int 值长度 | 值UTF-8
+ */
+class RecommendationCache {
+    private static final int MAGIC = 0x52435348; // "RCSH"
+    private static final short VERSION = 2;
+    
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+        final String value;
+        final long createdAt;
+        
+        Entry(String value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final String fileName;
+    // 按访问顺序排列，最久未使用的在最前
+    private final LinkedHashMap<String, Entry> entries;
+    // 串行化文件写入（多个线程同时保存时共用同一个临时文件）
+    private final Object saveLock = new Object();
+    
+    // 统计
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    
+    /**
+     * 构造函数
+     * @param maxEntries 最多缓存的条目数
+     * @param ttlMillis 条目有效期（毫秒）
+     * @param fileName 持久化文件，为null时只在内存中缓存
+     */
+    public RecommendationCache(int maxEntries, long ttlMillis, String fileName) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.fileName = fileName;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > RecommendationCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * 缓存键：规范化后的喜好文本加排序后的候选电视剧ID（候选顺序不同视为相同）
+     */
+    static String key(String preferences, Collection<String> candidateIds) {
+        List<String> ids = new ArrayList<>(candidateIds);
+        Collections.sort(ids);
+        // 规范化后的文本不含换行，可作分隔
+        return normalize(preferences == null ? "" : preferences) + "\n" + String.join(",", ids);
+    }
+    
+    /**
+     * 查找缓存的结果
+     * @param key 由key()生成的缓存键
+     * @return 缓存的结果，不存在或已过期时返回null
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+    
+    /**
+     * 缓存结果（只更新内存，持久化由调用方调用save()）
+     * @param key 由key()生成的缓存键
+     */
+    public synchronized void put(String key, String value) {
+        entries.put(key, new Entry(value, System.currentTimeMillis()));
+    }
+    
+    /**
+     * 是否配置了持久化文件
+     */
+    public boolean isPersistent() {
+        return fileName != null;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    public long getExpirations() {
+        return expirations.get();
+    }
+    
+    /**
+     * 命中率（尚无查询时为0）
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+    
+    /**
+     * 统计信息摘要
+     */
+    public String summary() {
+        return String.format("缓存条目: %d, 命中: %d, 未命中: %d, 命中率: %.1f%%, 淘汰: %d, 过期: %d",
+                size(), getHits(), getMisses(), getHitRate() * 100, getEvictions(), getExpirations());
+    }
+    
+    /**
+     * 从持久化文件加载未过期的条目（文件不存在或损坏时忽略）
+     * @return 加载的条目数
+     */
+    public int load() {
+        if (fileName == null || !new File(fileName).isFile()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>();
+        List<Entry> values = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return 0;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long createdAt = in.readLong();
+                String key = readString(in);
+                String value = readString(in);
+                keys.add(key);
+                values.add(new Entry(value, createdAt));
+            }
+        } catch (IOException e) {
+            System.out.println("推荐缓存文件已损坏，已忽略: " + e.getMessage());
+            return 0;
+        }
+        
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        synchronized (this) {
+            // 文件中按从旧到新的访问顺序保存，依次放入即可恢复LRU顺序
+            for (int i = 0; i < keys.size(); i++) {
+                if (!isExpired(values.get(i), now)) {
+                    entries.put(keys.get(i), values.get(i));
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * 写入持久化文件（先写临时文件再原子替换）
+     */
+    public void save() throws IOException {
+        List<Map.Entry<String, Entry>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                snapshot.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+        }
+        
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        synchronized (saveLock) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> entry : snapshot) {
+                    out.writeLong(entry.getValue().createdAt);
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue().value);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+    
+    /**
+     * 规范化喜好文本：全角字符转为半角、转为小写，标点视为空白，
+     * 连续空白合并为一个空格（与汉字相邻的空白去掉）并去掉首尾空白
+     */
+    static String normalize(String preferences) {
+        String text = Normalizer.normalize(preferences, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || isPunctuation(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                // 汉字之间的空白没有意义，只在两个非汉字之间保留
+                if (pendingSpace && !Character.isIdeographic(c)
+                        && !Character.isIdeographic(sb.charAt(sb.length() - 1))) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static boolean isPunctuation(char c) {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt > ttlMillis;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("字符串长度无效: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
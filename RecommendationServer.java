@@ -0,0 +1,401 @@
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP服务模式
+ * 以JSON提供与控制台相同的查询、榜单、评分和推荐功能，所有请求都经过同一个数据层（读写锁、变更日志），
+ * 可以部署多个实例放在负载均衡之后。每个请求在单独的线程上处理：
+ * 运行在支持虚拟线程的JDK上时每个请求一个虚拟线程，否则使用固定大小的平台线程池（见IoExecutor）
+ *
+ * 接口：
+ *   GET  /api/shows?q=关键词&limit=N       搜索电视剧
+ *   GET  /api/shows/{id}                   电视剧详情（记一次观看）
+ *   GET  /api/top/{views|rating|count|trending-hour|trending-day|trending-week}  榜单前10名
+ *   POST /api/ratings                      提交评分（表单参数tvShowId、score、comment，需Basic认证）
+ *   GET  /api/recommendations?preferences= 个性化推荐（需Basic认证）
+ */
+class RecommendationServer {
+    // 搜索结果默认和最大条数
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    // 请求体大小上限
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    
+    /**
+     * 服务依赖的数据操作（由主程序提供，保证与控制台走同一套加锁和日志逻辑）
+     */
+    interface Backend {
+        List<TVShowRecommendationSystem.TVShow> search(String keywords);
+        
+        /**
+         * @return 电视剧不存在时返回null
+         */
+        TVShowRecommendationSystem.TVShow find(String tvShowId);
+        
+        void recordView(TVShowRecommendationSystem.TVShow tvShow);
+        
+        long viewCountOf(TVShowRecommendationSystem.TVShow tvShow);
+        
+        /**
+         * @return 榜单名称无效时返回null
+         */
+        List<TVShowRecommendationSystem.TVShow> top(String board, int k);
+        
+        /**
+         * @return 用户名或密码错误时返回null
+         */
+        TVShowRecommendationSystem.User authenticate(String username, String password);
+        
+        /**
+         * @return 电视剧在提交前已被删除时返回false
+         */
+        boolean rate(TVShowRecommendationSystem.User user, TVShowRecommendationSystem.TVShow tvShow,
+                     double score, String comment);
+        
+        List<TVShowRecommendationSystem.TVShow> recommend(TVShowRecommendationSystem.User user, String preferences);
+    }
+    
+    /**
+     * 请求处理中可直接返回给客户端的错误
+     */
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+        
+        final int status;
+        
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+    
+    /**
+     * 写出响应体的回调
+     */
+    private interface Body {
+        void write(JsonWriter writer) throws IOException;
+    }
+    
+    private final Backend backend;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    /**
+     * 构造函数（绑定端口，尚未开始处理请求）
+     */
+    public RecommendationServer(int port, Backend backend) throws IOException {
+        this.backend = backend;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = IoExecutor.newExecutor("http");
+        server.setExecutor(executor);
+        server.createContext("/api/shows", exchange -> handle(exchange, this::shows));
+        server.createContext("/api/top/", exchange -> handle(exchange, this::top));
+        server.createContext("/api/ratings", exchange -> handle(exchange, this::rate));
+        server.createContext("/api/recommendations", exchange -> handle(exchange, this::recommend));
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * 停止接受新请求，等待进行中的请求结束
+     * @param delaySeconds 等待进行中请求的最长时间（秒）
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 请求处理器
+     */
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException, HttpError;
+    }
+    
+    /**
+     * 统一处理错误响应，保证每个请求都被关闭
+     */
+    private void handle(HttpExchange exchange, Handler handler) {
+        try {
+            try {
+                handler.handle(exchange);
+            } catch (HttpError e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, "服务器内部错误: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            // 客户端已断开，无法再发送响应
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * GET /api/shows?q= 和 GET /api/shows/{id}
+     */
+    private void shows(HttpExchange exchange) throws IOException, HttpError {
+        requireMethod(exchange, "GET");
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals("/api/shows") && !path.startsWith("/api/shows/")) {
+            throw new HttpError(404, "未知的路径: " + path);
+        }
+        String rest = path.length() > "/api/shows/".length() ? path.substring("/api/shows/".length()) : "";
+        if (!rest.isEmpty()) {
+            TVShowRecommendationSystem.TVShow tvShow = backend.find(rest);
+            if (tvShow == null) {
+                throw new HttpError(404, "找不到该电视剧: " + rest);
+            }
+            backend.recordView(tvShow);
+            sendJson(exchange, 200, writer -> writeDetails(writer, tvShow));
+            return;
+        }
+        
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String keywords = query.getOrDefault("q", "").trim();
+        if (keywords.isEmpty()) {
+            throw new HttpError(400, "缺少查询参数q");
+        }
+        int limit = parseLimit(query.get("limit"));
+        List<TVShowRecommendationSystem.TVShow> results = backend.search(keywords);
+        sendJson(exchange, 200, writer -> writeList(writer, results.subList(0, Math.min(limit, results.size()))));
+    }
+    
+    /**
+     * GET /api/top/{views|rating|count|trending-hour|trending-day|trending-week}
+     */
+    private void top(HttpExchange exchange) throws IOException, HttpError {
+        requireMethod(exchange, "GET");
+        String board = exchange.getRequestURI().getPath().substring("/api/top/".length());
+        List<TVShowRecommendationSystem.TVShow> results = backend.top(board, 10);
+        if (results == null) {
+            throw new HttpError(404, "未知的榜单: " + board + "（可用: views, rating, count, trending-hour, trending-day, trending-week）");
+        }
+        sendJson(exchange, 200, writer -> writeList(writer, results));
+    }
+    
+    /**
+     * POST /api/ratings
+     */
+    private void rate(HttpExchange exchange) throws IOException, HttpError {
+        requirePath(exchange, "/api/ratings");
+        requireMethod(exchange, "POST");
+        TVShowRecommendationSystem.User user = authenticate(exchange);
+        Map<String, String> form = parseQuery(readBody(exchange));
+        
+        String tvShowId = form.getOrDefault("tvShowId", "");
+        String comment = form.getOrDefault("comment", "");
+        double score;
+        try {
+            score = Double.parseDouble(form.getOrDefault("score", ""));
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "无效的评分");
+        }
+        if (!(score >= 1 && score <= 5)) {
+            throw new HttpError(400, "评分必须在1-5之间");
+        }
+        // 数据文件以竖线和换行分隔字段
+        if (comment.indexOf('|') >= 0 || comment.indexOf('\n') >= 0 || comment.indexOf('\r') >= 0) {
+            throw new HttpError(400, "评价不能包含竖线或换行");
+        }
+        
+        TVShowRecommendationSystem.TVShow tvShow = backend.find(tvShowId);
+        if (tvShow == null || !backend.rate(user, tvShow, score, comment)) {
+            throw new HttpError(404, "找不到该电视剧: " + tvShowId);
+        }
+        sendJson(exchange, 201, writer -> writeDetails(writer, tvShow));
+    }
+    
+    /**
+     * GET /api/recommendations?preferences=
+     */
+    private void recommend(HttpExchange exchange) throws IOException, HttpError {
+        requirePath(exchange, "/api/recommendations");
+        requireMethod(exchange, "GET");
+        TVShowRecommendationSystem.User user = authenticate(exchange);
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String preferences = query.containsKey("preferences") ? query.get("preferences") : user.getPreferences();
+        List<TVShowRecommendationSystem.TVShow> results = backend.recommend(user, preferences);
+        sendJson(exchange, 200, writer -> writeList(writer, results));
+    }
+    
+    /**
+     * 上下文按前缀匹配，这里要求路径完全一致
+     */
+    private static void requirePath(HttpExchange exchange, String path) throws HttpError {
+        if (!exchange.getRequestURI().getPath().equals(path)) {
+            throw new HttpError(404, "未知的路径: " + exchange.getRequestURI().getPath());
+        }
+    }
+    
+    private static void requireMethod(HttpExchange exchange, String method) throws HttpError {
+        if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new HttpError(405, "不支持的请求方法: " + exchange.getRequestMethod());
+        }
+    }
+    
+    /**
+     * HTTP Basic认证
+     */
+    private TVShowRecommendationSystem.User authenticate(HttpExchange exchange) throws HttpError {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header != null && header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            try {
+                String credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()),
+                        StandardCharsets.UTF_8);
+                int colon = credentials.indexOf(':');
+                if (colon > 0) {
+                    TVShowRecommendationSystem.User user = backend.authenticate(credentials.substring(0, colon),
+                            credentials.substring(colon + 1));
+                    if (user != null) {
+                        return user;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // Base64格式错误按认证失败处理
+            }
+        }
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"tvshow\", charset=\"UTF-8\"");
+        throw new HttpError(401, "用户名或密码错误");
+    }
+    
+    private static int parseLimit(String value) throws HttpError {
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit > 0) {
+                return Math.min(limit, MAX_LIMIT);
+            }
+        } catch (NumberFormatException e) {
+            // 下面统一报错
+        }
+        throw new HttpError(400, "无效的limit参数: " + value);
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException, HttpError {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_BODY_BYTES) {
+                    throw new HttpError(413, "请求体过大");
+                }
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 解析URL查询字符串或表单请求体（application/x-www-form-urlencoded）
+     */
+    static Map<String, String> parseQuery(String query) throws HttpError {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                params.putIfAbsent(name, value);
+            } catch (IllegalArgumentException e) {
+                throw new HttpError(400, "参数编码错误: " + pair);
+            }
+        }
+        return params;
+    }
+    
+    private void writeSummary(JsonWriter writer, TVShowRecommendationSystem.TVShow tvShow) throws IOException {
+        RatingAggregate statistics = tvShow.getRatingStatistics();
+        writer.name("id").value(tvShow.getId());
+        writer.name("title").value(tvShow.getTitle());
+        writer.name("genre").value(tvShow.getGenre());
+        writer.name("year").value(tvShow.getYear());
+        writer.name("rating").value(statistics.getMean());
+        writer.name("ratingCount").value(statistics.getCount());
+        writer.name("viewCount").value(backend.viewCountOf(tvShow));
+    }
+    
+    private void writeList(JsonWriter writer, List<TVShowRecommendationSystem.TVShow> tvShows) throws IOException {
+        writer.beginArray();
+        for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+            writer.beginObject();
+            writeSummary(writer, tvShow);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+    
+    private void writeDetails(JsonWriter writer, TVShowRecommendationSystem.TVShow tvShow) throws IOException {
+        RatingAggregate statistics = tvShow.getRatingStatistics();
+        writer.beginObject();
+        writeSummary(writer, tvShow);
+        writer.name("director").value(tvShow.getDirector());
+        writer.name("actors").beginArray();
+        for (String actor : tvShow.getActors()) {
+            writer.value(actor);
+        }
+        writer.endArray();
+        writer.name("description").value(tvShow.getDescription());
+        writer.name("ratingStdDev").value(statistics.getStandardDeviation());
+        writer.name("ratingDistribution").beginObject();
+        for (int stars = RatingAggregate.MIN_STARS; stars <= RatingAggregate.MAX_STARS; stars++) {
+            writer.name(String.valueOf(stars)).value(statistics.getHistogramCount(stars));
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+    
+    private static void sendJson(HttpExchange exchange, int status, Body body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        body.write(writer);
+        writer.flush();
+        send(exchange, status, out.toByteArray());
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, writer -> {
+            writer.beginObject();
+            writer.name("error").value(message);
+            writer.endObject();
+        });
+    }
+    
+    private static void send(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
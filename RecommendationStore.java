@@ -0,0 +1,141 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预先计算的推荐结果
+ * 由批处理任务为所有用户计算并写入文件，登录后直接读取，推荐的耗时与模型复杂度无关。
+ * 每条结果记录计算时用户数据的指纹（喜好、评分数量、最近评分时间）和生成时间，
+ * 指纹不一致或超过有效期时视为过期，由调用方重新计算
+ *
+ * 文件格式（每行一个用户）：用户名|指纹|生成时间毫秒数|电视剧ID,电视剧ID,...
+ */
+class RecommendationStore {
+    /**
+     * 一个用户的推荐结果
+     */
+    static class Entry {
+        final String username;
+        final String fingerprint;
+        final long generatedAt;
+        final List<String> tvShowIds;
+        
+        Entry(String username, String fingerprint, long generatedAt, List<String> tvShowIds) {
+            this.username = username;
+            this.fingerprint = fingerprint;
+            this.generatedAt = generatedAt;
+            this.tvShowIds = Collections.unmodifiableList(new ArrayList<>(tvShowIds));
+        }
+        
+        public long getGeneratedAt() { return generatedAt; }
+        public List<String> getTvShowIds() { return tvShowIds; }
+    }
+    
+    private final String fileName;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    /**
+     * 构造函数
+     * @param fileName 结果文件
+     * @param ttlMillis 结果有效期（毫秒）
+     */
+    public RecommendationStore(String fileName, long ttlMillis) {
+        this.fileName = fileName;
+        this.ttlMillis = ttlMillis;
+    }
+    
+    /**
+     * 计算用户数据的指纹
+     * @param preferences 用户喜好
+     * @param ratings 用户当前的评分
+     */
+    static String fingerprint(String preferences, List<TVShowRecommendationSystem.Rating> ratings) {
+        long latest = 0;
+        for (TVShowRecommendationSystem.Rating rating : ratings) {
+            latest = Math.max(latest, rating.getTimestampMillis());
+        }
+        String normalized = preferences == null ? "" : RecommendationCache.normalize(preferences);
+        return Integer.toHexString(normalized.hashCode()) + ":" + ratings.size() + ":" + latest;
+    }
+    
+    /**
+     * 查找仍然有效的推荐结果
+     * @param fingerprint 用户当前数据的指纹
+     * @return 指纹一致且未过期的结果，否则返回null
+     */
+    public Entry getFresh(String username, String fingerprint) {
+        Entry entry = entries.get(username);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)
+                || System.currentTimeMillis() - entry.generatedAt > ttlMillis) {
+            return null;
+        }
+        return entry;
+    }
+    
+    public void put(Entry entry) {
+        entries.put(entry.username, entry);
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * 从文件加载（文件不存在时忽略，格式不正确的行跳过）
+     * @return 加载的条目数
+     */
+    public int load() {
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            return 0;
+        }
+        int loaded = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\|");
+                if (parts.length < 3) {
+                    continue;
+                }
+                try {
+                    long generatedAt = Long.parseLong(parts[2]);
+                    List<String> ids = parts.length > 3 && !parts[3].isEmpty()
+                            ? Arrays.asList(parts[3].split(","))
+                            : Collections.emptyList();
+                    put(new Entry(parts[0], parts[1], generatedAt, ids));
+                    loaded++;
+                } catch (NumberFormatException e) {
+                    // 跳过格式不正确的行
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("读取预计算推荐失败: " + e.getMessage());
+        }
+        return loaded;
+    }
+    
+    /**
+     * 写入文件（先写临时文件再原子替换）
+     */
+    public void save() throws IOException {
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        snapshot.sort(Comparator.comparing(entry -> entry.username));
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, Charset.defaultCharset())) {
+            for (Entry entry : snapshot) {
+                writer.write(entry.username + "|" + entry.fingerprint + "|" + entry.generatedAt + "|"
+                        + String.join(",", entry.tvShowIds));
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.*;
+
+/**
+ * 电视剧全文检索的倒排索引
+ * 对标题、类型、导演、演员、剧情描述分字段建立倒排表，中文按单字和相邻两字（bigram）切分，
+ * 其他文字按单词切分并转为小写，查询时非中文的词同时匹配以它开头的词（前缀匹配的得分打折）；
+ * 查询结果按BM25打分排序，字段权重不同。
+ * 电视剧新增、修改、删除时增量更新
+ */
+class SearchIndex {
+    /**
+     * 可检索的字段及其权重
+     */
+    enum Field {
+        TITLE(3.0), GENRE(2.0), DIRECTOR(2.0), ACTORS(2.0), DESCRIPTION(1.0);
+        
+        final double weight;
+        
+        Field(double weight) {
+            this.weight = weight;
+        }
+        
+        String valueOf(TVShowRecommendationSystem.TVShow tvShow) {
+            switch (this) {
+                case TITLE: return tvShow.getTitle();
+                case GENRE: return tvShow.getGenre();
+                case DIRECTOR: return tvShow.getDirector();
+                case ACTORS: return String.join(",", tvShow.getActors());
+                default: return tvShow.getDescription();
+            }
+        }
+    }
+    
+    // BM25参数
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // 只是前缀相同（不是整词匹配）时得分的折扣
+    private static final double PREFIX_MATCH_WEIGHT = 0.5;
+    
+    private static final Field[] FIELDS = Field.values();
+    
+    // 每个字段：词 -> (文档号 -> 词频)，按词排序以便前缀查找
+    private final List<NavigableMap<String, Map<Integer, Integer>>> postings = new ArrayList<>();
+    // 每个字段的文档长度总和（用于计算平均长度）
+    private final long[] totalLengths = new long[FIELDS.length];
+    // 文档号 -> 各字段的词频表（删除时据此清理倒排表）
+    private final Map<Integer, List<Map<String, Integer>>> forward = new HashMap<>();
+    // 文档号 -> 各字段的长度（词数）
+    private final Map<Integer, int[]> fieldLengths = new HashMap<>();
+    // 文档号 <-> 电视剧
+    private final Map<Integer, TVShowRecommendationSystem.TVShow> documents = new HashMap<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private int nextDocId = 0;
+    
+    public SearchIndex() {
+        for (int i = 0; i < FIELDS.length; i++) {
+            postings.add(new TreeMap<>());
+        }
+    }
+    
+    /**
+     * 添加电视剧到索引
+     */
+    public void add(TVShowRecommendationSystem.TVShow tvShow) {
+        remove(tvShow.getId());
+        int docId = nextDocId++;
+        docIds.put(tvShow.getId(), docId);
+        documents.put(docId, tvShow);
+        
+        List<Map<String, Integer>> termFrequencies = new ArrayList<>(FIELDS.length);
+        int[] lengths = new int[FIELDS.length];
+        for (Field field : FIELDS) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            List<String> tokens = tokenize(field.valueOf(tvShow), false);
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            Map<String, Map<Integer, Integer>> fieldPostings = postings.get(field.ordinal());
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                fieldPostings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(docId, entry.getValue());
+            }
+            totalLengths[field.ordinal()] += tokens.size();
+            lengths[field.ordinal()] = tokens.size();
+            termFrequencies.add(frequencies);
+        }
+        forward.put(docId, termFrequencies);
+        fieldLengths.put(docId, lengths);
+    }
+    
+    /**
+     * 电视剧信息修改后重新索引
+     */
+    public void update(TVShowRecommendationSystem.TVShow tvShow) {
+        add(tvShow);
+    }
+    
+    /**
+     * 从索引中删除电视剧
+     */
+    public void remove(String tvShowId) {
+        Integer docId = docIds.remove(tvShowId);
+        if (docId == null) {
+            return;
+        }
+        documents.remove(docId);
+        List<Map<String, Integer>> termFrequencies = forward.remove(docId);
+        int[] lengths = fieldLengths.remove(docId);
+        for (Field field : FIELDS) {
+            Map<String, Map<Integer, Integer>> fieldPostings = postings.get(field.ordinal());
+            for (String term : termFrequencies.get(field.ordinal()).keySet()) {
+                Map<Integer, Integer> list = fieldPostings.get(term);
+                list.remove(docId);
+                if (list.isEmpty()) {
+                    fieldPostings.remove(term);
+                }
+            }
+            totalLengths[field.ordinal()] -= lengths[field.ordinal()];
+        }
+    }
+    
+    /**
+     * 按给定电视剧重建索引
+     */
+    public void rebuild(Collection<TVShowRecommendationSystem.TVShow> tvShows) {
+        for (Map<String, Map<Integer, Integer>> fieldPostings : postings) {
+            fieldPostings.clear();
+        }
+        Arrays.fill(totalLengths, 0);
+        forward.clear();
+        fieldLengths.clear();
+        documents.clear();
+        docIds.clear();
+        nextDocId = 0;
+        for (TVShowRecommendationSystem.TVShow tvShow : tvShows) {
+            add(tvShow);
+        }
+    }
+    
+    /**
+     * 检索电视剧
+     * @param query 查询文本
+     * @param fields 检索的字段
+     * @param requireAll 是否要求包含所有查询词（否则包含任一即可）
+     * @return 按相关度从高到低排列的结果
+     */
+    public List<TVShowRecommendationSystem.TVShow> search(String query, EnumSet<Field> fields, boolean requireAll) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query, true));
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        int documentCount = documents.size();
+        Map<Integer, Double> scores = new HashMap<>();
+        Map<Integer, Integer> matchedTerms = new HashMap<>();
+        for (String term : terms) {
+            // 文档号 -> 该查询词在各字段的得分之和
+            Map<Integer, Double> termScores = new HashMap<>();
+            for (Field field : fields) {
+                double averageLength = documentCount == 0 ? 1 : (double) totalLengths[field.ordinal()] / documentCount;
+                // 同一字段内多个词都以查询词开头时，只取得分最高的一个
+                Map<Integer, Double> fieldScores = new HashMap<>();
+                for (Map.Entry<String, Map<Integer, Integer>> posting : expand(postings.get(field.ordinal()), term)) {
+                    Map<Integer, Integer> list = posting.getValue();
+                    double weight = posting.getKey().equals(term) ? field.weight : field.weight * PREFIX_MATCH_WEIGHT;
+                    double idf = Math.log(1 + (documentCount - list.size() + 0.5) / (list.size() + 0.5));
+                    for (Map.Entry<Integer, Integer> entry : list.entrySet()) {
+                        int docId = entry.getKey();
+                        int tf = entry.getValue();
+                        double length = fieldLengths.get(docId)[field.ordinal()];
+                        double norm = tf + K1 * (1 - B + B * length / Math.max(averageLength, 1e-9));
+                        fieldScores.merge(docId, weight * idf * tf * (K1 + 1) / norm, Math::max);
+                    }
+                }
+                for (Map.Entry<Integer, Double> entry : fieldScores.entrySet()) {
+                    termScores.merge(entry.getKey(), entry.getValue(), Double::sum);
+                }
+            }
+            for (Map.Entry<Integer, Double> entry : termScores.entrySet()) {
+                scores.merge(entry.getKey(), entry.getValue(), Double::sum);
+                matchedTerms.merge(entry.getKey(), 1, Integer::sum);
+            }
+        }
+        
+        List<Integer> ranked = new ArrayList<>();
+        for (Integer docId : scores.keySet()) {
+            if (!requireAll || matchedTerms.get(docId) == terms.size()) {
+                ranked.add(docId);
+            }
+        }
+        // 分数相同时按加入索引的先后排列
+        ranked.sort((a, b) -> {
+            int byScore = Double.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : Integer.compare(a, b);
+        });
+        
+        List<TVShowRecommendationSystem.TVShow> results = new ArrayList<>(ranked.size());
+        for (Integer docId : ranked) {
+            results.add(documents.get(docId));
+        }
+        return results;
+    }
+    
+    /**
+     * 查询词在字段中匹配的倒排表：中文词只做整词匹配，其他词匹配以它开头的所有词（含它本身）
+     */
+    private static Set<Map.Entry<String, Map<Integer, Integer>>> expand(
+            NavigableMap<String, Map<Integer, Integer>> fieldPostings, String term) {
+        if (isCjk(term.codePointAt(0))) {
+            Map<Integer, Integer> list = fieldPostings.get(term);
+            return list == null ? Collections.emptySet()
+                    : Collections.singleton(new AbstractMap.SimpleImmutableEntry<>(term, list));
+        }
+        return fieldPostings.subMap(term, true, term + Character.MAX_VALUE, false).entrySet();
+    }
+    
+    /**
+     * 切分文本
+     * 中文连续字符生成相邻两字的bigram；建索引时另外生成单字，
+     * 查询时只有单个汉字才使用单字，以保证多字查询的精确度
+     */
+    static List<String> tokenize(String text, boolean forQuery) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = lower.codePointAt(i);
+            if (isCjk(codePoint)) {
+                List<String> run = new ArrayList<>();
+                while (i < length && isCjk(lower.codePointAt(i))) {
+                    int cp = lower.codePointAt(i);
+                    run.add(new String(Character.toChars(cp)));
+                    i += Character.charCount(cp);
+                }
+                if (!forQuery || run.size() == 1) {
+                    tokens.addAll(run);
+                }
+                for (int j = 0; j + 1 < run.size(); j++) {
+                    tokens.add(run.get(j) + run.get(j + 1));
+                }
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length) {
+                    int cp = lower.codePointAt(i);
+                    if (!Character.isLetterOrDigit(cp) || isCjk(cp)) {
+                        break;
+                    }
+                    i += Character.charCount(cp);
+                }
+                tokens.add(lower.substring(start, i));
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+    
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
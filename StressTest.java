@@ -0,0 +1,275 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 数据层的并发压力测试
+ * 先新增一批临时电视剧，多个线程同时对其评分、观看、删除（每个线程使用自己的一组用户名），
+ * 结束后按各线程的操作记录串行重放，校验评分统计、评分索引的大小和观看次数与重放结果一致；
+ * 最后删除剩下的临时电视剧（连同其评分），电视剧和评分数据恢复原状。
+ * 用于验证数据层在多个会话并发时的正确性：写锁内的变更与日志顺序、并发观看计数、删除与评分的交错。
+ * 运行期间会写入变更日志和数据文件，建议在数据目录的副本中运行
+ *
+ * 用法：java TVShowRecommendationSystem --stress [线程数] [每个线程的操作数]
+ * 例如：java TVShowRecommendationSystem --stress 16 5000
+ */
+class StressTest {
+    static final int DEFAULT_THREADS = 8;
+    static final int DEFAULT_OPERATIONS_PER_THREAD = 2000;
+    // 每个线程使用的用户名数量
+    private static final int USERS_PER_THREAD = 8;
+    // 每个线程对应的临时电视剧数量，其中一半可能被删除
+    private static final int SHOWS_PER_THREAD = 2;
+    // 各操作的比例：评分、观看，其余为删除
+    private static final double RATE_FRACTION = 0.6;
+    private static final double VIEW_FRACTION = 0.399;
+    private static final String USERNAME_PREFIX = "stress-";
+    
+    /**
+     * 被测试的数据层操作（由主程序提供，与HTTP服务的Backend相同的方式）
+     */
+    interface Operations {
+        /**
+         * 新增一部临时电视剧
+         * @return 电视剧ID
+         */
+        String addShow(String title);
+        
+        /**
+         * @return 电视剧在提交前已被删除时返回false
+         */
+        boolean rate(String username, String tvShowId, double score);
+        
+        void view(String tvShowId);
+        
+        /**
+         * @return 电视剧已被删除时返回false
+         */
+        boolean delete(String tvShowId);
+        
+        /**
+         * 汇总尚未写入的观看次数，并等待派生数据结构更新完毕
+         */
+        void settle();
+        
+        /**
+         * @return 电视剧不存在时返回null
+         */
+        TVShowRecommendationSystem.TVShow find(String tvShowId);
+        
+        List<TVShowRecommendationSystem.Rating> ratingsOf(String tvShowId);
+        
+        List<TVShowRecommendationSystem.Rating> ratingsBy(String username);
+        
+        int ratingCount();
+        
+        int catalogSize();
+    }
+    
+    /**
+     * 一次操作及其结果
+     */
+    private static final class Operation {
+        final char type;          // R 评分，V 观看，D 删除
+        final String tvShowId;
+        final String username;
+        final double score;
+        final boolean succeeded;
+        
+        Operation(char type, String tvShowId, String username, double score, boolean succeeded) {
+            this.type = type;
+            this.tvShowId = tvShowId;
+            this.username = username;
+            this.score = score;
+            this.succeeded = succeeded;
+        }
+    }
+    
+    /**
+     * 运行压力测试并报告结果
+     * @return 校验通过时返回true
+     */
+    static boolean run(Operations operations, int threads, int operationsPerThread) throws Exception {
+        int baseRatings = operations.ratingCount();
+        int baseCatalog = operations.catalogSize();
+        List<String> tvShowIds = new ArrayList<>();
+        for (int i = 0; i < threads * SHOWS_PER_THREAD; i++) {
+            tvShowIds.add(operations.addShow("压力测试" + i));
+        }
+        // 后一半可以被删除
+        List<String> deletable = tvShowIds.subList(tvShowIds.size() / 2, tvShowIds.size());
+        System.out.println("线程数: " + threads + ", 每个线程的操作数: " + operationsPerThread
+                + ", 临时电视剧: " + tvShowIds.size());
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<List<Operation>>> futures = new ArrayList<>();
+        CountDownLatch ready = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                List<Operation> log = new ArrayList<>(operationsPerThread);
+                ready.await();
+                for (int i = 0; i < operationsPerThread; i++) {
+                    double choice = random.nextDouble();
+                    if (choice < RATE_FRACTION) {
+                        String tvShowId = tvShowIds.get(random.nextInt(tvShowIds.size()));
+                        String username = USERNAME_PREFIX + thread + "-" + random.nextInt(USERS_PER_THREAD);
+                        double score = RatingAggregate.MIN_STARS
+                                + random.nextInt(RatingAggregate.MAX_STARS - RatingAggregate.MIN_STARS + 1);
+                        boolean rated = operations.rate(username, tvShowId, score);
+                        log.add(new Operation('R', tvShowId, username, score, rated));
+                    } else if (choice < RATE_FRACTION + VIEW_FRACTION) {
+                        String tvShowId = tvShowIds.get(random.nextInt(tvShowIds.size()));
+                        operations.view(tvShowId);
+                        log.add(new Operation('V', tvShowId, null, 0, true));
+                    } else {
+                        String tvShowId = deletable.get(random.nextInt(deletable.size()));
+                        log.add(new Operation('D', tvShowId, null, 0, operations.delete(tvShowId)));
+                    }
+                }
+                return log;
+            }));
+        }
+        long start = System.nanoTime();
+        ready.countDown();
+        List<List<Operation>> logs = new ArrayList<>();
+        try {
+            for (Future<List<Operation>> future : futures) {
+                logs.add(future.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("操作数: %d, 耗时: %.2f 秒, 吞吐量: %.0f 次/秒",
+                threads * operationsPerThread, seconds, threads * operationsPerThread / seconds));
+        operations.settle();
+        
+        List<String> failures = verify(operations, tvShowIds, logs, baseRatings, baseCatalog);
+        
+        // 删除剩下的临时电视剧，评分随之级联删除
+        for (String tvShowId : tvShowIds) {
+            operations.delete(tvShowId);
+        }
+        operations.settle();
+        if (operations.ratingCount() != baseRatings || operations.catalogSize() != baseCatalog) {
+            failures.add("清理后评分数 " + operations.ratingCount() + "（应为 " + baseRatings + "），电视剧数 "
+                    + operations.catalogSize() + "（应为 " + baseCatalog + "）");
+        }
+        
+        for (String failure : failures) {
+            System.out.println("不一致: " + failure);
+        }
+        System.out.println(failures.isEmpty() ? "校验通过" : "校验失败，共 " + failures.size() + " 处不一致");
+        return failures.isEmpty();
+    }
+    
+    /**
+     * 串行重放各线程的操作记录，与数据层的实际状态比较
+     * 同一用户只由一个线程操作，同一(用户, 电视剧)的评分按该线程的顺序替换；
+     * 被删除的电视剧不论删除前后的操作，其评分和观看都不再存在
+     */
+    private static List<String> verify(Operations operations, List<String> tvShowIds, List<List<Operation>> logs,
+                                       int baseRatings, int baseCatalog) {
+        List<String> failures = new ArrayList<>();
+        Map<String, Integer> deletions = new HashMap<>();
+        for (List<Operation> log : logs) {
+            for (Operation operation : log) {
+                if (operation.type == 'D' && operation.succeeded) {
+                    deletions.merge(operation.tvShowId, 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : deletions.entrySet()) {
+            if (entry.getValue() > 1) {
+                failures.add(entry.getKey() + " 被删除了 " + entry.getValue() + " 次");
+            }
+        }
+        
+        // 重放：电视剧ID -> (用户名 -> 最后一次评分)，电视剧ID -> 观看次数
+        Map<String, Map<String, Double>> scores = new HashMap<>();
+        Map<String, Long> views = new HashMap<>();
+        for (List<Operation> log : logs) {
+            for (Operation operation : log) {
+                boolean deleted = deletions.containsKey(operation.tvShowId);
+                if (operation.type == 'R') {
+                    if (!operation.succeeded && !deleted) {
+                        failures.add(operation.tvShowId + " 未被删除，但评分提交失败");
+                    }
+                    if (operation.succeeded && !deleted) {
+                        scores.computeIfAbsent(operation.tvShowId, key -> new HashMap<>())
+                                .put(operation.username, operation.score);
+                    }
+                } else if (operation.type == 'V' && !deleted) {
+                    views.merge(operation.tvShowId, 1L, Long::sum);
+                }
+            }
+        }
+        
+        int expectedRatings = 0;
+        int surviving = 0;
+        Map<String, Integer> byUser = new HashMap<>();
+        for (String tvShowId : tvShowIds) {
+            TVShowRecommendationSystem.TVShow tvShow = operations.find(tvShowId);
+            int indexed = operations.ratingsOf(tvShowId).size();
+            if (deletions.containsKey(tvShowId)) {
+                if (tvShow != null || indexed != 0) {
+                    failures.add(tvShowId + " 已删除，但仍在目录中或仍有 " + indexed + " 条评分");
+                }
+                continue;
+            }
+            surviving++;
+            if (tvShow == null) {
+                failures.add(tvShowId + " 未被删除，但不在目录中");
+                continue;
+            }
+            Map<String, Double> expected = scores.getOrDefault(tvShowId, Collections.emptyMap());
+            RatingAggregate replayed = new RatingAggregate();
+            for (Map.Entry<String, Double> entry : expected.entrySet()) {
+                replayed.add(entry.getValue());
+                byUser.merge(entry.getKey(), 1, Integer::sum);
+            }
+            expectedRatings += expected.size();
+            compare(failures, tvShowId, tvShow.getRatingStatistics(), replayed);
+            if (indexed != expected.size()) {
+                failures.add(tvShowId + " 评分索引中有 " + indexed + " 条评分，重放结果为 " + expected.size());
+            }
+            long expectedViews = views.getOrDefault(tvShowId, 0L);
+            if (tvShow.getViewCount() != expectedViews) {
+                failures.add(tvShowId + " 观看次数 " + tvShow.getViewCount() + "，重放结果为 " + expectedViews);
+            }
+        }
+        for (int t = 0; t < logs.size(); t++) {
+            for (int u = 0; u < USERS_PER_THREAD; u++) {
+                String username = USERNAME_PREFIX + t + "-" + u;
+                int indexed = operations.ratingsBy(username).size();
+                int expected = byUser.getOrDefault(username, 0);
+                if (indexed != expected) {
+                    failures.add(username + " 评分索引中有 " + indexed + " 条评分，重放结果为 " + expected);
+                }
+            }
+        }
+        if (operations.ratingCount() != baseRatings + expectedRatings) {
+            failures.add("评分总数 " + operations.ratingCount() + "，重放结果为 " + (baseRatings + expectedRatings));
+        }
+        if (operations.catalogSize() != baseCatalog + surviving) {
+            failures.add("电视剧总数 " + operations.catalogSize() + "，重放结果为 " + (baseCatalog + surviving));
+        }
+        System.out.println("重放: 删除 " + deletions.size() + " 部，剩余 " + surviving + " 部共 " + expectedRatings
+                + " 条评分、" + views.values().stream().mapToLong(Long::longValue).sum() + " 次观看");
+        return failures;
+    }
+    
+    private static void compare(List<String> failures, String tvShowId, RatingAggregate actual, RatingAggregate expected) {
+        boolean same = actual.getCount() == expected.getCount()
+                && Math.abs(actual.getMean() - expected.getMean()) < 1e-9
+                && Math.abs(actual.getSumOfSquares() - expected.getSumOfSquares()) < 1e-6;
+        for (int stars = RatingAggregate.MIN_STARS; same && stars <= RatingAggregate.MAX_STARS; stars++) {
+            same = actual.getHistogramCount(stars) == expected.getHistogramCount(stars);
+        }
+        if (!same) {
+            failures.add(tvShowId + " 评分统计 " + actual.getCount() + " 条/均值 " + actual.getMean()
+                    + "，重放结果为 " + expected.getCount() + " 条/均值 " + expected.getMean());
+        }
+    }
+}
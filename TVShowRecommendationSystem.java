@@ -1,10 +1,23 @@
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 热播电视剧评价及推荐系统
@@ -15,18 +28,132 @@ public class TVShowRecommendationSystem {
     private static final String USERS_FILE = "users.txt";
     private static final String TV_SHOWS_FILE = "tv_shows.txt";
     private static final String RATINGS_FILE = "ratings.txt";
+    private static final String MUTATION_LOG_FILE = "mutations.log";
+    private static final String SNAPSHOT_FILE = "data.snapshot";
+    private static final String RECOMMENDATION_CACHE_FILE = "recommendation_cache.dat";
+    private static final String RECOMMENDATIONS_FILE = "recommendations.txt";
+    private static final String LATENT_FACTOR_MODEL_FILE = "latent_factors.bin";
+    private static final String VIEW_EVENTS_FILE = "view_events.log";
+    
+    // 变更日志累计多少条记录后压缩为快照文件
+    private static final int MUTATION_LOG_COMPACT_THRESHOLD = 10000;
     
     // DeepSeek API配置 - 请替换为实际的API密钥
     private static final String DEEPSEEK_API_KEY = ""; // 请替换为您的实际API密钥
     private static final String DEEPSEEK_API_URL = "https://api.deepseek.com/v1/chat/completions";
     
-    // 当前登录用户
-    private static User currentUser = null;
+    // 每个会话（线程）各自的登录状态
+    private static final ThreadLocal<Session> SESSION = ThreadLocal.withInitial(Session::new);
+    
+    // 数据集合（用户列表写少读多，使用写时复制列表）
+    private static List<User> users = new CopyOnWriteArrayList<>();
+    private static CatalogStore catalog = new CatalogStore();
+    private static RatingIndex ratingIndex = new RatingIndex();
+    
+    // 变更日志（评分、观看、电视剧修改只追加记录，不再整体重写数据文件）
+    private static MutationLog mutationLog = null;
+    // 内存中的电视剧、评分数据已包含的变更日志记录的最后序号（加载时来自快照或数据文件，重放日志后更新）
+    private static long tvShowsCheckpoint = 0;
+    private static long ratingsCheckpoint = 0;
+    // 文本数据文件首行记录检查点
+    private static final String CHECKPOINT_HEADER = "#checkpoint|";
+    
+    // 电视剧、评分及其索引的读写锁：查询持读锁，修改持写锁，多个会话可同时查询
+    private static final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+    // 派生数据结构各自的读写锁：订阅者在数据读锁内取写锁更新，查询时取读锁；加锁顺序为先数据锁后派生数据结构的锁
+    // 排行榜和趋势榜
+    private static final ReentrantReadWriteLock rankingLock = new ReentrantReadWriteLock();
+    // 检索索引和相似电视剧表
+    private static final ReentrantReadWriteLock contentLock = new ReentrantReadWriteLock();
+    // 隐因子模型的检索索引
+    private static final ReentrantReadWriteLock latentFactorLock = new ReentrantReadWriteLock();
+    
+    // 高分榜的最少评分人数
+    private static final int MIN_RATING_COUNT_FOR_RANKING = 3;
+    
+    // 增量维护的排行榜：热播榜（观看次数）、高分榜（平均评分）、热评榜（评分人数）
+    private static Leaderboard viewCountBoard = new Leaderboard("热播榜", TVShow::getViewCount, tvShow -> true);
+    private static Leaderboard averageRatingBoard = new Leaderboard("高分榜", TVShow::getRating,
+            tvShow -> tvShow.getRatingCount() >= MIN_RATING_COUNT_FOR_RANKING);
+    private static Leaderboard ratingCountBoard = new Leaderboard("热评榜", TVShow::getRatingCount, tvShow -> true);
+    // 按时间衰减的观看和评分热度（趋势榜），由评分时间戳和观看事件记录计算
+    private static final TrendingCounters trending = new TrendingCounters(System.currentTimeMillis());
+    
+    // 观看次数：先在分段计数器中累加，定期或累计一定次数后汇总写入电视剧、排行榜和变更日志
+    private static final long VIEW_FLUSH_THRESHOLD = 1000;
+    private static final long VIEW_FLUSH_INTERVAL_MS = 5000;
+    private static final ViewCounter viewCounter = new ViewCounter(VIEW_FLUSH_THRESHOLD, VIEW_FLUSH_INTERVAL_MS,
+            TVShowRecommendationSystem::applyViews);
+    
+    // 电视剧全文检索索引
+    private static SearchIndex searchIndex = new SearchIndex();
+    // 基于类型、导演、演员的相似电视剧表（与检索索引同由contentLock保护）
+    private static final ContentSimilarity contentSimilarity = new ContentSimilarity();
+    // 详情页显示的相似电视剧数量
+    private static final int SIMILAR_SHOWS_DISPLAYED = 5;
     
-    // 数据集合
-    private static List<User> users = new ArrayList<>();
-    private static List<TVShow> tvShows = new ArrayList<>();
-    private static List<Rating> ratings = new ArrayList<>();
+    // 本地协同过滤推荐模型，评分数据版本变化后在下次推荐时重新构建
+    private static ItemCFRecommender itemCF = new ItemCFRecommender();
+    private static volatile long ratingsVersion = 0;
+    // 推荐模型在后台线程上重新构建，期间推荐继续使用旧模型；协同过滤模型两次重建之间至少间隔10秒
+    private static final ExecutorService modelBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final long ITEM_CF_REBUILD_INTERVAL_MS = 10_000;
+    private static final AtomicBoolean itemCFRebuildQueued = new AtomicBoolean(false);
+    private static final AtomicBoolean latentFactorsTrainQueued = new AtomicBoolean(false);
+    private static volatile long itemCFRebuiltAt = 0;
+    // 隐因子模型：用户的新评分在推荐时直接折叠进用户因子，评分累计变化较多后才重新训练
+    private static final MatrixFactorization latentFactors =
+            new MatrixFactorization(MatrixFactorization.Config.fromSystemProperties());
+    private static final int LATENT_FACTOR_RETRAIN_CHANGES = 1000;
+    // 离线评估的测试集比例和precision@K的K
+    private static final double EVALUATION_TEST_FRACTION = 0.2;
+    private static final int EVALUATION_K = 10;
+    // 数据变更事件总线：写路径只更新目录、评分索引和评分统计并写日志，
+    // 排行榜、趋势榜、检索索引、相似电视剧表、隐因子检索索引由各自的订阅者线程成批更新
+    private static final int EVENT_BUS_CAPACITY = 16384;
+    private static final int EVENT_BATCH_SIZE = 256;
+    // 等待订阅者处理完已发布事件的最长时间（秒）
+    private static final int EVENT_DRAIN_SECONDS = 5;
+    private static final EventBus<DataEvent> eventBus = new EventBus<>(EVENT_BUS_CAPACITY, EVENT_BATCH_SIZE);
+    // 当前线程在写锁内产生、尚未发布的事件
+    private static final ThreadLocal<List<DataEvent>> PENDING_EVENTS = ThreadLocal.withInitial(ArrayList::new);
+    // 每次推荐的电视剧数量
+    private static final int RECOMMENDATION_COUNT = 5;
+    // HTTP服务模式的默认端口，以及退出时等待进行中请求的最长时间（秒）
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int SERVER_STOP_SECONDS = 5;
+    private static volatile RecommendationServer httpServer = null;
+    // 退出时等待排队中的文件保存的最长时间（秒）
+    private static final int SHUTDOWN_IO_SECONDS = 10;
+    // 各数据文件是否已有保存任务在排队（合并连续的保存请求）
+    private static final AtomicBoolean usersSaveQueued = new AtomicBoolean(false);
+    private static final AtomicBoolean tvShowsSaveQueued = new AtomicBoolean(false);
+    private static final AtomicBoolean ratingsSaveQueued = new AtomicBoolean(false);
+    private static final AtomicBoolean latentFactorsSaveQueued = new AtomicBoolean(false);
+    private static final AtomicBoolean recommendationCacheSaveQueued = new AtomicBoolean(false);
+    private static final Object FILE_WRITE_LOCK = new Object();
+    // 发送给DeepSeek的候选电视剧数量，以及提示中最多列出的用户评分记录数
+    private static final int CANDIDATE_COUNT = 15;
+    private static final int PROMPT_HISTORY_LIMIT = 10;
+    // 倒数排名融合的平滑常数
+    private static final int RRF_K = 60;
+    // 等待DeepSeek推荐的最长时间（秒），超时后显示本地推荐结果
+    private static final int DEEPSEEK_DEADLINE_SECONDS = 20;
+    
+    // DeepSeek推荐结果缓存：最多256条，有效期24小时
+    private static RecommendationCache recommendationCache =
+            new RecommendationCache(256, 24L * 60 * 60 * 1000, RECOMMENDATION_CACHE_FILE);
+    
+    // DeepSeek异步客户端
+    private static DeepSeekClient deepSeekClient = null;
+    
+    // 批处理预先计算的推荐结果，有效期24小时
+    private static RecommendationStore precomputedRecommendations =
+            new RecommendationStore(RECOMMENDATIONS_FILE, 24L * 60 * 60 * 1000);
     
     // 密码输入时的掩码字符
     private static final char MASK_CHAR = '*';
@@ -38,7 +165,7 @@ public class TVShowRecommendationSystem {
         private String username;    // 用户名
         private String password;    // 密码
         private String role;        // 角色：admin 或 user
-        private String preferences; // 用户喜好
+        private volatile String preferences; // 用户喜好
         
         /**
          * 构造函数
@@ -71,20 +198,33 @@ public class TVShowRecommendationSystem {
         public void setPreferences(String preferences) { this.preferences = preferences; }
     }
     
+    /**
+     * 会话上下文（替代全局的当前用户，每个会话线程各有一个）
+     */
+    static class Session {
+        private User user; // 当前登录用户
+        
+        public User getUser() { return user; }
+        public void setUser(User user) { this.user = user; }
+    }
+    
     /**
      * 电视剧类
+     * 评分统计的读改写在对象锁内进行，观看次数用原子操作累加，可被多个会话并发更新
      */
     static class TVShow {
+        private static final AtomicIntegerFieldUpdater<TVShow> VIEW_COUNT =
+                AtomicIntegerFieldUpdater.newUpdater(TVShow.class, "viewCount");
+        
         private String id;              // 电视剧ID
-        private String title;           // 标题
-        private String genre;           // 类型
-        private int year;               // 上映年份
-        private String director;        // 导演
-        private List<String> actors;     // 演员列表
-        private String description;     // 描述
-        private double rating;          // 平均评分
-        private int ratingCount;        // 评分人数
-        private int viewCount;          // 观看次数
+        private volatile String title;           // 标题
+        private volatile String genre;           // 类型
+        private volatile int year;               // 上映年份
+        private volatile String director;        // 导演
+        private volatile List<String> actors;     // 演员列表
+        private volatile String description;     // 描述
+        private RatingAggregate ratingStatistics = new RatingAggregate(); // 评分统计
+        private volatile int viewCount;          // 观看次数
         
         /**
          * 构造函数
@@ -98,8 +238,6 @@ public class TVShowRecommendationSystem {
             this.director = director;
             this.actors = actors;
             this.description = description;
-            this.rating = 0.0;
-            this.ratingCount = 0;
             this.viewCount = 0;
         }
         
@@ -111,8 +249,8 @@ public class TVShowRecommendationSystem {
         public String getDirector() { return director; }
         public List<String> getActors() { return actors; }
         public String getDescription() { return description; }
-        public double getRating() { return rating; }
-        public int getRatingCount() { return ratingCount; }
+        public synchronized double getRating() { return ratingStatistics.getMean(); }
+        public synchronized int getRatingCount() { return (int) ratingStatistics.getCount(); }
         public int getViewCount() { return viewCount; }
         
         public void setTitle(String title) { this.title = title; }
@@ -123,18 +261,69 @@ public class TVShowRecommendationSystem {
         public void setDescription(String description) { this.description = description; }
         
         /**
-         * 更新评分
+         * 评分统计的副本
+         */
+        public synchronized RatingAggregate getRatingStatistics() { return ratingStatistics.copy(); }
+        
+        /**
+         * 恢复评分和观看统计（从快照加载时使用）
+         * @param sumOfSquares 评分平方和，旧格式数据中没有时为NaN
+         */
+        synchronized void restoreStatistics(double rating, int ratingCount, double sumOfSquares, int viewCount) {
+            this.ratingStatistics = RatingAggregate.restore(rating, ratingCount, sumOfSquares);
+            this.viewCount = viewCount;
+        }
+        
+        /**
+         * 用由评分记录重新统计的结果恢复评分分布（分布不保存在数据文件中）
          */
-        public void updateRating(double newRating) {
-            this.rating = (this.rating * this.ratingCount + newRating) / (this.ratingCount + 1);
-            this.ratingCount++;
+        synchronized void restoreRatingHistogram(RatingAggregate rebuilt) {
+            ratingStatistics.restoreHistogram(rebuilt);
+        }
+        
+        /**
+         * 沿用另一个对象（同一部电视剧修改前）的评分统计
+         */
+        void copyRatingStatistics(TVShow previous) {
+            RatingAggregate copy = previous.getRatingStatistics();
+            synchronized (this) {
+                this.ratingStatistics = copy;
+            }
+        }
+        
+        /**
+         * 新增一条评分
+         */
+        public synchronized void addRating(double score) {
+            ratingStatistics.add(score);
+        }
+        
+        /**
+         * 用户修改评分：旧评分替换为新评分，评分人数不变
+         */
+        public synchronized void replaceRating(double oldScore, double newScore) {
+            ratingStatistics.replace(oldScore, newScore);
+        }
+        
+        /**
+         * 删除一条评分
+         */
+        public synchronized void removeRating(double score) {
+            ratingStatistics.remove(score);
         }
         
         /**
          * 增加观看次数
          */
         public void incrementViewCount() {
-            this.viewCount++;
+            VIEW_COUNT.incrementAndGet(this);
+        }
+        
+        /**
+         * 增加若干观看次数（汇总分段计数器时使用）
+         */
+        public void addViewCount(int delta) {
+            VIEW_COUNT.addAndGet(this, delta);
         }
         
         /**
@@ -142,48 +331,133 @@ public class TVShowRecommendationSystem {
          */
         public String toRecommendationString() {
             return String.format("ID: %s, 标题: %s, 类型: %s, 年份: %d, 导演: %s, 演员: %s, 评分: %.1f",
-                    id, title, genre, year, director, String.join(",", actors), rating);
+                    id, title, genre, year, director, String.join(",", actors), getRating());
         }
     }
     
     /**
      * 评分评价类
+     * 新建的评分自己保存各字段；从评分索引读取的评分是列式存储中某一行的轻量视图
      */
     static class Rating {
+        // 列式存储及行号（视图时使用）
+        private final RatingColumns columns;
+        private final int row;
+        
         private String id;              // 评分ID
         private String tvShowId;        // 电视剧ID
         private String username;        // 用户名
         private double score;           // 评分（1-5）
         private String comment;         // 评论
-        private String timestamp;       // 时间戳
+        private long timestampMillis;   // 时间戳（毫秒）
+        private String rawTimestamp;    // 无法解析的原始时间戳
         
         /**
-         * 构造函数
+         * 构造函数（时间戳为当前时间）
          */
         public Rating(String id, String tvShowId, String username, double score, String comment) {
+            this(id, tvShowId, username, score, comment, RatingColumns.now(), null);
+        }
+        
+        /**
+         * 构造函数（使用已解析的时间戳，加载数据时不必取当前时间）
+         * @param rawTimestamp 时间戳无法解析时的原始字符串
+         */
+        Rating(String id, String tvShowId, String username, double score, String comment,
+               long timestampMillis, String rawTimestamp) {
+            this.columns = null;
+            this.row = -1;
             this.id = id;
             this.tvShowId = tvShowId;
             this.username = username;
             this.score = score;
             this.comment = comment;
-            this.timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            this.timestampMillis = timestampMillis;
+            this.rawTimestamp = rawTimestamp;
+        }
+        
+        /**
+         * 列式存储中某一行的视图
+         */
+        Rating(RatingColumns columns, int row) {
+            this.columns = columns;
+            this.row = row;
         }
         
         // Getter方法
-        public String getId() { return id; }
-        public String getTvShowId() { return tvShowId; }
-        public String getUsername() { return username; }
-        public double getScore() { return score; }
-        public String getComment() { return comment; }
-        public String getTimestamp() { return timestamp; }
+        public String getId() { return columns != null ? columns.id(row) : id; }
+        public String getTvShowId() { return columns != null ? columns.tvShowId(row) : tvShowId; }
+        public String getUsername() { return columns != null ? columns.username(row) : username; }
+        public double getScore() { return columns != null ? columns.score(row) : score; }
+        public String getComment() { return columns != null ? columns.comment(row) : comment; }
+        public long getTimestampMillis() { return columns != null ? columns.timestampMillis(row) : timestampMillis; }
+        
+        public String getTimestamp() {
+            if (columns != null) {
+                return columns.timestamp(row);
+            }
+            return RatingColumns.isRegularTimestamp(timestampMillis)
+                    ? RatingColumns.formatTimestamp(timestampMillis) : rawTimestamp;
+        }
+        
+        int getRow() { return row; }
+    }
+    
+    /**
+     * 数据变更事件：修改操作在写锁内产生，经事件总线按修改顺序发给各派生数据结构
+     */
+    static class DataEvent {
+        enum Type {
+            SHOW_ADDED,     // 新增电视剧
+            SHOW_UPDATED,   // 修改电视剧信息
+            SHOW_REMOVED,   // 删除电视剧（tvShow为null）
+            RATED,          // 新增或替换评分（评分统计已更新）
+            VIEWED          // 汇总的观看次数（观看次数已更新）
+        }
+        
+        final long sequence;     // 事件总线序号
+        final Type type;
+        final String tvShowId;
+        final TVShow tvShow;
+        final long timeMillis;   // 评分时刻或观看汇总时刻（纪元毫秒数）
+        final int views;         // 观看次数增量
+        
+        DataEvent(long sequence, Type type, String tvShowId, TVShow tvShow, long timeMillis, int views) {
+            this.sequence = sequence;
+            this.type = type;
+            this.tvShowId = tvShowId;
+            this.tvShow = tvShow;
+            this.timeMillis = timeMillis;
+            this.views = views;
+        }
     }
     
     /**
      * 主方法
      */
     public static void main(String[] args) {
-        // 加载数据
+        // --batch 为所有用户预先计算推荐；
+        // 数据格式转换：--to-binary 把文本数据文件转换为二进制快照，--to-text 反向转换
+        // --verify-ratings 由评分记录重新统计并校验各电视剧的评分统计
+        // --train-factors 训练隐因子模型并保存检查点，--evaluate-factors 离线评估隐因子模型
+        // --server [端口] 以HTTP服务模式运行
+        // --stress [线程数] [每个线程的操作数] 数据层的并发压力测试
+        if (args.length > 0) {
+            if (args[0].equals("--batch")) {
+                precomputeRecommendations();
+            } else if (args[0].equals("--server")) {
+                startServer(args.length > 1 ? args[1] : String.valueOf(DEFAULT_SERVER_PORT));
+            } else if (args[0].equals("--stress")) {
+                runStressTest(args);
+            } else {
+                convertData(args[0]);
+            }
+            return;
+        }
+        
+        // 加载数据，在后台开始构建推荐模型
         loadData();
+        refreshModels();
         
         // 显示欢迎信息
         System.out.println("=====================================");
@@ -192,10 +466,10 @@ public class TVShowRecommendationSystem {
         
         // 主菜单循环
         while (true) {
-            if (currentUser == null) {
+            if (currentUser() == null) {
                 showLoginMenu();
             } else {
-                if (currentUser.getRole().equals("admin")) {
+                if (currentUser().getRole().equals("admin")) {
                     showAdminMenu();
                 } else {
                     // 普通用户登录后先显示推荐入口菜单
@@ -205,11 +479,271 @@ public class TVShowRecommendationSystem {
         }
     }
     
+    /**
+     * 当前线程的会话
+     */
+    private static Session session() {
+        return SESSION.get();
+    }
+    
+    /**
+     * 当前会话的登录用户，未登录时返回null
+     */
+    private static User currentUser() {
+        return session().getUser();
+    }
+    
+    /**
+     * 在读锁内查询数据
+     */
+    private static <T> T readData(Supplier<T> query) {
+        dataLock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 在写锁内修改数据，并把返回的记录追加到变更日志
+     * 记录在写锁内入队，保证日志顺序与修改顺序一致；等待落盘在释放写锁之后，
+     * 使其他会话的修改可以并入同一次组提交
+     * @param mutation 修改操作，返回变更日志记录，无需记录时返回null
+     */
+    private static void mutate(Supplier<String[]> mutation) {
+        mutateAll(() -> {
+            String[] record = mutation.get();
+            return record == null ? Collections.emptyList() : Collections.singletonList(record);
+        });
+    }
+    
+    /**
+     * 在写锁内修改数据，返回的多条记录一起追加到变更日志，只等待一次落盘
+     * 修改期间产生的事件在释放写锁后发布（缓冲区满时的等待不占写锁）
+     * @param mutation 修改操作，返回变更日志记录（可以为空）
+     */
+    private static void mutateAll(Supplier<List<String[]>> mutation) {
+        List<String[]> records;
+        long seq = -1;
+        dataLock.writeLock().lock();
+        try {
+            records = mutation.get();
+            if (mutationLog != null) {
+                for (String[] record : records) {
+                    seq = mutationLog.enqueue(record);
+                }
+            }
+        } finally {
+            dataLock.writeLock().unlock();
+            // 已领取的序号必须发布，修改中途出错时也一样
+            if (dataLock.getWriteHoldCount() == 0) {
+                publishPendingEvents();
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        if (mutationLog != null) {
+            mutationLog.awaitDurable(seq);
+            // 压缩时读取全部数据，先取读锁（与修改时相同的加锁顺序：先数据锁后日志锁）
+            readData(() -> {
+                mutationLog.compactIfNeeded();
+                return null;
+            });
+        } else {
+            // 日志不可用时退回到整体重写数据文件
+            saveTVShows();
+            saveRatings();
+        }
+    }
+    
+    /**
+     * 在修改操作内（持有写锁）产生一个数据变更事件，写锁释放后发布
+     * 事件总线启动前（加载数据期间）不产生事件，派生数据结构在加载完成后整体重建
+     */
+    private static void emit(DataEvent.Type type, String tvShowId, TVShow tvShow, long timeMillis, int views) {
+        if (!eventBus.isStarted()) {
+            return;
+        }
+        PENDING_EVENTS.get().add(new DataEvent(eventBus.claim(), type, tvShowId, tvShow, timeMillis, views));
+    }
+    
+    /**
+     * 发布当前线程产生的事件
+     */
+    private static void publishPendingEvents() {
+        List<DataEvent> pending = PENDING_EVENTS.get();
+        for (DataEvent event : pending) {
+            eventBus.publish(event.sequence, event);
+        }
+        pending.clear();
+    }
+    
+    /**
+     * 订阅者处理一批事件：整批只取一次锁，持数据读锁（读取电视剧和评分）和该数据结构的写锁，
+     * 不阻塞其他数据结构的查询
+     */
+    private static void consumeEvents(List<DataEvent> events, ReentrantReadWriteLock lock,
+                                      Consumer<List<DataEvent>> apply) {
+        dataLock.readLock().lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                apply.accept(events);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 订阅者处理失败后由主数据整体重建其数据结构：在数据读锁内重建（期间没有修改），
+     * 返回此时的下一个事件序号，之前的事件都已包含在重建结果中
+     */
+    private static long resyncDerived(ReentrantReadWriteLock lock, Runnable rebuild) {
+        dataLock.readLock().lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                rebuild.run();
+                return eventBus.nextSequence();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 在派生数据结构的读锁内查询（调用方可以持有数据读锁）
+     */
+    private static <T> T readDerived(ReentrantReadWriteLock lock, Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 排行榜和趋势榜的订阅者：同一批中多次变化的电视剧只更新一次排行榜
+     */
+    private static void applyRankingEvents(List<DataEvent> events) {
+        Map<String, TVShow> changed = new LinkedHashMap<>();
+        for (DataEvent event : events) {
+            switch (event.type) {
+                case SHOW_ADDED:
+                case SHOW_UPDATED:
+                    changed.put(event.tvShowId, event.tvShow);
+                    break;
+                case RATED:
+                    trending.accumulate(event.tvShow, event.timeMillis, TrendingCounters.RATING_WEIGHT);
+                    changed.put(event.tvShowId, event.tvShow);
+                    break;
+                case VIEWED:
+                    trending.accumulate(event.tvShow, event.timeMillis, event.views * TrendingCounters.VIEW_WEIGHT);
+                    changed.put(event.tvShowId, event.tvShow);
+                    break;
+                case SHOW_REMOVED:
+                    changed.remove(event.tvShowId);
+                    removeFromLeaderboards(event.tvShowId);
+                    break;
+            }
+        }
+        for (TVShow tvShow : changed.values()) {
+            updateLeaderboards(tvShow);
+            trending.updateBoards(tvShow);
+        }
+    }
+    
+    /**
+     * 检索索引和相似电视剧表的订阅者
+     */
+    private static void applyContentEvents(List<DataEvent> events) {
+        for (DataEvent event : events) {
+            switch (event.type) {
+                case SHOW_ADDED:
+                    searchIndex.add(event.tvShow);
+                    contentSimilarity.add(event.tvShow);
+                    break;
+                case SHOW_UPDATED:
+                    searchIndex.update(event.tvShow);
+                    contentSimilarity.update(event.tvShow);
+                    break;
+                case SHOW_REMOVED:
+                    searchIndex.remove(event.tvShowId);
+                    contentSimilarity.remove(event.tvShowId);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * 隐因子检索索引的订阅者：训练后新增的电视剧有了评分后进入索引，同一批中的多条评分只折叠一次
+     */
+    private static void applyLatentFactorEvents(List<DataEvent> events) {
+        Set<String> rated = new LinkedHashSet<>();
+        for (DataEvent event : events) {
+            if (event.type == DataEvent.Type.RATED) {
+                rated.add(event.tvShowId);
+            } else if (event.type == DataEvent.Type.SHOW_REMOVED) {
+                rated.remove(event.tvShowId);
+                latentFactors.removeItem(event.tvShowId);
+            }
+        }
+        for (String tvShowId : rated) {
+            // 已删除但删除事件还在后面的批次中
+            if (catalog.contains(tvShowId)) {
+                latentFactors.updateItem(tvShowId, ratingIndex.findByTVShowId(tvShowId));
+            }
+        }
+    }
+    
+    /**
+     * 启动事件总线及各派生数据结构的订阅者
+     */
+    private static void startEventBus() {
+        eventBus.subscribe("rankings",
+                events -> consumeEvents(events, rankingLock, TVShowRecommendationSystem::applyRankingEvents),
+                () -> resyncDerived(rankingLock, () -> {
+                    rebuildLeaderboards();
+                    trending.clear();
+                    rebuildTrending(false);
+                }));
+        eventBus.subscribe("content",
+                events -> consumeEvents(events, contentLock, TVShowRecommendationSystem::applyContentEvents),
+                () -> resyncDerived(contentLock, () -> {
+                    searchIndex.rebuild(catalog.all());
+                    contentSimilarity.rebuild(catalog.all());
+                }));
+        eventBus.subscribe("latent-factors",
+                events -> consumeEvents(events, latentFactorLock, TVShowRecommendationSystem::applyLatentFactorEvents),
+                () -> resyncDerived(latentFactorLock,
+                        () -> latentFactors.reconcile(catalogIds(), catalog::contains, ratingIndex::findByTVShowId)));
+        eventBus.start();
+    }
+    
+    /**
+     * 等待订阅者处理完已发布的事件（修改后立即读取派生数据时使用，例如显示修改后的相似电视剧）
+     */
+    private static void awaitDerivedUpdates() {
+        if (eventBus.isStarted() && !eventBus.awaitDrained(EVENT_DRAIN_SECONDS, TimeUnit.SECONDS)) {
+            System.out.println("排行榜、检索索引等尚未更新完毕，稍后显示的内容可能不是最新的");
+        }
+    }
+    
     /**
      * 用户登录后的初始菜单（包含推荐入口）
      */
     private static void showPostLoginMenu() {
-        System.out.println("\n========== 欢迎回来，" + currentUser.getUsername() + " ==========");
+        System.out.println("\n========== 欢迎回来，" + currentUser().getUsername() + " ==========");
         System.out.println("1. 获取个性化电视剧推荐");
         System.out.println("2. 进入系统主菜单");
         System.out.println("3. 退出登录");
@@ -229,7 +763,7 @@ public class TVShowRecommendationSystem {
                 showUserMenu();
                 break;
             case 3:
-                currentUser = null;
+                session().setUser(null);
                 System.out.println("已退出登录！");
                 break;
             default:
@@ -242,9 +776,606 @@ public class TVShowRecommendationSystem {
      * 加载所有数据
      */
     private static void loadData() {
-        loadUsers();
-        loadTVShows();
-        loadRatings();
+        // 用户、推荐缓存和预计算推荐与电视剧、评分互不依赖，在I/O执行器上同时加载
+        Executor io = IoExecutor.shared();
+        CompletableFuture<Void> independentLoads = CompletableFuture.allOf(
+                CompletableFuture.runAsync(TVShowRecommendationSystem::loadUsers, io),
+                CompletableFuture.runAsync(recommendationCache::load, io),
+                CompletableFuture.runAsync(precomputedRecommendations::load, io),
+                CompletableFuture.runAsync(TVShowRecommendationSystem::loadLatentFactors, io));
+        // 二进制快照不旧于文本文件时优先加载，失败时退回文本文件
+        if (!BinarySnapshot.isFresh(SNAPSHOT_FILE, TV_SHOWS_FILE, RATINGS_FILE) || !loadBinarySnapshot()) {
+            loadTVShows();
+            loadRatings();
+        }
+        restoreRatingHistograms();
+        recoverFromMutationLog();
+        rebuildLeaderboards();
+        rebuildTrending(true);
+        searchIndex.rebuild(catalog.all());
+        contentSimilarity.rebuild(catalog.all());
+        independentLoads.join();
+        startEventBus();
+        viewCounter.start();
+        // 退出时先停止HTTP服务（等待进行中的请求），再汇总未写入的观看次数并等待订阅者处理完事件，
+        // 最后压缩日志，下次启动直接读取快照
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            RecommendationServer server = httpServer;
+            if (server != null) {
+                server.stop(SERVER_STOP_SECONDS);
+            }
+            viewCounter.close();
+            awaitDerivedUpdates();
+            eventBus.close();
+            if (mutationLog != null) {
+                readData(() -> {
+                    mutationLog.close();
+                    return null;
+                });
+            }
+            // 等待排队中的文件保存完成
+            IoExecutor.awaitQuiescence(SHUTDOWN_IO_SECONDS, TimeUnit.SECONDS);
+        }));
+    }
+    
+    /**
+     * HTTP服务模式：加载数据后在指定端口提供查询、评分和推荐接口，直到进程退出
+     */
+    private static void startServer(String portArgument) {
+        int port;
+        try {
+            port = Integer.parseInt(portArgument);
+        } catch (NumberFormatException e) {
+            System.out.println("无效的端口: " + portArgument);
+            return;
+        }
+        loadData();
+        refreshModels();
+        
+        RecommendationServer.Backend backend = new RecommendationServer.Backend() {
+            @Override
+            public List<TVShow> search(String keywords) {
+                return searchTVShowsByKeywords(keywords);
+            }
+            
+            @Override
+            public TVShow find(String tvShowId) {
+                return findTVShowById(tvShowId);
+            }
+            
+            @Override
+            public void recordView(TVShow tvShow) {
+                TVShowRecommendationSystem.recordView(tvShow);
+            }
+            
+            @Override
+            public long viewCountOf(TVShow tvShow) {
+                return TVShowRecommendationSystem.viewCountOf(tvShow);
+            }
+            
+            @Override
+            public List<TVShow> top(String board, int k) {
+                Leaderboard leaderboard = leaderboardByName(board);
+                return leaderboard == null ? null : readData(() -> readDerived(rankingLock, () -> leaderboard.top(k)));
+            }
+            
+            @Override
+            public User authenticate(String username, String password) {
+                User user = findUserByUsername(username);
+                return user != null && password.equals(user.getPassword()) ? user : null;
+            }
+            
+            @Override
+            public boolean rate(User user, TVShow tvShow, double score, String comment) {
+                return submitRating(user.getUsername(), tvShow, score, comment);
+            }
+            
+            @Override
+            public List<TVShow> recommend(User user, String preferences) {
+                List<TVShow> candidates = precomputedCandidates(user.getUsername(), preferences);
+                if (candidates == null) {
+                    candidates = recommendLocally(user.getUsername(), preferences, CANDIDATE_COUNT);
+                }
+                return new ArrayList<>(candidates.subList(0, Math.min(RECOMMENDATION_COUNT, candidates.size())));
+            }
+        };
+        
+        try {
+            RecommendationServer server = new RecommendationServer(port, backend);
+            server.start();
+            httpServer = server;
+            System.out.println("HTTP服务已启动，端口: " + server.getPort());
+        } catch (IOException e) {
+            System.out.println("启动HTTP服务失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 压力测试模式：加载数据后由多个线程同时评分、观看、删除临时电视剧，校验结果与串行重放一致
+     */
+    private static void runStressTest(String[] args) {
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : StressTest.DEFAULT_THREADS;
+        int operationsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : StressTest.DEFAULT_OPERATIONS_PER_THREAD;
+        loadData();
+        StressTest.Operations operations = new StressTest.Operations() {
+            @Override
+            public String addShow(String title) {
+                TVShow[] added = new TVShow[1];
+                mutate(() -> {
+                    added[0] = new TVShow(generateTVShowId(), title, "压力测试", 2000, "", new ArrayList<>(), "");
+                    catalog.add(added[0]);
+                    emit(DataEvent.Type.SHOW_ADDED, added[0].getId(), added[0], 0, 0);
+                    return new String[]{MutationLog.SHOW, formatTVShow(added[0])};
+                });
+                return added[0].getId();
+            }
+            
+            @Override
+            public boolean rate(String username, String tvShowId, double score) {
+                TVShow tvShow = findTVShowById(tvShowId);
+                return tvShow != null && submitRating(username, tvShow, score, "压力测试");
+            }
+            
+            @Override
+            public void view(String tvShowId) {
+                TVShow tvShow = findTVShowById(tvShowId);
+                if (tvShow != null) {
+                    recordView(tvShow);
+                }
+            }
+            
+            @Override
+            public boolean delete(String tvShowId) {
+                return removeTVShow(tvShowId);
+            }
+            
+            @Override
+            public void settle() {
+                viewCounter.flush();
+                awaitDerivedUpdates();
+            }
+            
+            @Override
+            public TVShow find(String tvShowId) {
+                return findTVShowById(tvShowId);
+            }
+            
+            @Override
+            public List<Rating> ratingsOf(String tvShowId) {
+                return findRatingsByTVShowId(tvShowId);
+            }
+            
+            @Override
+            public List<Rating> ratingsBy(String username) {
+                return findRatingsByUsername(username);
+            }
+            
+            @Override
+            public int ratingCount() {
+                return readData(ratingIndex::size);
+            }
+            
+            @Override
+            public int catalogSize() {
+                return readData(catalog::size);
+            }
+        };
+        boolean passed;
+        try {
+            passed = StressTest.run(operations, threads, operationsPerThread);
+        } catch (Exception e) {
+            System.out.println("压力测试失败: " + e);
+            passed = false;
+        }
+        System.exit(passed ? 0 : 1);
+    }
+    
+    /**
+     * 按接口中的名称查找榜单
+     * @return 名称无效时返回null
+     */
+    private static Leaderboard leaderboardByName(String name) {
+        switch (name) {
+            case "views":
+                return viewCountBoard;
+            case "rating":
+                return averageRatingBoard;
+            case "count":
+                return ratingCountBoard;
+            case "trending-hour":
+                return trending.board(TrendingCounters.Window.HOUR);
+            case "trending-day":
+                return trending.board(TrendingCounters.Window.DAY);
+            case "trending-week":
+                return trending.board(TrendingCounters.Window.WEEK);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * 批处理：并行为所有普通用户计算推荐并写入预计算结果文件
+     */
+    private static void precomputeRecommendations() {
+        loadData();
+        long start = System.currentTimeMillis();
+        // 先构建模型并等待完成，之后各线程只读
+        refreshModels();
+        awaitModelBuilds();
+        
+        long generatedAt = System.currentTimeMillis();
+        users.parallelStream()
+                .filter(user -> !user.getRole().equals("admin"))
+                .forEach(user -> {
+                    List<Rating> userRatings = findRatingsByUsername(user.getUsername());
+                    List<String> ids = new ArrayList<>();
+                    for (TVShow tvShow : recommendLocally(user.getUsername(), user.getPreferences(), CANDIDATE_COUNT)) {
+                        ids.add(tvShow.getId());
+                    }
+                    precomputedRecommendations.put(new RecommendationStore.Entry(user.getUsername(),
+                            RecommendationStore.fingerprint(user.getPreferences(), userRatings), generatedAt, ids));
+                });
+        
+        try {
+            precomputedRecommendations.save();
+            System.out.println("已为 " + precomputedRecommendations.size() + " 位用户预先计算推荐，耗时 "
+                    + (System.currentTimeMillis() - start) + " 毫秒");
+        } catch (IOException e) {
+            System.out.println("保存预计算推荐失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 按当前电视剧数据重建所有排行榜
+     */
+    private static void rebuildLeaderboards() {
+        viewCountBoard.rebuild(catalog.all());
+        averageRatingBoard.rebuild(catalog.all());
+        ratingCountBoard.rebuild(catalog.all());
+    }
+    
+    /**
+     * 由评分时间戳和观看事件记录重新计算趋势热度
+     * （订阅者重新同步时，尚在I/O执行器上排队写入的最近一批观看不计入）
+     * @param compactViewEvents 是否顺带去掉观看事件记录中过期的和已删除电视剧的事件（只在加载时，此时没有并发的追加）
+     */
+    private static void rebuildTrending(boolean compactViewEvents) {
+        ratingIndex.forEachRating((user, item, score, time) -> {
+            TVShow tvShow = catalog.get(ratingIndex.tvShowIdOf(item));
+            if (tvShow != null) {
+                // 评分时间戳按本地时间记录，换算后才能与观看事件、当前时刻比较
+                trending.accumulate(tvShow, RatingColumns.toEpochMillis(time), TrendingCounters.RATING_WEIGHT);
+            }
+        });
+        
+        long cutoff = System.currentTimeMillis() - TrendingCounters.RETENTION_MILLIS;
+        List<String> kept = new ArrayList<>();
+        int total = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(VIEW_EVENTS_FILE))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                total++;
+                String[] parts = line.split("\\|");
+                try {
+                    long time = Long.parseLong(parts[0]);
+                    TVShow tvShow = catalog.get(parts[1]);
+                    if (time >= cutoff && tvShow != null) {
+                        trending.accumulate(tvShow, time, Integer.parseInt(parts[2]) * TrendingCounters.VIEW_WEIGHT);
+                        kept.add(line);
+                    }
+                } catch (RuntimeException e) {
+                    // 写到一半的行，丢弃
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // 还没有观看事件记录
+        } catch (IOException e) {
+            System.out.println("加载观看事件记录失败: " + e.getMessage());
+        }
+        trending.rebuildBoards();
+        if (compactViewEvents && kept.size() < total) {
+            try {
+                writeFileAtomically(VIEW_EVENTS_FILE, kept);
+            } catch (IOException e) {
+                System.out.println("整理观看事件记录失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 追加一批观看事件（时间戳|电视剧ID|次数），在I/O执行器上写入
+     */
+    private static void appendViewEvents(long timeMillis, Map<String, Long> deltas) {
+        Runnable append = () -> {
+            synchronized (FILE_WRITE_LOCK) {
+                try (BufferedWriter bw = new BufferedWriter(new FileWriter(VIEW_EVENTS_FILE, true))) {
+                    for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                        bw.write(timeMillis + "|" + entry.getKey() + "|" + entry.getValue());
+                        bw.newLine();
+                    }
+                } catch (IOException e) {
+                    System.out.println("记录观看事件失败: " + e.getMessage());
+                }
+            }
+        };
+        try {
+            IoExecutor.shared().execute(append);
+        } catch (RejectedExecutionException e) {
+            // 正在退出，执行器已关闭，直接在当前线程写入
+            append.run();
+        }
+    }
+    
+    /**
+     * 电视剧新增或其观看次数、评分变化后更新排行榜
+     */
+    private static void updateLeaderboards(TVShow tvShow) {
+        viewCountBoard.update(tvShow);
+        averageRatingBoard.update(tvShow);
+        ratingCountBoard.update(tvShow);
+    }
+    
+    /**
+     * 电视剧删除后移出排行榜
+     */
+    private static void removeFromLeaderboards(String tvShowId) {
+        viewCountBoard.remove(tvShowId);
+        averageRatingBoard.remove(tvShowId);
+        ratingCountBoard.remove(tvShowId);
+        trending.remove(tvShowId);
+    }
+    
+    /**
+     * 新增评分或替换旧评分后更新电视剧的评分统计
+     * @param previous 被替换的旧评分，没有时为null
+     */
+    private static void applyRatingChange(TVShow tvShow, Rating previous, double score) {
+        if (previous != null) {
+            tvShow.replaceRating(previous.getScore(), score);
+        } else {
+            tvShow.addRating(score);
+        }
+    }
+    
+    /**
+     * 由评分记录并行重新统计各电视剧的评分分布
+     * （数量、平均分来自数据文件，其中可能包含没有逐条记录的导入统计）
+     */
+    private static void restoreRatingHistograms() {
+        Map<String, RatingAggregate> rebuilt = ratingIndex.aggregateByTVShow();
+        RatingAggregate empty = new RatingAggregate();
+        for (TVShow tvShow : catalog.all()) {
+            tvShow.restoreRatingHistogram(rebuilt.getOrDefault(tvShow.getId(), empty));
+        }
+    }
+    
+    /**
+     * 校验增量维护的评分统计：与由评分记录并行重新统计的结果比较
+     * 分布应完全一致；评分人数不少于评分记录数，两者相等（没有导入统计）时平均分也应一致
+     */
+    private static void verifyRatingStatistics() {
+        readData(() -> {
+            long start = System.currentTimeMillis();
+            Map<String, RatingAggregate> rebuilt = ratingIndex.aggregateByTVShow();
+            RatingAggregate empty = new RatingAggregate();
+            int mismatched = 0;
+            for (TVShow tvShow : catalog.all()) {
+                RatingAggregate stored = tvShow.getRatingStatistics();
+                RatingAggregate expected = rebuilt.getOrDefault(tvShow.getId(), empty);
+                boolean consistent = stored.histogramEquals(expected)
+                        && stored.getCount() >= expected.getCount()
+                        && (stored.getCount() != expected.getCount()
+                            || Math.abs(stored.getMean() - expected.getMean()) < 1e-9);
+                if (!consistent) {
+                    mismatched++;
+                    System.out.println(String.format("%s %s: 评分人数 %d / 评分记录 %d, 平均分 %.4f / %.4f",
+                            tvShow.getId(), tvShow.getTitle(), stored.getCount(), expected.getCount(),
+                            stored.getMean(), expected.getMean()));
+                }
+            }
+            System.out.println("已校验 " + catalog.size() + " 部电视剧的评分统计（" + ratingIndex.size()
+                    + " 条评分，耗时 " + (System.currentTimeMillis() - start) + " 毫秒），不一致: " + mismatched);
+            return null;
+        });
+    }
+    
+    /**
+     * 记录一次观看（只累加计数器，由后台汇总）
+     */
+    private static void recordView(TVShow tvShow) {
+        viewCounter.record(tvShow.getId());
+    }
+    
+    /**
+     * 观看次数（包括尚未汇总的部分）
+     */
+    private static long viewCountOf(TVShow tvShow) {
+        return tvShow.getViewCount() + viewCounter.pending(tvShow.getId());
+    }
+    
+    /**
+     * 把汇总的观看次数增量写入电视剧（排行榜、趋势榜由订阅者更新），每部电视剧记一条变更日志
+     */
+    private static void applyViews(Map<String, Long> deltas) {
+        // 一批观看按汇总时刻计入趋势热度（与实际观看相差不超过汇总间隔）
+        long now = System.currentTimeMillis();
+        mutateAll(() -> {
+            List<String[]> records = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                TVShow tvShow = catalog.get(entry.getKey());
+                if (tvShow == null) {
+                    continue; // 已被删除
+                }
+                int delta = (int) Math.min(entry.getValue(), Integer.MAX_VALUE);
+                tvShow.addViewCount(delta);
+                emit(DataEvent.Type.VIEWED, tvShow.getId(), tvShow, now, delta);
+                records.add(new String[]{MutationLog.VIEWS, tvShow.getId(), String.valueOf(delta)});
+            }
+            return records;
+        });
+        appendViewEvents(now, deltas);
+    }
+    
+    /**
+     * 加载二进制快照
+     * @return 是否加载成功
+     */
+    private static boolean loadBinarySnapshot() {
+        try {
+            // 评分逐条直接追加到评分索引，不创建评分对象
+            BinarySnapshot.Data data = BinarySnapshot.read(SNAPSHOT_FILE, ratingIndex::add);
+            for (TVShow tvShow : data.tvShows) {
+                catalog.add(tvShow);
+            }
+            tvShowsCheckpoint = data.tvShowsCheckpoint;
+            ratingsCheckpoint = data.ratingsCheckpoint;
+            return true;
+        } catch (IOException e) {
+            System.out.println("加载二进制快照失败，将读取文本数据文件: " + e.getMessage());
+            catalog.clear();
+            ratingIndex.clear();
+            return false;
+        }
+    }
+    
+    /**
+     * 在文本数据文件和二进制快照之间转换
+     */
+    private static void convertData(String mode) {
+        try {
+            switch (mode) {
+                case "--to-binary":
+                    loadTVShows();
+                    loadRatings();
+                    BinarySnapshot.write(SNAPSHOT_FILE, catalog.all(), ratingIndex.all(), tvShowsCheckpoint, ratingsCheckpoint);
+                    System.out.println("已生成二进制快照: " + SNAPSHOT_FILE);
+                    break;
+                case "--verify-ratings":
+                    loadData();
+                    verifyRatingStatistics();
+                    break;
+                case "--train-factors":
+                    loadData();
+                    readData(() -> {
+                        long start = System.currentTimeMillis();
+                        latentFactors.train(MatrixFactorization.TrainingSet.from(ratingIndex, catalog::contains), ratingsVersion);
+                        System.out.println("隐因子模型训练完成，耗时 " + (System.currentTimeMillis() - start) + " 毫秒");
+                        try {
+                            latentFactors.save(LATENT_FACTOR_MODEL_FILE);
+                            System.out.println("已保存隐因子模型: " + LATENT_FACTOR_MODEL_FILE);
+                        } catch (IOException e) {
+                            System.out.println("保存隐因子模型失败: " + e.getMessage());
+                        }
+                        return null;
+                    });
+                    break;
+                case "--evaluate-factors":
+                    loadData();
+                    readData(() -> {
+                        MatrixFactorization.evaluate(MatrixFactorization.TrainingSet.from(ratingIndex, catalog::contains),
+                                MatrixFactorization.Config.fromSystemProperties(), EVALUATION_TEST_FRACTION, EVALUATION_K);
+                        return null;
+                    });
+                    break;
+                case "--to-text":
+                    if (!loadBinarySnapshot()) {
+                        return;
+                    }
+                    writeTVShowsFile(tvShowsCheckpoint);
+                    writeRatingsFile(ratingsCheckpoint);
+                    System.out.println("已从二进制快照导出文本数据文件");
+                    break;
+                default:
+                    System.out.println("未知的参数: " + mode + "（可用参数: --batch, --server [端口], --stress [线程数] [每个线程的操作数], --to-binary, --to-text, --verify-ratings, --train-factors, --evaluate-factors）");
+            }
+        } catch (IOException e) {
+            System.out.println("数据转换失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 在快照数据之上重放变更日志（跳过快照已包含的记录），并打开日志用于后续追加
+     */
+    private static void recoverFromMutationLog() {
+        MutationLog log = new MutationLog(MUTATION_LOG_FILE, MUTATION_LOG_COMPACT_THRESHOLD,
+                TVShowRecommendationSystem::writeSnapshot);
+        try {
+            int replayed = log.replay(Math.max(tvShowsCheckpoint, ratingsCheckpoint),
+                    TVShowRecommendationSystem::applyMutation);
+            if (replayed > 0) {
+                System.out.println("已从变更日志恢复 " + replayed + " 条记录");
+            }
+            tvShowsCheckpoint = log.lastSequence();
+            ratingsCheckpoint = log.lastSequence();
+            log.open();
+            mutationLog = log;
+        } catch (IOException e) {
+            System.out.println("打开变更日志失败，将直接重写数据文件: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 把一条变更日志记录应用到内存数据
+     * 电视剧数据、评分数据分别跳过各自检查点已包含的记录（两者的数据文件不是同时替换的）；
+     * 电视剧文件先于评分文件写入，电视剧的检查点不小于评分的检查点
+     * @param sequence 记录序号，旧格式记录为0（总是应用）
+     */
+    private static void applyMutation(long sequence, String[] record) {
+        boolean toTVShows = sequence == 0 || sequence > tvShowsCheckpoint;
+        boolean toRatings = sequence == 0 || sequence > ratingsCheckpoint;
+        try {
+            switch (record[0]) {
+                case MutationLog.RATE: {
+                    Rating rating = parseRating(record, 1);
+                    if (rating == null || !toRatings) break;
+                    Rating previous = ratingIndex.add(rating);
+                    TVShow tvShow = catalog.get(rating.getTvShowId());
+                    if (tvShow != null && toTVShows) {
+                        applyRatingChange(tvShow, previous, rating.getScore());
+                    }
+                    break;
+                }
+                case MutationLog.VIEW: {
+                    TVShow tvShow = catalog.get(record[1]);
+                    if (tvShow != null && toTVShows) {
+                        tvShow.incrementViewCount();
+                    }
+                    break;
+                }
+                case MutationLog.VIEWS: {
+                    TVShow tvShow = catalog.get(record[1]);
+                    if (tvShow != null && toTVShows) {
+                        tvShow.addViewCount(Integer.parseInt(record[2]));
+                    }
+                    break;
+                }
+                case MutationLog.SHOW: {
+                    TVShow tvShow = parseTVShow(record, 1);
+                    if (tvShow != null && toTVShows) {
+                        // 修改电视剧时沿用已有的评分统计（包括不写入日志的评分分布）
+                        TVShow previous = catalog.get(tvShow.getId());
+                        if (previous != null) {
+                            tvShow.copyRatingStatistics(previous);
+                        }
+                        catalog.add(tvShow);
+                    }
+                    break;
+                }
+                case MutationLog.DELETE_SHOW:
+                    if (toTVShows) {
+                        catalog.remove(record[1]);
+                    }
+                    if (toRatings) {
+                        ratingIndex.removeByTVShowId(record[1]);
+                    }
+                    break;
+                default:
+                    System.out.println("未知的变更日志记录: " + record[0]);
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            System.out.println("变更日志记录格式错误: " + String.join("|", record));
+        }
     }
     
     /**
@@ -277,34 +1408,14 @@ public class TVShowRecommendationSystem {
      * 加载电视剧数据
      */
     private static void loadTVShows() {
-        try (BufferedReader br = new BufferedReader(new FileReader(TV_SHOWS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                String[] parts = line.split("\\|");
-                if (parts.length >= 7) {
-                    String id = parts[0];
-                    String title = parts[1];
-                    String genre = parts[2];
-                    int year = Integer.parseInt(parts[3]);
-                    String director = parts[4];
-                    List<String> actors = Arrays.asList(parts[5].split(","));
-                    String description = parts[6];
-                    
-                    TVShow tvShow = new TVShow(id, title, genre, year, director, actors, description);
-                    
-                    // 加载评分和观看次数
-                    if (parts.length >= 9) {
-                        tvShow.rating = Double.parseDouble(parts[7]);
-                        tvShow.ratingCount = Integer.parseInt(parts[8]);
-                    }
-                    if (parts.length >= 10) {
-                        tvShow.viewCount = Integer.parseInt(parts[9]);
-                    }
-                    
-                    tvShows.add(tvShow);
-                }
+        try {
+            // 内存映射并行解析，结果保持文件顺序
+            List<TVShow> loaded = ParallelTextLoader.load(TV_SHOWS_FILE, Charset.defaultCharset(),
+                    parts -> parseTVShow(parts, 0));
+            for (TVShow tvShow : loaded) {
+                catalog.add(tvShow);
             }
+            tvShowsCheckpoint = readCheckpoint(TV_SHOWS_FILE);
         } catch (FileNotFoundException e) {
             System.out.println("电视剧文件不存在，将创建新文件");
         } catch (IOException e) {
@@ -318,28 +1429,15 @@ public class TVShowRecommendationSystem {
      * 加载评分数据
      */
     private static void loadRatings() {
-        try (BufferedReader br = new BufferedReader(new FileReader(RATINGS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                String[] parts = line.split("\\|");
-                if (parts.length >= 5) {
-                    String id = parts[0];
-                    String tvShowId = parts[1];
-                    String username = parts[2];
-                    double score = Double.parseDouble(parts[3]);
-                    String comment = parts[4];
-                    
-                    Rating rating = new Rating(id, tvShowId, username, score, comment);
-                    
-                    // 加载时间戳
-                    if (parts.length >= 6) {
-                        rating.timestamp = parts[5];
-                    }
-                    
-                    ratings.add(rating);
-                }
-            }
+        try {
+            // 内存映射并行解析，按文件顺序逐块追加到评分索引，同时存在的评分对象只有几个分块
+            ParallelTextLoader.forEachChunk(RATINGS_FILE, Charset.defaultCharset(), parts -> parseRating(parts, 0),
+                    chunk -> {
+                        for (Rating rating : chunk) {
+                            ratingIndex.add(rating);
+                        }
+                    });
+            ratingsCheckpoint = readCheckpoint(RATINGS_FILE);
         } catch (FileNotFoundException e) {
             System.out.println("评分文件不存在，将创建新文件");
         } catch (IOException e) {
@@ -349,6 +1447,93 @@ public class TVShowRecommendationSystem {
         }
     }
     
+    /**
+     * 文本数据文件首行记录的检查点（首行的字段不足，加载数据时被当作无效行跳过），没有时返回0
+     */
+    private static long readCheckpoint(String fileName) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            String first = br.readLine();
+            if (first != null && first.startsWith(CHECKPOINT_HEADER)) {
+                return Long.parseLong(first.substring(CHECKPOINT_HEADER.length()).trim());
+            }
+            return 0;
+        }
+    }
+    
+    /**
+     * 从字段数组解析电视剧（字段从offset开始）
+     * @return 字段不足时返回null
+     */
+    private static TVShow parseTVShow(String[] parts, int offset) {
+        int length = parts.length - offset;
+        if (length < 7) {
+            return null;
+        }
+        String id = parts[offset];
+        String title = parts[offset + 1];
+        String genre = parts[offset + 2];
+        int year = Integer.parseInt(parts[offset + 3]);
+        String director = parts[offset + 4];
+        List<String> actors = Arrays.asList(parts[offset + 5].split(","));
+        String description = parts[offset + 6];
+        
+        TVShow tvShow = new TVShow(id, title, genre, year, director, actors, description);
+        
+        // 加载评分和观看次数
+        if (length >= 9) {
+            double rating = Double.parseDouble(parts[offset + 7]);
+            int ratingCount = Integer.parseInt(parts[offset + 8]);
+            int viewCount = length >= 10 ? Integer.parseInt(parts[offset + 9]) : 0;
+            // 评分平方和是后加的字段，旧数据中没有
+            double sumOfSquares = length >= 11 ? Double.parseDouble(parts[offset + 10]) : Double.NaN;
+            tvShow.restoreStatistics(rating, ratingCount, sumOfSquares, viewCount);
+        }
+        return tvShow;
+    }
+    
+    /**
+     * 从字段数组解析评分（字段从offset开始）
+     * @return 字段不足时返回null
+     */
+    private static Rating parseRating(String[] parts, int offset) {
+        int length = parts.length - offset;
+        if (length < 5) {
+            return null;
+        }
+        String id = parts[offset];
+        String tvShowId = parts[offset + 1];
+        String username = parts[offset + 2];
+        double score = Double.parseDouble(parts[offset + 3]);
+        String comment = parts[offset + 4];
+        
+        // 没有时间戳的旧数据才取当前时间
+        if (length < 6) {
+            return new Rating(id, tvShowId, username, score, comment);
+        }
+        String timestamp = parts[offset + 5];
+        return new Rating(id, tvShowId, username, score, comment, RatingColumns.parseTimestamp(timestamp), timestamp);
+    }
+    
+    /**
+     * 电视剧的文本行表示（与tv_shows.txt格式一致）
+     */
+    private static String formatTVShow(TVShow tvShow) {
+        String actors = String.join(",", tvShow.getActors());
+        RatingAggregate statistics = tvShow.getRatingStatistics();
+        return tvShow.getId() + "|" + tvShow.getTitle() + "|" + tvShow.getGenre() + "|" +
+                tvShow.getYear() + "|" + tvShow.getDirector() + "|" + actors + "|" +
+                tvShow.getDescription() + "|" + statistics.getMean() + "|" +
+                statistics.getCount() + "|" + tvShow.getViewCount() + "|" + statistics.getSumOfSquares();
+    }
+    
+    /**
+     * 评分的文本行表示（与ratings.txt格式一致）
+     */
+    private static String formatRating(Rating rating) {
+        return rating.getId() + "|" + rating.getTvShowId() + "|" + rating.getUsername() + "|" +
+                rating.getScore() + "|" + rating.getComment() + "|" + rating.getTimestamp();
+    }
+    
     /**
      * 保存所有数据
      */
@@ -359,9 +1544,16 @@ public class TVShowRecommendationSystem {
     }
     
     /**
-     * 保存用户数据
+     * 保存用户数据（在I/O执行器上异步写入，调用方不等待）
      */
     private static void saveUsers() {
+        saveAsync(usersSaveQueued, TVShowRecommendationSystem::writeUsersFile);
+    }
+    
+    /**
+     * 写入用户数据文件
+     */
+    private static synchronized void writeUsersFile() {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(USERS_FILE))) {
             for (User user : users) {
                 bw.write(user.getUsername() + "|" + user.getPassword() + "|" + user.getRole() + "|" + user.getPreferences());
@@ -373,35 +1565,139 @@ public class TVShowRecommendationSystem {
     }
     
     /**
-     * 保存电视剧数据
+     * 保存电视剧数据（异步）
      */
     private static void saveTVShows() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(TV_SHOWS_FILE))) {
-            for (TVShow tvShow : tvShows) {
-                String actors = String.join(",", tvShow.getActors());
-                bw.write(tvShow.getId() + "|" + tvShow.getTitle() + "|" + tvShow.getGenre() + "|" +
-                        tvShow.getYear() + "|" + tvShow.getDirector() + "|" + actors + "|" +
-                        tvShow.getDescription() + "|" + tvShow.getRating() + "|" +
-                        tvShow.getRatingCount() + "|" + tvShow.getViewCount());
-                bw.newLine();
+        saveAsync(tvShowsSaveQueued, () -> {
+            try {
+                writeTVShowsFile(tvShowsCheckpoint);
+            } catch (IOException e) {
+                System.out.println("保存电视剧数据失败: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 保存评分数据（异步）
+     */
+    private static void saveRatings() {
+        saveAsync(ratingsSaveQueued, () -> {
+            try {
+                writeRatingsFile(ratingsCheckpoint);
+            } catch (IOException e) {
+                System.out.println("保存评分数据失败: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 保存推荐结果缓存（异步，连续的保存合并为一次）
+     */
+    private static void saveRecommendationCache() {
+        if (!recommendationCache.isPersistent()) {
+            return;
+        }
+        saveAsync(recommendationCacheSaveQueued, () -> {
+            try {
+                recommendationCache.save();
+            } catch (IOException e) {
+                System.out.println("保存推荐缓存失败: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 在I/O执行器上执行保存；已有同类保存在排队时不再重复提交（排队中的保存开始时读取的是最新数据）。
+     * 同一文件的写入串行进行
+     * @param queued 该类保存是否已在排队
+     */
+    private static void saveAsync(AtomicBoolean queued, Runnable save) {
+        if (!queued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            IoExecutor.shared().execute(() -> {
+                synchronized (queued) {
+                    queued.set(false);
+                    save.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 正在退出，执行器已关闭，直接在当前线程保存
+            synchronized (queued) {
+                queued.set(false);
+                save.run();
             }
-        } catch (IOException e) {
-            System.out.println("保存电视剧数据失败: " + e.getMessage());
         }
     }
     
     /**
-     * 保存评分数据
+     * 写入电视剧和评分快照文件（文本文件和二进制快照，变更日志压缩时调用）
+     * 各文件都带有检查点，任意两个文件替换之间崩溃，重放日志时都能按检查点跳过已包含的记录
+     * @param checkpoint 变更日志中最后一条记录的序号
+     */
+    private static void writeSnapshot(long checkpoint) throws IOException {
+        dataLock.readLock().lock();
+        try {
+            // 电视剧文件先于评分文件写入（重放日志时依赖电视剧的检查点不小于评分的检查点）
+            writeTVShowsFile(checkpoint);
+            writeRatingsFile(checkpoint);
+            // 二进制快照最后写入，保证其修改时间不早于文本文件
+            BinarySnapshot.write(SNAPSHOT_FILE, catalog.all(), ratingIndex.all(), checkpoint, checkpoint);
+            tvShowsCheckpoint = checkpoint;
+            ratingsCheckpoint = checkpoint;
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 写入电视剧数据文件
+     * @param checkpoint 写入首行的检查点
+     */
+    private static void writeTVShowsFile(long checkpoint) throws IOException {
+        List<String> lines = readData(() -> {
+            List<String> formatted = new ArrayList<>();
+            formatted.add(CHECKPOINT_HEADER + checkpoint);
+            for (TVShow tvShow : catalog.all()) {
+                formatted.add(formatTVShow(tvShow));
+            }
+            return formatted;
+        });
+        writeFileAtomically(TV_SHOWS_FILE, lines);
+    }
+    
+    /**
+     * 写入评分数据文件
+     * @param checkpoint 写入首行的检查点
+     */
+    private static void writeRatingsFile(long checkpoint) throws IOException {
+        List<String> lines = readData(() -> {
+            List<String> formatted = new ArrayList<>();
+            formatted.add(CHECKPOINT_HEADER + checkpoint);
+            for (Rating rating : ratingIndex.all()) {
+                formatted.add(formatRating(rating));
+            }
+            return formatted;
+        });
+        writeFileAtomically(RATINGS_FILE, lines);
+    }
+    
+    /**
+     * 先写临时文件，刷盘后原子替换并同步目录，避免写到一半崩溃时快照损坏
+     * （异步保存与日志压缩可能同时写同一个文件，共用一个临时文件，写入串行进行）
      */
-    private static void saveRatings() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(RATINGS_FILE))) {
-            for (Rating rating : ratings) {
-                bw.write(rating.getId() + "|" + rating.getTvShowId() + "|" + rating.getUsername() + "|" +
-                        rating.getScore() + "|" + rating.getComment() + "|" + rating.getTimestamp());
-                bw.newLine();
+    private static void writeFileAtomically(String fileName, List<String> lines) throws IOException {
+        synchronized (FILE_WRITE_LOCK) {
+            File target = new File(fileName);
+            File temp = new File(fileName + ".tmp");
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
+                for (String line : lines) {
+                    bw.write(line);
+                    bw.newLine();
+                }
             }
-        } catch (IOException e) {
-            System.out.println("保存评分数据失败: " + e.getMessage());
+            MutationLog.replaceFile(temp.toPath(), target.toPath());
         }
     }
     
@@ -454,7 +1750,7 @@ public class TVShowRecommendationSystem {
             while (failedAttempts < 3) {
                 User admin = findUserByUsername("admin");
                 if (admin != null && password.equals(admin.getPassword())) {
-                    currentUser = admin;
+                    session().setUser(admin);
                     System.out.println("管理员登录成功！");
                     return;
                 } else {
@@ -472,7 +1768,7 @@ public class TVShowRecommendationSystem {
             // 普通用户登录
             User user = findUserByUsername(username);
             if (user != null && password.equals(user.getPassword())) {
-                currentUser = user;
+                session().setUser(user);
                 System.out.println("登录成功！欢迎回来，" + username + "！");
             } else {
                 System.out.println("用户名或密码错误！");
@@ -490,7 +1786,7 @@ public class TVShowRecommendationSystem {
         System.out.print("请输入用户名: ");
         String username = scanner.nextLine();
         
-        // 检查用户名是否已存在
+        // 检查用户名是否已存在（提交时还会再检查一次）
         if (findUserByUsername(username) != null) {
             System.out.println("用户名已存在，请重新选择！");
             return;
@@ -507,9 +1803,15 @@ public class TVShowRecommendationSystem {
             return;
         }
         
-        // 创建新用户
+        // 创建新用户（检查和添加须原子进行，避免两个会话同时注册同一用户名）
         User newUser = new User(username, password, "user");
-        users.add(newUser);
+        synchronized (users) {
+            if (findUserByUsername(username) != null) {
+                System.out.println("用户名已存在，请重新选择！");
+                return;
+            }
+            users.add(newUser);
+        }
         saveUsers();
         
         System.out.println("注册成功！");
@@ -583,7 +1885,7 @@ public class TVShowRecommendationSystem {
         
         switch (choice) {
             case 1:
-                results = ratings;
+                results = readData(ratingIndex::all);
                 break;
             case 2:
                 System.out.print("请输入电视剧ID: ");
@@ -623,30 +1925,66 @@ public class TVShowRecommendationSystem {
      */
     private static void viewTop10TVShows() {
         System.out.println("\n========== 热播电视剧榜 ==========");
+        System.out.println("1. 热播榜（按观看次数）");
+        System.out.println("2. 高分榜（按平均评分，至少" + MIN_RATING_COUNT_FOR_RANKING + "人评分）");
+        System.out.println("3. 热评榜（按评分人数）");
+        System.out.println("4. 趋势榜（近1小时热度）");
+        System.out.println("5. 趋势榜（近1天热度）");
+        System.out.println("6. 趋势榜（近7天热度）");
+        System.out.print("请选择榜单: ");
         
-        // 复制列表以避免修改原始数据
-        List<TVShow> sortedTVShows = new ArrayList<>(tvShows);
+        Scanner scanner = new Scanner(System.in);
+        int boardChoice = scanner.nextInt();
+        scanner.nextLine(); // 消耗换行符
         
-        // 按观看次数排序
-        Collections.sort(sortedTVShows, new Comparator<TVShow>() {
-            @Override
-            public int compare(TVShow o1, TVShow o2) {
-                return Integer.compare(o2.getViewCount(), o1.getViewCount());
-            }
-        });
+        Leaderboard board;
+        switch (boardChoice) {
+            case 1:
+                board = viewCountBoard;
+                break;
+            case 2:
+                board = averageRatingBoard;
+                break;
+            case 3:
+                board = ratingCountBoard;
+                break;
+            case 4:
+            case 5:
+            case 6:
+                board = trending.board(TrendingCounters.Window.values()[boardChoice - 4]);
+                break;
+            default:
+                System.out.println("无效的选择！");
+                return;
+        }
         
-        // 取前10名
-        int limit = Math.min(10, sortedTVShows.size());
+        // 取前10名（榜单增量维护，无需排序）
+        // 趋势榜同时显示当前的衰减热度
+        TrendingCounters.Window window = boardChoice >= 4 ? TrendingCounters.Window.values()[boardChoice - 4] : null;
+        long now = System.currentTimeMillis();
+        List<Double> heat = new ArrayList<>();
+        List<TVShow> topTVShows = readData(() -> readDerived(rankingLock, () -> {
+            List<TVShow> top = board.top(10);
+            if (window != null) {
+                for (TVShow tvShow : top) {
+                    heat.add(trending.score(window, tvShow.getId(), now));
+                }
+            }
+            return top;
+        }));
+        int limit = topTVShows.size();
+        System.out.println("\n---------- " + board.getName() + " ----------");
         for (int i = 0; i < limit; i++) {
-            TVShow tvShow = sortedTVShows.get(i);
+            TVShow tvShow = topTVShows.get(i);
             System.out.println((i + 1) + ". " + tvShow.getTitle() + 
                              " (评分: " + String.format("%.1f", tvShow.getRating()) + 
-                             ", 观看次数: " + tvShow.getViewCount() + ")");
+                             ", 评分人数: " + tvShow.getRatingCount() + 
+                             ", 观看次数: " + tvShow.getViewCount() +
+                             (window != null ? ", 近期热度: " + String.format("%.1f", heat.get(i)) : "") + ")");
         }
         
         // 询问是否查看详情
         System.out.print("\n是否查看某部电视剧的详细信息？(Y/N): ");
-        Scanner scanner = new Scanner(System.in);
         String choice = scanner.nextLine();
         
         if (choice.equalsIgnoreCase("Y")) {
@@ -656,12 +1994,11 @@ public class TVShowRecommendationSystem {
                 scanner.nextLine(); // 消耗换行符
                 
                 if (index >= 0 && index < limit) {
-                    TVShow selected = sortedTVShows.get(index);
+                    TVShow selected = topTVShows.get(index);
                     displayTVShowDetails(selected);
                     
                     // 增加观看次数
-                    selected.incrementViewCount();
-                    saveTVShows();
+                    recordView(selected);
                 } else {
                     System.out.println("无效的序号！");
                 }
@@ -697,7 +2034,7 @@ public class TVShowRecommendationSystem {
                 viewTop10TVShows();
                 break;
             case 4:
-                currentUser = null;
+                session().setUser(null);
                 System.out.println("已退出登录！");
                 break;
             default:
@@ -752,6 +2089,7 @@ public class TVShowRecommendationSystem {
         System.out.println("2. 按标题查询");
         System.out.println("3. 按类型查询");
         System.out.println("4. 查看所有电视剧");
+        System.out.println("5. 按关键词搜索（标题、类型、导演、演员、剧情）");
         System.out.print("请选择查询方式: ");
         
         Scanner scanner = new Scanner(System.in);
@@ -780,7 +2118,12 @@ public class TVShowRecommendationSystem {
                 results = findTVShowsByGenre(genre);
                 break;
             case 4:
-                results = tvShows;
+                results = readData(() -> new ArrayList<>(catalog.all()));
+                break;
+            case 5:
+                System.out.print("请输入关键词: ");
+                String keywords = scanner.nextLine();
+                results = searchTVShowsByKeywords(keywords);
                 break;
             default:
                 System.out.println("无效的选择！");
@@ -805,9 +2148,6 @@ public class TVShowRecommendationSystem {
         System.out.println("\n========== 添加电视剧 ==========");
         Scanner scanner = new Scanner(System.in);
         
-        // 生成ID
-        String id = generateTVShowId();
-        
         System.out.print("请输入电视剧标题: ");
         String title = scanner.nextLine();
         
@@ -828,15 +2168,19 @@ public class TVShowRecommendationSystem {
         System.out.print("请输入剧情描述: ");
         String description = scanner.nextLine();
         
-        // 创建电视剧对象
-        TVShow newTVShow = new TVShow(id, title, genre, year, director, actors, description);
-        tvShows.add(newTVShow);
-        
-        // 保存数据
-        saveTVShows();
+        // 创建电视剧对象（ID在写锁内生成，避免两个会话得到相同ID）
+        TVShow[] added = new TVShow[1];
+        mutate(() -> {
+            TVShow newTVShow = new TVShow(generateTVShowId(), title, genre, year, director, actors, description);
+            catalog.add(newTVShow);
+            emit(DataEvent.Type.SHOW_ADDED, newTVShow.getId(), newTVShow, 0, 0);
+            added[0] = newTVShow;
+            return new String[]{MutationLog.SHOW, formatTVShow(newTVShow)};
+        });
+        awaitDerivedUpdates();
         
         System.out.println("电视剧添加成功！");
-        displayTVShowDetails(newTVShow);
+        displayTVShowDetails(added[0]);
     }
     
     /**
@@ -859,25 +2203,20 @@ public class TVShowRecommendationSystem {
         displayTVShowDetails(tvShow);
         
         System.out.println("\n请输入新的信息（不修改的项按回车跳过）:");
+        // 先收集所有输入，最后在写锁内一次性修改，其他会话不会看到修改了一半的电视剧
         
         System.out.print("标题 (" + tvShow.getTitle() + "): ");
         String title = scanner.nextLine();
-        if (!title.isEmpty()) {
-            tvShow.setTitle(title);
-        }
         
         System.out.print("类型 (" + tvShow.getGenre() + "): ");
         String genre = scanner.nextLine();
-        if (!genre.isEmpty()) {
-            tvShow.setGenre(genre);
-        }
         
         System.out.print("上映年份 (" + tvShow.getYear() + "): ");
         String yearInput = scanner.nextLine();
+        Integer year = null;
         if (!yearInput.isEmpty()) {
             try {
-                int year = Integer.parseInt(yearInput);
-                tvShow.setYear(year);
+                year = Integer.parseInt(yearInput);
             } catch (NumberFormatException e) {
                 System.out.println("年份格式错误，保持原值！");
             }
@@ -885,25 +2224,43 @@ public class TVShowRecommendationSystem {
         
         System.out.print("导演 (" + tvShow.getDirector() + "): ");
         String director = scanner.nextLine();
-        if (!director.isEmpty()) {
-            tvShow.setDirector(director);
-        }
         
         System.out.print("演员 (" + String.join(",", tvShow.getActors()) + "): ");
         String actorsInput = scanner.nextLine();
-        if (!actorsInput.isEmpty()) {
-            List<String> actors = Arrays.asList(actorsInput.split(","));
-            tvShow.setActors(actors);
-        }
         
         System.out.print("剧情描述 (" + tvShow.getDescription() + "): ");
         String description = scanner.nextLine();
-        if (!description.isEmpty()) {
-            tvShow.setDescription(description);
-        }
         
-        // 保存数据
-        saveTVShows();
+        Integer newYear = year;
+        mutate(() -> {
+            // 输入期间可能已被其他会话删除
+            if (catalog.get(id) != tvShow) {
+                return null;
+            }
+            if (!title.isEmpty()) {
+                tvShow.setTitle(title);
+            }
+            if (!genre.isEmpty()) {
+                tvShow.setGenre(genre);
+            }
+            if (newYear != null) {
+                tvShow.setYear(newYear);
+            }
+            if (!director.isEmpty()) {
+                tvShow.setDirector(director);
+            }
+            if (!actorsInput.isEmpty()) {
+                tvShow.setActors(Arrays.asList(actorsInput.split(",")));
+            }
+            if (!description.isEmpty()) {
+                tvShow.setDescription(description);
+            }
+            
+            // 通知检索索引、相似电视剧表并记录变更
+            emit(DataEvent.Type.SHOW_UPDATED, id, tvShow, 0, 0);
+            return new String[]{MutationLog.SHOW, formatTVShow(tvShow)};
+        });
+        awaitDerivedUpdates();
         
         System.out.println("电视剧信息修改成功！");
         displayTVShowDetails(tvShow);
@@ -931,84 +2288,115 @@ public class TVShowRecommendationSystem {
         String confirm = scanner.nextLine();
         
         if (confirm.equalsIgnoreCase("Y")) {
+            System.out.println(removeTVShow(id) ? "电视剧删除成功！" : "该电视剧已被删除！");
+        } else {
+            System.out.println("删除操作已取消！");
+        }
+    }
+    
+    /**
+     * 删除电视剧及其评分
+     * @return 电视剧已被其他会话删除时返回false（不产生记录和事件）
+     */
+    private static boolean removeTVShow(String id) {
+        boolean[] removed = new boolean[1];
+        mutate(() -> {
+            if (!catalog.contains(id)) {
+                return null;
+            }
+            removed[0] = true;
+            
             // 删除电视剧
-            tvShows.remove(tvShow);
+            catalog.remove(id);
+            emit(DataEvent.Type.SHOW_REMOVED, id, null, 0, 0);
+            viewCounter.discard(id);
             
             // 删除相关评分
-            Iterator<Rating> iterator = ratings.iterator();
-            while (iterator.hasNext()) {
-                Rating rating = iterator.next();
-                if (rating.getTvShowId().equals(id)) {
-                    iterator.remove();
-                }
-            }
-            
-            // 保存数据
-            saveTVShows();
-            saveRatings();
+            ratingIndex.removeByTVShowId(id);
+            ratingsVersion++;
             
-            System.out.println("电视剧删除成功！");
-        } else {
-            System.out.println("删除操作已取消！");
-        }
+            // 记录变更
+            return new String[]{MutationLog.DELETE_SHOW, id};
+        });
+        return removed[0];
     }
     
     /**
      * 生成电视剧ID
      */
     private static String generateTVShowId() {
-        int maxId = 0;
-        for (TVShow tvShow : tvShows) {
-            try {
-                int id = Integer.parseInt(tvShow.getId().substring(2)); // 假设ID格式为"TV001"
-                if (id > maxId) {
-                    maxId = id;
-                }
-            } catch (NumberFormatException e) {
-                // 如果ID格式不是预期的，忽略
-            }
-        }
-        return String.format("TV%03d", maxId + 1);
+        return catalog.nextId();
     }
     
     /**
      * 根据ID查找电视剧
      */
     private static TVShow findTVShowById(String id) {
-        for (TVShow tvShow : tvShows) {
-            if (tvShow.getId().equals(id)) {
-                return tvShow;
-            }
-        }
-        return null;
+        return readData(() -> catalog.get(id));
     }
     
     /**
      * 根据标题查找电视剧
      */
     private static List<TVShow> findTVShowsByTitle(String title) {
-        List<TVShow> results = new ArrayList<>();
-        for (TVShow tvShow : tvShows) {
-            if (tvShow.getTitle().toLowerCase().contains(title.toLowerCase())) {
-                results.add(tvShow);
-            }
+        if (title.trim().isEmpty()) {
+            return readData(() -> new ArrayList<>(catalog.all()));
         }
-        return results;
+        return readData(() -> searchOrScan(title, SearchIndex.Field.TITLE, TVShow::getTitle));
     }
     
     /**
      * 根据类型查找电视剧
      */
     private static List<TVShow> findTVShowsByGenre(String genre) {
-        List<TVShow> results = new ArrayList<>();
-        for (TVShow tvShow : tvShows) {
-            if (tvShow.getGenre().toLowerCase().contains(genre.toLowerCase())) {
-                results.add(tvShow);
+        if (genre.trim().isEmpty()) {
+            return readData(() -> new ArrayList<>(catalog.all()));
+        }
+        return readData(() -> searchOrScan(genre, SearchIndex.Field.GENRE, TVShow::getGenre));
+    }
+    
+    /**
+     * 按关键词在所有字段中检索电视剧
+     * 优先返回包含全部关键词的结果，没有时返回包含任一关键词的结果
+     */
+    private static List<TVShow> searchTVShowsByKeywords(String keywords) {
+        EnumSet<SearchIndex.Field> fields = EnumSet.allOf(SearchIndex.Field.class);
+        return readData(() -> {
+            List<TVShow> results = searchCatalog(keywords, fields, true);
+            if (results.isEmpty()) {
+                results = searchCatalog(keywords, fields, false);
+            }
+            return results;
+        });
+    }
+    
+    /**
+     * 在单个字段中检索电视剧（调用方持有读锁）
+     * 检索不到时（例如查询的是词中间的一部分）退回到按子串逐个匹配
+     */
+    private static List<TVShow> searchOrScan(String query, SearchIndex.Field field,
+                                             Function<TVShow, String> value) {
+        List<TVShow> results = searchCatalog(query, EnumSet.of(field), true);
+        if (results.isEmpty()) {
+            String lowerQuery = query.toLowerCase();
+            for (TVShow tvShow : catalog.all()) {
+                if (value.apply(tvShow).toLowerCase().contains(lowerQuery)) {
+                    results.add(tvShow);
+                }
             }
         }
         return results;
     }
     
+    /**
+     * 检索电视剧（调用方持有读锁），去掉检索索引尚未移除的已删除电视剧
+     */
+    private static List<TVShow> searchCatalog(String query, EnumSet<SearchIndex.Field> fields, boolean requireAll) {
+        List<TVShow> results = readDerived(contentLock, () -> searchIndex.search(query, fields, requireAll));
+        results.removeIf(tvShow -> !catalog.contains(tvShow.getId()));
+        return results;
+    }
+    
     /**
      * 显示电视剧详细信息
      */
@@ -1019,9 +2407,39 @@ public class TVShowRecommendationSystem {
         System.out.println("上映年份: " + tvShow.getYear());
         System.out.println("导演: " + tvShow.getDirector());
         System.out.println("演员: " + String.join(", ", tvShow.getActors()));
-        System.out.println("评分: " + String.format("%.1f", tvShow.getRating()) + " (" + tvShow.getRatingCount() + "人评分)");
-        System.out.println("观看次数: " + tvShow.getViewCount());
+        RatingAggregate statistics = tvShow.getRatingStatistics();
+        System.out.println("评分: " + String.format("%.1f", statistics.getMean()) + " (" + statistics.getCount() + "人评分, 标准差 "
+                + String.format("%.2f", statistics.getStandardDeviation()) + ")");
+        StringBuilder distribution = new StringBuilder();
+        for (int stars = RatingAggregate.MAX_STARS; stars >= RatingAggregate.MIN_STARS; stars--) {
+            distribution.append(stars).append("星: ").append(statistics.getHistogramCount(stars))
+                    .append(stars > RatingAggregate.MIN_STARS ? ", " : "");
+        }
+        System.out.println("评分分布: " + distribution);
+        System.out.println("观看次数: " + viewCountOf(tvShow));
         System.out.println("剧情描述: " + tvShow.getDescription());
+        List<String> similar = similarTVShowTitles(tvShow.getId(), SIMILAR_SHOWS_DISPLAYED);
+        if (!similar.isEmpty()) {
+            System.out.println("相似电视剧: " + String.join(", ", similar));
+        }
+    }
+    
+    /**
+     * 与某部电视剧类型、导演、演员最相似的电视剧（标题及相似度）
+     */
+    private static List<String> similarTVShowTitles(String tvShowId, int limit) {
+        return readData(() -> {
+            List<String> titles = new ArrayList<>();
+            List<ContentSimilarity.Neighbor> neighbors = readDerived(contentLock,
+                    () -> contentSimilarity.similarTo(tvShowId, limit));
+            for (ContentSimilarity.Neighbor neighbor : neighbors) {
+                TVShow similar = catalog.get(neighbor.getTvShowId());
+                if (similar != null) {
+                    titles.add(similar.getTitle() + String.format("(%.2f)", neighbor.getScore()));
+                }
+            }
+            return titles;
+        });
     }
     
     /**
@@ -1033,6 +2451,7 @@ public class TVShowRecommendationSystem {
         System.out.println("2. 按标题查询");
         System.out.println("3. 按类型查询");
         System.out.println("4. 查看所有电视剧");
+        System.out.println("5. 按关键词搜索（标题、类型、导演、演员、剧情）");
         System.out.print("请选择查询方式: ");
         
         Scanner scanner = new Scanner(System.in);
@@ -1061,7 +2480,12 @@ public class TVShowRecommendationSystem {
                 results = findTVShowsByGenre(genre);
                 break;
             case 4:
-                results = tvShows;
+                results = readData(() -> new ArrayList<>(catalog.all()));
+                break;
+            case 5:
+                System.out.print("请输入关键词: ");
+                String keywords = scanner.nextLine();
+                results = searchTVShowsByKeywords(keywords);
                 break;
             default:
                 System.out.println("无效的选择！");
@@ -1094,8 +2518,7 @@ public class TVShowRecommendationSystem {
                         displayTVShowDetails(selected);
                         
                         // 增加观看次数
-                        selected.incrementViewCount();
-                        saveTVShows();
+                        recordView(selected);
                     } else {
                         System.out.println("无效的序号！");
                     }
@@ -1126,7 +2549,7 @@ public class TVShowRecommendationSystem {
         }
         
         // 检查用户是否已经评分过
-        Rating existingRating = findRatingByUserAndTVShow(currentUser.getUsername(), tvShowId);
+        Rating existingRating = findRatingByUserAndTVShow(currentUser().getUsername(), tvShowId);
         if (existingRating != null) {
             System.out.println("您已经对这部电视剧评分过了！");
             System.out.println("当前评分: " + existingRating.getScore() + "星");
@@ -1138,9 +2561,7 @@ public class TVShowRecommendationSystem {
             if (!modifyChoice.equalsIgnoreCase("Y")) {
                 return;
             }
-            
-            // 删除旧评分
-            ratings.remove(existingRating);
+            // 旧评分在提交新评分时被替换
         }
         
         // 输入新评分
@@ -1163,19 +2584,37 @@ public class TVShowRecommendationSystem {
         System.out.print("请输入评价: ");
         String comment = scanner.nextLine();
         
-        // 创建新评分
-        String ratingId = generateRatingId();
-        Rating newRating = new Rating(ratingId, tvShowId, currentUser.getUsername(), score, comment);
-        ratings.add(newRating);
-        
-        // 更新电视剧评分
-        tvShow.updateRating(score);
-        
-        // 保存数据
-        saveTVShows();
-        saveRatings();
-        
-        System.out.println("评分和评价提交成功！");
+        boolean submitted = submitRating(currentUser().getUsername(), tvShow, score, comment);
+        System.out.println(submitted ? "评分和评价提交成功！" : "该电视剧已被删除，评分未提交！");
+    }
+    
+    /**
+     * 提交评分（已评分过时替换旧评分）
+     * @return 电视剧在提交前已被删除时返回false
+     */
+    private static boolean submitRating(String username, TVShow tvShow, double score, String comment) {
+        String tvShowId = tvShow.getId();
+        boolean[] submitted = new boolean[1];
+        mutate(() -> {
+            // 输入期间可能已被其他会话删除
+            if (catalog.get(tvShowId) != tvShow) {
+                return null;
+            }
+            // 创建新评分（ID在写锁内生成）
+            Rating newRating = new Rating(generateRatingId(), tvShowId, username, score, comment);
+            Rating previous = ratingIndex.add(newRating);
+            ratingsVersion++;
+            
+            // 更新电视剧评分（修改评分时替换旧评分，不重复计数）
+            applyRatingChange(tvShow, previous, score);
+            // 排行榜、趋势榜和隐因子检索索引由订阅者更新
+            emit(DataEvent.Type.RATED, tvShowId, tvShow, RatingColumns.toEpochMillis(newRating.getTimestampMillis()), 0);
+            submitted[0] = true;
+            
+            // 记录变更
+            return new String[]{MutationLog.RATE, formatRating(newRating)};
+        });
+        return submitted[0];
     }
     
     /**
@@ -1219,60 +2658,35 @@ public class TVShowRecommendationSystem {
      * 根据电视剧ID查找评分
      */
     private static List<Rating> findRatingsByTVShowId(String tvShowId) {
-        List<Rating> results = new ArrayList<>();
-        for (Rating rating : ratings) {
-            if (rating.getTvShowId().equals(tvShowId)) {
-                results.add(rating);
-            }
-        }
-        return results;
+        return readData(() -> ratingIndex.findByTVShowId(tvShowId));
     }
     
     /**
      * 根据用户名查找评分
      */
     private static List<Rating> findRatingsByUsername(String username) {
-        List<Rating> results = new ArrayList<>();
-        for (Rating rating : ratings) {
-            if (rating.getUsername().equals(username)) {
-                results.add(rating);
-            }
-        }
-        return results;
+        return readData(() -> ratingIndex.findByUsername(username));
     }
     
     /**
      * 根据用户和电视剧ID查找评分
      */
     private static Rating findRatingByUserAndTVShow(String username, String tvShowId) {
-        for (Rating rating : ratings) {
-            if (rating.getUsername().equals(username) && rating.getTvShowId().equals(tvShowId)) {
-                return rating;
-            }
-        }
-        return null;
+        return readData(() -> ratingIndex.findByUserAndTVShow(username, tvShowId));
     }
     
     /**
      * 生成评分ID
      */
     private static String generateRatingId() {
-        int maxId = 0;
-        for (Rating rating : ratings) {
-            try {
-                int id = Integer.parseInt(rating.getId().substring(2)); // 假设ID格式为"RT001"
-                if (id > maxId) {
-                    maxId = id;
-                }
-            } catch (NumberFormatException e) {
-                // 如果ID格式不是预期的，忽略
-            }
-        }
-        return String.format("RT%03d", maxId + 1);
+        return ratingIndex.nextId();
     }
     
     /**
-     * 设置用户喜好并获取推荐 - 修改后的版本（不参考本地数据库）
+     * 设置用户喜好并获取推荐
+     * 先在本地根据喜好（全文检索）、评分记录（协同过滤）和榜单筛选出候选电视剧；
+     * 配置了API密钥时可请求DeepSeek只从这些候选中挑选并说明理由，
+     * 远程请求超时或失败时直接显示本地排序结果
      */
     private static void getRecommendations() {
         System.out.println("\n========== 电视剧推荐 ==========");
@@ -1285,128 +2699,395 @@ public class TVShowRecommendationSystem {
         String preferences = scanner.nextLine();
         
         // 保存用户喜好
-        currentUser.setPreferences(preferences);
+        currentUser().setPreferences(preferences);
         saveUsers();
         
-        System.out.println("\n正在根据您的喜好生成推荐...");
+        List<TVShow> candidates = precomputedCandidates(currentUser().getUsername(), preferences);
+        if (candidates == null) {
+            System.out.println("\n正在根据您的喜好和评分记录生成推荐...");
+            candidates = recommendLocally(currentUser().getUsername(), preferences, CANDIDATE_COUNT);
+        }
+        if (candidates.isEmpty()) {
+            System.out.println("暂无可推荐的电视剧");
+            return;
+        }
+        
+        // 远程推荐作为可选的补充
+        if (isDeepSeekConfigured()) {
+            System.out.print("是否请求DeepSeek从候选电视剧中为您挑选并说明推荐理由？(Y/N): ");
+            if (scanner.nextLine().equalsIgnoreCase("Y")
+                    && recommendWithDeepSeek(currentUser().getUsername(), preferences, candidates)) {
+                return;
+            }
+        }
         
+        System.out.println("\n为您推荐以下电视剧：");
+        System.out.println("=====================================");
+        int limit = Math.min(RECOMMENDATION_COUNT, candidates.size());
+        for (int i = 0; i < limit; i++) {
+            TVShow tvShow = candidates.get(i);
+            System.out.println((i + 1) + ". " + tvShow.getTitle() + 
+                             " (" + tvShow.getGenre() + ", 评分: " + String.format("%.1f", tvShow.getRating()) + ")");
+        }
+    }
+    
+    /**
+     * 读取批处理预先计算的候选
+     * @return 用户的喜好和评分在计算后没有变化、且结果未过期时返回候选（去掉已删除或已评分的电视剧），
+     *         否则返回null
+     */
+    private static List<TVShow> precomputedCandidates(String username, String preferences) {
+        List<Rating> userRatings = findRatingsByUsername(username);
+        RecommendationStore.Entry entry = precomputedRecommendations.getFresh(username,
+                RecommendationStore.fingerprint(preferences, userRatings));
+        if (entry == null) {
+            return null;
+        }
+        Set<String> rated = new HashSet<>();
+        for (Rating rating : userRatings) {
+            rated.add(rating.getTvShowId());
+        }
+        List<TVShow> candidates = new ArrayList<>();
+        for (String id : entry.getTvShowIds()) {
+            TVShow tvShow = findTVShowById(id);
+            if (tvShow != null && !rated.contains(id)) {
+                candidates.add(tvShow);
+            }
+        }
+        // 剩余的候选太少时重新计算
+        return candidates.size() < RECOMMENDATION_COUNT ? null : candidates;
+    }
+    
+    /**
+     * 请求DeepSeek从候选中挑选推荐，流式显示
+     * @return 是否成功；超时或失败时返回false，由调用方显示本地排序结果
+     */
+    private static boolean recommendWithDeepSeek(String username, String preferences, List<TVShow> candidates) {
+        System.out.println("\n基于您的喜好，DeepSeek为您推荐以下电视剧：");
+        System.out.println("=====================================");
+        // 放弃等待后取消请求（中止连接并归还客户端的许可），取消前已在途的片段不再输出
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        List<String> candidateIds = new ArrayList<>(candidates.size());
+        for (TVShow tvShow : candidates) {
+            candidateIds.add(tvShow.getId());
+        }
+        // 流式输出：内容边生成边显示
+        CompletableFuture<String> response = callDeepSeekAPI(buildGroundedPrompt(username, preferences, candidates),
+                RecommendationCache.key(preferences, candidateIds), token -> {
+                    if (!abandoned.get()) {
+                        System.out.print(token);
+                        System.out.flush();
+                    }
+                });
         try {
-            // 调用DeepSeek API获取推荐（不参考本地数据库）
-            String response = callDeepSeekAPI(preferences);
-            
-            // 直接显示API返回的推荐结果
-            System.out.println("\n基于您的喜好，为您推荐以下电视剧：");
-            System.out.println("=====================================");
-            System.out.println(response);
+            response.get(DEEPSEEK_DEADLINE_SECONDS, TimeUnit.SECONDS);
+            System.out.println();
+            return true;
             
-        } catch (Exception e) {
-            System.out.println("获取推荐失败: " + e.getMessage());
-            System.out.println("请检查API密钥是否配置正确或网络连接是否正常");
+        } catch (InterruptedException e) {
+            abandoned.set(true);
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            abandoned.set(true);
+            response.cancel(true);
+            System.out.println("\n获取推荐超时，改为显示本地推荐结果");
+        } catch (ExecutionException e) {
+            abandoned.set(true);
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof HttpTimeoutException) {
+                System.out.println("\n获取推荐超时，改为显示本地推荐结果");
+            } else {
+                System.out.println("\n获取推荐失败: " + cause.getMessage());
+                System.out.println("请检查API密钥是否配置正确或网络连接是否正常，以下为本地推荐结果");
+            }
         }
+        return false;
     }
     
     /**
-     * 调用DeepSeek API - 修改后的版本（不参考本地数据库）
+     * 构建只包含本地候选电视剧的提示
      */
-    private static String callDeepSeekAPI(String userPreferences) throws IOException {
-        // 检查API密钥
-        if (DEEPSEEK_API_KEY.isEmpty() || DEEPSEEK_API_KEY.equals("sk-your-api-key-here")) {
-            throw new IOException("请先配置DeepSeek API密钥");
+    private static String buildGroundedPrompt(String username, String preferences, List<TVShow> candidates) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("用户喜好：").append(preferences).append("\n");
+        
+        List<Rating> userRatings = findRatingsByUsername(username);
+        if (!userRatings.isEmpty()) {
+            prompt.append("用户评价过的电视剧：");
+            int count = 0;
+            for (Rating rating : userRatings) {
+                TVShow tvShow = findTVShowById(rating.getTvShowId());
+                if (tvShow == null) continue;
+                if (count++ > 0) prompt.append("；");
+                prompt.append(tvShow.getTitle()).append("（").append(String.format("%.1f", rating.getScore())).append("分）");
+                if (count >= PROMPT_HISTORY_LIMIT) break;
+            }
+            prompt.append("\n");
         }
         
-        // 构建完整的提示信息（不包含本地数据库内容）
-        String prompt = "用户喜好：" + userPreferences + 
-                       "\n\n请根据用户的喜好推荐3-5部合适的电视剧，" +
-                       "每部电视剧请提供名称和详细的推荐原因（说明为什么这部剧符合用户喜好），" +
-                       "推荐的电视剧可以是任意地区、任意年份的作品，" +
-                       "请确保推荐内容丰富、有针对性，并且格式清晰易读。";
-        
-        // 构建JSON请求体
-        String requestBody = buildRequestBody(prompt);
-        
-        URL url = new URL(DEEPSEEK_API_URL);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        // 设置请求方法和头部
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Authorization", "Bearer " + DEEPSEEK_API_KEY);
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setDoOutput(true);
-        connection.setConnectTimeout(3000000);
-        connection.setReadTimeout(3000000);
-        
-        // 发送请求
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = requestBody.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+        prompt.append("\n候选电视剧：\n");
+        for (TVShow tvShow : candidates) {
+            prompt.append(tvShow.toRecommendationString()).append("\n");
         }
+        prompt.append("\n请只从以上候选电视剧中挑选3-5部最符合用户喜好的推荐给用户，" +
+                      "每部请给出名称和简短的推荐原因（说明为什么符合用户喜好），格式清晰易读。");
+        return prompt.toString();
+    }
+    
+    /**
+     * 本地推荐（混合召回）
+     * 四路候选按倒数排名融合（RRF）：喜好文本的全文检索结果、评分记录的协同过滤结果、隐因子模型的预测评分、
+     * 高分榜、热播榜和趋势榜，排除用户已评分的电视剧。没有喜好和评分记录时即为榜单排序（趋势榜优先）
+     */
+    private static List<TVShow> recommendLocally(String username, String preferences, int k) {
+        return readData(() -> rankCandidates(username, preferences, k));
+    }
+    
+    private static List<TVShow> rankCandidates(String username, String preferences, int k) {
+        refreshModels();
         
-        // 检查响应代码
-        int responseCode = connection.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP响应代码: " + responseCode + " - " + connection.getResponseMessage());
+        List<Rating> userRatings = findRatingsByUsername(username);
+        Set<String> excluded = new HashSet<>();
+        for (Rating rating : userRatings) {
+            excluded.add(rating.getTvShowId());
         }
         
-        // 读取响应
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(
-            new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine);
+        Map<String, Double> fused = new HashMap<>();
+        // 喜好检索：只取前若干名，避免常见字词匹配到大量无关电视剧
+        if (preferences != null && !preferences.trim().isEmpty()) {
+            List<TVShow> matched = readDerived(contentLock,
+                    () -> searchIndex.search(preferences, EnumSet.allOf(SearchIndex.Field.class), false));
+            fuse(fused, excluded, matched.subList(0, Math.min(k * 2, matched.size())), 1.0);
+        }
+        List<TVShow> collaborative = new ArrayList<>();
+        for (ItemCFRecommender.Recommendation recommendation : itemCF.recommend(userRatings, k * 2, catalog::contains)) {
+            TVShow tvShow = catalog.get(recommendation.getTvShowId());
+            if (tvShow != null) {
+                collaborative.add(tvShow);
             }
         }
+        fuse(fused, excluded, collaborative, 1.0);
+        List<TVShow> latent = new ArrayList<>();
+        List<ItemCFRecommender.Recommendation> predicted = readDerived(latentFactorLock,
+                () -> latentFactors.recommend(userRatings, k * 2, catalog::contains));
+        for (ItemCFRecommender.Recommendation recommendation : predicted) {
+            latent.add(catalog.get(recommendation.getTvShowId()));
+        }
+        fuse(fused, excluded, latent, 1.0);
+        // 榜单权重较低，主要用于冷启动和补足；没有评分记录的新用户以近1天的趋势榜为主
+        int boardSize = k + excluded.size();
+        List<List<TVShow>> boards = readDerived(rankingLock, () -> Arrays.asList(averageRatingBoard.top(boardSize),
+                viewCountBoard.top(boardSize), trending.board(TrendingCounters.Window.DAY).top(boardSize)));
+        fuse(fused, excluded, boards.get(0), 0.5);
+        fuse(fused, excluded, boards.get(1), 0.5);
+        fuse(fused, excluded, boards.get(2), userRatings.isEmpty() ? 1.0 : 0.5);
         
-        // 解析响应内容
-        return extractContentFromResponse(response.toString());
+        List<TVShow> results = new ArrayList<>();
+        for (String id : fused.keySet()) {
+            results.add(catalog.get(id));
+        }
+        results.sort((a, b) -> Double.compare(fused.get(b.getId()), fused.get(a.getId())));
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
     }
     
     /**
-     * 手动构建JSON请求体
+     * 在后台重建过期的推荐模型（协同过滤、隐因子）
      */
-    private static String buildRequestBody(String prompt) {
-        // 转义prompt中的特殊字符
-        String escapedPrompt = prompt.replace("\\", "\\\\")
-                                   .replace("\"", "\\\"")
-                                   .replace("\n", "\\n")
-                                   .replace("\r", "\\r")
-                                   .replace("\t", "\\t");
-        
-        return "{" +
-               "\"model\": \"deepseek-chat\"," +
-               "\"messages\": [{" +
-               "\"role\": \"user\"," +
-               "\"content\": \"" + escapedPrompt + "\"" +
-               "}]," +
-               "\"max_tokens\": 1000," +
-               "\"temperature\": 0.7" +
-               "}";
+    private static void refreshModels() {
+        refreshItemCF();
+        refreshLatentFactors();
     }
     
     /**
-     * 从API响应中提取内容
+     * 评分数据变化后在后台重建协同过滤模型，不阻塞调用方：在读锁内复制评分，在锁外计算相似度，
+     * 完成后整体替换模型。同时最多排队一次重建，且距上次重建不足ITEM_CF_REBUILD_INTERVAL_MS时不重建
      */
-    private static String extractContentFromResponse(String response) {
-        // 简单的字符串解析来提取content字段
-        int contentIndex = response.indexOf("\"content\":\"");
-        if (contentIndex == -1) {
-            throw new RuntimeException("无法在API响应中找到内容");
+    private static void refreshItemCF() {
+        if (itemCF.getBuiltVersion() == ratingsVersion
+                || System.currentTimeMillis() - itemCFRebuiltAt < ITEM_CF_REBUILD_INTERVAL_MS
+                || !itemCFRebuildQueued.compareAndSet(false, true)) {
+            return;
         }
-        
-        contentIndex += 11; // 跳过 "\"content\":\""
-        int contentEnd = response.indexOf("\"", contentIndex);
-        
-        if (contentEnd == -1) {
-            throw new RuntimeException("API响应格式不正确");
+        try {
+            modelBuilder.execute(() -> {
+                try {
+                    long[] version = new long[1];
+                    ItemCFRecommender.RatingMatrix matrix = readData(() -> {
+                        version[0] = ratingsVersion;
+                        return ItemCFRecommender.RatingMatrix.from(ratingIndex, catalog::contains);
+                    });
+                    itemCF.build(matrix, version[0]);
+                } catch (RuntimeException e) {
+                    System.out.println("重建协同过滤模型失败: " + e);
+                } finally {
+                    itemCFRebuiltAt = System.currentTimeMillis();
+                    itemCFRebuildQueued.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            itemCFRebuildQueued.set(false);
+        }
+    }
+    
+    /**
+     * 等待已排队的模型构建完成（构建线程按提交顺序执行）
+     */
+    private static void awaitModelBuilds() {
+        try {
+            modelBuilder.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 空任务不会失败
+        }
+    }
+    
+    /**
+     * 隐因子模型尚未训练或加载、或评分累计变化较多时在后台重新训练，不阻塞调用方：
+     * 在读锁内复制训练数据，在锁外训练，在检索索引的写锁内替换模型（并补上训练期间的目录变化），
+     * 然后在I/O执行器上保存检查点。同时最多排队一次训练
+     */
+    private static void refreshLatentFactors() {
+        if (!latentFactorsStale() || !latentFactorsTrainQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            modelBuilder.execute(() -> {
+                try {
+                    long[] version = new long[1];
+                    MatrixFactorization.TrainingSet data = readData(() -> {
+                        version[0] = ratingsVersion;
+                        return MatrixFactorization.TrainingSet.from(ratingIndex, catalog::contains);
+                    });
+                    MatrixFactorization.Model trained = latentFactors.prepare(data, version[0]);
+                    dataLock.readLock().lock();
+                    try {
+                        List<String> catalogIds = catalogIds();
+                        latentFactorLock.writeLock().lock();
+                        try {
+                            latentFactors.publish(trained, catalogIds, catalog::contains, ratingIndex::findByTVShowId);
+                        } finally {
+                            latentFactorLock.writeLock().unlock();
+                        }
+                    } finally {
+                        dataLock.readLock().unlock();
+                    }
+                    saveLatentFactors();
+                } catch (RuntimeException e) {
+                    System.out.println("训练隐因子模型失败: " + e);
+                } finally {
+                    latentFactorsTrainQueued.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            latentFactorsTrainQueued.set(false);
+        }
+    }
+    
+    /**
+     * 在I/O执行器上保存隐因子模型检查点
+     */
+    private static void saveLatentFactors() {
+        saveAsync(latentFactorsSaveQueued, () -> readDerived(latentFactorLock, () -> {
+            // 检索索引随目录变更而更新，保存时持有读锁
+            try {
+                latentFactors.save(LATENT_FACTOR_MODEL_FILE);
+            } catch (IOException e) {
+                System.out.println("保存隐因子模型失败: " + e.getMessage());
+            }
+            return null;
+        }));
+    }
+    
+    /**
+     * 目录中所有电视剧的ID（调用方持有读锁）
+     */
+    private static List<String> catalogIds() {
+        List<String> ids = new ArrayList<>(catalog.size());
+        for (TVShow tvShow : catalog.all()) {
+            ids.add(tvShow.getId());
+        }
+        return ids;
+    }
+    
+    private static boolean latentFactorsStale() {
+        long builtVersion = latentFactors.getBuiltVersion();
+        return builtVersion < 0 || ratingsVersion - builtVersion >= LATENT_FACTOR_RETRAIN_CHANGES;
+    }
+    
+    /**
+     * 加载隐因子模型检查点（不存在或损坏时在首次推荐时重新训练）
+     */
+    private static void loadLatentFactors() {
+        if (!new File(LATENT_FACTOR_MODEL_FILE).isFile()) {
+            return;
+        }
+        try {
+            latentFactors.load(LATENT_FACTOR_MODEL_FILE, 0);
+        } catch (IOException e) {
+            System.out.println("加载隐因子模型失败，将重新训练: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 把一路候选按排名计入融合分数：weight / (RRF_K + 名次)
+     */
+    private static void fuse(Map<String, Double> fused, Set<String> excluded, List<TVShow> ranked, double weight) {
+        int rank = 0;
+        for (TVShow tvShow : ranked) {
+            // 派生数据结构稍晚于目录更新，可能还包含刚删除的电视剧
+            if (excluded.contains(tvShow.getId()) || !catalog.contains(tvShow.getId())) continue;
+            rank++;
+            fused.merge(tvShow.getId(), weight / (RRF_K + rank), Double::sum);
+        }
+    }
+    
+    /**
+     * 是否已配置DeepSeek API密钥
+     */
+    private static boolean isDeepSeekConfigured() {
+        return !DEEPSEEK_API_KEY.isEmpty() && !DEEPSEEK_API_KEY.equals("sk-your-api-key-here");
+    }
+    
+    /**
+     * 调用DeepSeek API
+     * 请求异步发送，不阻塞调用线程；以流式模式接收，每收到一段内容即回调onToken。
+     * 命中缓存时把缓存的结果作为一段内容回调，并返回已完成的结果；取消返回的future会中止进行中的请求
+     * @param cacheKey 推荐结果的缓存键（由喜好和候选电视剧生成，见RecommendationCache.key）
+     */
+    private static CompletableFuture<String> callDeepSeekAPI(String prompt, String cacheKey, Consumer<String> onToken) {
+        // 检查API密钥
+        if (!isDeepSeekConfigured()) {
+            return CompletableFuture.failedFuture(new IOException("请先配置DeepSeek API密钥"));
         }
         
-        String content = response.substring(contentIndex, contentEnd);
+        // 喜好相同（或仅大小写、标点、空白不同）且候选相同时直接使用缓存的结果
+        String cached = recommendationCache.get(cacheKey);
+        if (cached != null) {
+            System.out.println("（使用缓存的推荐结果，" + recommendationCache.summary() + "）");
+            onToken.accept(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
         
-        // 处理转义字符
-        return content.replace("\\n", "\n")
-                     .replace("\\\"", "\"")
-                     .replace("\\\\", "\\");
+        // 返回客户端的future本身，调用方取消时能中止请求；
+        // 缓存只在内存中更新，写入文件合并后在I/O执行器上进行
+        CompletableFuture<String> response = deepSeekClient().stream(prompt, onToken);
+        response.thenAccept(content -> {
+            recommendationCache.put(cacheKey, content);
+            saveRecommendationCache();
+        });
+        return response;
+    }
+    
+    /**
+     * DeepSeek客户端（首次使用时创建）
+     */
+    private static synchronized DeepSeekClient deepSeekClient() {
+        if (deepSeekClient == null) {
+            deepSeekClient = new DeepSeekClient(DEEPSEEK_API_URL, DEEPSEEK_API_KEY);
+        }
+        return deepSeekClient;
     }
     
     /**
@@ -1448,7 +3129,7 @@ public class TVShowRecommendationSystem {
                 showPostLoginMenu();
                 break;
             case 6:
-                currentUser = null;
+                session().setUser(null);
                 System.out.println("已退出登录！");
                 break;
             default:
@@ -0,0 +1,145 @@
+import java.util.*;
+
+/**
+ * 按时间衰减的热度计数（趋势榜）
+ * 每次观看或评分计入一个权重，权重随时间指数衰减，按衰减的快慢分为近1小时、近1天、近7天三个窗口
+ * （平均寿命分别为1小时、1天、7天）。采用前向衰减：记录时按 权重·e^((t-基准时刻)/τ) 累加，
+ * 读取时再乘以 e^(-(当前时刻-基准时刻)/τ)，每个事件O(1)，不需要定时把所有计数衰减一遍；
+ * 所有电视剧在同一时刻乘以同一个因子，排名与读取时刻无关，因此可以直接用增量维护的排行榜。
+ * 累加值接近浮点上限前把基准时刻移到当前并整体换算（很少发生，O(n)）。
+ * 不是线程安全的，由调用方加锁（与排行榜相同）
+ */
+class TrendingCounters {
+    /**
+     * 衰减窗口
+     */
+    enum Window {
+        HOUR("近1小时", 3_600_000L),
+        DAY("近1天", 86_400_000L),
+        WEEK("近7天", 604_800_000L);
+        
+        final String label;
+        final double meanLifetimeMillis;
+        
+        Window(String label, long meanLifetimeMillis) {
+            this.label = label;
+            this.meanLifetimeMillis = meanLifetimeMillis;
+        }
+    }
+    
+    // 一次观看、一条评分计入的权重
+    static final double VIEW_WEIGHT = 1.0;
+    static final double RATING_WEIGHT = 5.0;
+    // 早于该时长的事件对最慢的窗口的贡献已不足2%，不再保留
+    static final long RETENTION_MILLIS = 4 * 604_800_000L;
+    // 前向累加值的指数超过该值时换算到新的基准时刻（e^600仍远小于double的上限）
+    private static final double MAX_EXPONENT = 600.0;
+    
+    private final EnumMap<Window, Map<String, Double>> forwardScores = new EnumMap<>(Window.class);
+    private final EnumMap<Window, Leaderboard> boards = new EnumMap<>(Window.class);
+    private final Map<String, TVShowRecommendationSystem.TVShow> tvShows = new HashMap<>();
+    private long landmarkMillis;
+    
+    public TrendingCounters(long landmarkMillis) {
+        this.landmarkMillis = landmarkMillis;
+        for (Window window : Window.values()) {
+            Map<String, Double> scores = new HashMap<>();
+            forwardScores.put(window, scores);
+            boards.put(window, new Leaderboard("趋势榜（" + window.label + "）",
+                    tvShow -> scores.getOrDefault(tvShow.getId(), 0.0),
+                    tvShow -> scores.getOrDefault(tvShow.getId(), 0.0) > 0));
+        }
+    }
+    
+    /**
+     * 记录一次事件（观看、评分）并更新各窗口的趋势榜
+     * @param timeMillis 事件发生时刻
+     * @param weight 权重（例如观看次数×VIEW_WEIGHT）
+     */
+    public void record(TVShowRecommendationSystem.TVShow tvShow, long timeMillis, double weight) {
+        accumulate(tvShow, timeMillis, weight);
+        updateBoards(tvShow);
+    }
+    
+    /**
+     * 按当前计数更新某部电视剧在各窗口趋势榜中的位置（成批累加后每部电视剧只需更新一次）
+     */
+    public void updateBoards(TVShowRecommendationSystem.TVShow tvShow) {
+        for (Window window : Window.values()) {
+            boards.get(window).update(tvShow);
+        }
+    }
+    
+    /**
+     * 只累加计数，不更新趋势榜（批量加载历史事件时使用，加载完后调用rebuildBoards）
+     */
+    public void accumulate(TVShowRecommendationSystem.TVShow tvShow, long timeMillis, double weight) {
+        if (timeMillis - landmarkMillis > Window.HOUR.meanLifetimeMillis * MAX_EXPONENT) {
+            moveLandmark(timeMillis);
+        }
+        String id = tvShow.getId();
+        tvShows.put(id, tvShow);
+        for (Window window : Window.values()) {
+            double forward = weight * Math.exp((timeMillis - landmarkMillis) / window.meanLifetimeMillis);
+            forwardScores.get(window).merge(id, forward, Double::sum);
+        }
+    }
+    
+    /**
+     * 清空所有计数和趋势榜（重新计算前调用）
+     */
+    public void clear() {
+        tvShows.clear();
+        for (Window window : Window.values()) {
+            forwardScores.get(window).clear();
+            boards.get(window).rebuild(Collections.emptyList());
+        }
+    }
+    
+    /**
+     * 电视剧删除后移除其计数
+     */
+    public void remove(String tvShowId) {
+        tvShows.remove(tvShowId);
+        for (Window window : Window.values()) {
+            forwardScores.get(window).remove(tvShowId);
+            boards.get(window).remove(tvShowId);
+        }
+    }
+    
+    /**
+     * 某个时刻的热度（衰减后的加权事件数）
+     */
+    public double score(Window window, String tvShowId, long nowMillis) {
+        double forward = forwardScores.get(window).getOrDefault(tvShowId, 0.0);
+        return forward * Math.exp(-(nowMillis - landmarkMillis) / window.meanLifetimeMillis);
+    }
+    
+    /**
+     * 某个窗口的趋势榜
+     */
+    public Leaderboard board(Window window) {
+        return boards.get(window);
+    }
+    
+    /**
+     * 把基准时刻移到newLandmark，所有累加值乘以相应的衰减因子，然后重建趋势榜
+     */
+    private void moveLandmark(long newLandmark) {
+        for (Window window : Window.values()) {
+            double factor = Math.exp(-(newLandmark - landmarkMillis) / window.meanLifetimeMillis);
+            forwardScores.get(window).replaceAll((id, forward) -> forward * factor);
+        }
+        landmarkMillis = newLandmark;
+        rebuildBoards();
+    }
+    
+    /**
+     * 按当前计数重建各窗口的趋势榜
+     */
+    public void rebuildBoards() {
+        for (Window window : Window.values()) {
+            boards.get(window).rebuild(tvShows.values());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 观看计数的并发基准测试工具
+ * 多个观看者线程在给定时间内不停地记录观看，比较两种做法的吞吐量：
+ * 原来的每次观看取写锁加一并追加一条VIEW日志记录（等待落盘），
+ * 与ViewCounter的分段计数器（后台按批汇总，每部电视剧一条VIEWS记录）；
+ * 结束后核对计入的观看次数以及从变更日志重放得到的次数与实际记录的次数一致
+ *
+ * 用法：java ViewBenchmark [观看者线程数] [每种做法的计时秒数] [电视剧数]
+ * 例如：java ViewBenchmark 64 5 200
+ */
+class ViewBenchmark {
+    private static final int DEFAULT_VIEWERS = 64;
+    private static final double DEFAULT_SECONDS = 5;
+    private static final int DEFAULT_TV_SHOWS = 200;
+    // 与主程序相同的汇总阈值和间隔
+    private static final long FLUSH_THRESHOLD = 1000;
+    private static final long FLUSH_INTERVAL_MS = 5000;
+    
+    public static void main(String[] args) throws Exception {
+        int viewers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VIEWERS;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_SECONDS;
+        int tvShowCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TV_SHOWS;
+        System.out.println(String.format("观看者线程: %d, 电视剧: %d, 每种做法计时 %.1f 秒, CPU: %d",
+                viewers, tvShowCount, seconds, Runtime.getRuntime().availableProcessors()));
+        
+        Path directory = Files.createTempDirectory("view-benchmark");
+        try {
+            run("逐次加锁并写日志", directory.resolve("per-view.log"), viewers, seconds, tvShowCount, false);
+            run("分段计数器批量汇总", directory.resolve("striped.log"), viewers, seconds, tvShowCount, true);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+    
+    /**
+     * 与主程序相同的数据结构：数据读写锁保护的观看次数，加上组提交的变更日志
+     */
+    private static final class Store {
+        final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+        final Map<String, Long> viewCounts = new HashMap<>();
+        final MutationLog log;
+        
+        Store(Path logFile, List<String> tvShowIds) throws IOException {
+            for (String tvShowId : tvShowIds) {
+                viewCounts.put(tvShowId, 0L);
+            }
+            log = new MutationLog(logFile.toString(), Integer.MAX_VALUE, checkpoint -> { });
+            log.open();
+        }
+        
+        /**
+         * 原来的做法：写锁内加一并追加一条记录，释放写锁后等待落盘
+         */
+        void recordView(String tvShowId) {
+            long seq;
+            dataLock.writeLock().lock();
+            try {
+                viewCounts.merge(tvShowId, 1L, Long::sum);
+                seq = log.enqueue(MutationLog.VIEW, tvShowId);
+            } finally {
+                dataLock.writeLock().unlock();
+            }
+            log.awaitDurable(seq);
+        }
+        
+        /**
+         * ViewCounter的汇总器（与主程序的applyViews相同：一次写锁、每部电视剧一条记录、只等待一次落盘）
+         */
+        void applyViews(Map<String, Long> deltas) {
+            long seq = -1;
+            dataLock.writeLock().lock();
+            try {
+                for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                    viewCounts.merge(entry.getKey(), entry.getValue(), Long::sum);
+                    seq = log.enqueue(MutationLog.VIEWS, entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            } finally {
+                dataLock.writeLock().unlock();
+            }
+            log.awaitDurable(seq);
+        }
+        
+        long total() {
+            dataLock.readLock().lock();
+            try {
+                long total = 0;
+                for (long count : viewCounts.values()) {
+                    total += count;
+                }
+                return total;
+            } finally {
+                dataLock.readLock().unlock();
+            }
+        }
+    }
+    
+    private static void run(String name, Path logFile, int viewers, double seconds, int tvShowCount,
+                            boolean striped) throws Exception {
+        List<String> tvShowIds = new ArrayList<>();
+        for (int i = 0; i < tvShowCount; i++) {
+            tvShowIds.add("TV" + i);
+        }
+        Store store = new Store(logFile, tvShowIds);
+        ViewCounter counter = new ViewCounter(FLUSH_THRESHOLD, FLUSH_INTERVAL_MS, store::applyViews);
+        counter.start();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(viewers);
+        CountDownLatch ready = new CountDownLatch(1);
+        AtomicLong recorded = new AtomicLong();
+        long[] deadline = new long[1];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int v = 0; v < viewers; v++) {
+            int viewer = v;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(viewer);
+                long views = 0;
+                ready.await();
+                while (System.nanoTime() < deadline[0]) {
+                    // 热门电视剧更常被观看
+                    String tvShowId = tvShowIds.get((int) (tvShowCount * Math.pow(random.nextDouble(), 3)));
+                    if (striped) {
+                        counter.record(tvShowId);
+                    } else {
+                        store.recordView(tvShowId);
+                    }
+                    views++;
+                }
+                recorded.addAndGet(views);
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        deadline[0] = start + (long) (seconds * 1e9);
+        ready.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        // 最后一次汇总计入总耗时之外单独报告
+        long flushStart = System.nanoTime();
+        counter.close();
+        double flushMillis = (System.nanoTime() - flushStart) / 1e6;
+        
+        // 用另一个实例重放日志文件（不打开追加），核对落盘的观看次数
+        long[] replayed = new long[1];
+        int records = new MutationLog(logFile.toString(), Integer.MAX_VALUE, checkpoint -> { })
+                .replay(0, (sequence, record) -> {
+                    if (record[0].equals(MutationLog.VIEW)) {
+                        replayed[0]++;
+                    } else if (record[0].equals(MutationLog.VIEWS)) {
+                        replayed[0] += Long.parseLong(record[2]);
+                    }
+                });
+        long logBytes = Files.size(logFile);
+        store.log.close();
+        
+        System.out.println(String.format("%s: %d 次观看，%.0f 次/秒；日志 %d 条记录、%.1f MB；最后一次汇总 %.1f 毫秒",
+                name, recorded.get(), recorded.get() / elapsed, records, logBytes / 1e6, flushMillis));
+        if (store.total() != recorded.get() || replayed[0] != recorded.get()) {
+            System.out.println("  不一致: 计入 " + store.total() + " 次，日志重放 " + replayed[0] + " 次，实际记录 "
+                    + recorded.get() + " 次");
+        }
+    }
+}
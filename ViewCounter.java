@@ -0,0 +1,160 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 观看次数的分段计数器
+ * 每部电视剧一个LongAdder，大量会话同时观看时各线程累加到不同的分段，互不争用，
+ * 记录一次观看不加锁、不写文件；后台线程定期（或累计的未汇总次数达到阈值时）
+ * 把各电视剧的增量一次性交给汇总器，由汇总器写入电视剧、排行榜和变更日志
+ */
+class ViewCounter implements AutoCloseable {
+    /**
+     * 汇总器：把一批增量（电视剧ID -> 新增观看次数）写入数据
+     */
+    interface Flusher {
+        void flush(Map<String, Long> deltas);
+    }
+    
+    private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+    private final LongAdder pendingTotal = new LongAdder();
+    private final long flushThreshold;
+    private final long flushIntervalMillis;
+    private final Flusher flusher;
+    // 串行化汇总（定时汇总、阈值触发和退出时的汇总可能同时发生）
+    private final Object flushLock = new Object();
+    // 已提交但尚未开始的阈值汇总任务，避免重复提交
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * 构造函数
+     * @param flushThreshold 未汇总的观看次数达到该值时立即汇总
+     * @param flushIntervalMillis 定时汇总的间隔（毫秒）
+     * @param flusher 汇总器
+     */
+    public ViewCounter(long flushThreshold, long flushIntervalMillis, Flusher flusher) {
+        this.flushThreshold = flushThreshold;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flusher = flusher;
+    }
+    
+    /**
+     * 启动后台定时汇总
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "view-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 记录一次观看
+     */
+    public void record(String tvShowId) {
+        pending.computeIfAbsent(tvShowId, key -> new LongAdder()).increment();
+        pendingTotal.increment();
+        if (pendingTotal.sum() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            ScheduledExecutorService current;
+            synchronized (this) {
+                current = scheduler;
+            }
+            if (current == null) {
+                // 未启动后台线程时由调用线程直接汇总
+                flushScheduled.set(false);
+                flush();
+                return;
+            }
+            try {
+                current.execute(() -> {
+                    flushScheduled.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                // 已关闭，退出时会做最后一次汇总
+                flushScheduled.set(false);
+            }
+        }
+    }
+    
+    /**
+     * 尚未汇总的观看次数
+     */
+    public long pending(String tvShowId) {
+        LongAdder adder = pending.get(tvShowId);
+        return adder == null ? 0 : adder.sum();
+    }
+    
+    /**
+     * 丢弃某部电视剧尚未汇总的观看次数（电视剧删除时）
+     */
+    public void discard(String tvShowId) {
+        LongAdder adder = pending.remove(tvShowId);
+        if (adder != null) {
+            pendingTotal.add(-adder.sum());
+        }
+    }
+    
+    /**
+     * 立即汇总所有未汇总的观看次数
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, Long> deltas = new HashMap<>();
+            for (Map.Entry<String, LongAdder> entry : pending.entrySet()) {
+                // 计数器不移除：移除后并发的累加会落在已被丢弃的计数器上
+                long delta = entry.getValue().sumThenReset();
+                if (delta != 0) {
+                    deltas.put(entry.getKey(), delta);
+                }
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+            long total = 0;
+            for (long delta : deltas.values()) {
+                total += delta;
+            }
+            pendingTotal.add(-total);
+            flusher.flush(deltas);
+        }
+    }
+    
+    /**
+     * 停止后台线程并做最后一次汇总
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = scheduler;
+            scheduler = null;
+        }
+        if (current != null) {
+            current.shutdown();
+            try {
+                current.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // 后台线程不能因异常终止，否则后续不再定时汇总
+            System.out.println("汇总观看次数失败: " + e.getMessage());
+        }
+    }
+}